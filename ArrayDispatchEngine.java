@@ -0,0 +1,83 @@
+import java.util.Arrays;
+
+/*
+    Struct-of-arrays engine. A slot is an index into parallel int arrays, one per column, so a ride costs no
+    object header and no pointers, and the whole ride set is a handful of arrays for the GC to look at.
+*/
+class ArrayDispatchEngine extends SlotDispatchEngine {
+    // Ride columns, indexed by slot.
+    private int[] rideNumber;
+    private int[] tripCost;
+    private int[] tripDuration;
+    // Red-black tree columns, indexed by slot.
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private byte[] color;
+    private int[] subtreeSize;
+    private long[] subtreeSum;
+    // Heap: slot -> position and position (1-based) -> slot.
+    private int[] heapIndex;
+    private int[] heap;
+
+    ArrayDispatchEngine(int initialCapacity) {
+        super(false);
+        capacity = Math.max(2, initialCapacity + 1);
+        rideNumber = new int[capacity];
+        tripCost = new int[capacity];
+        tripDuration = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        color = new byte[capacity];
+        subtreeSize = new int[capacity];
+        subtreeSum = new long[capacity];
+        heapIndex = new int[capacity];
+        heap = new int[capacity];
+    }
+
+    // Doubles every column.
+    @Override
+    protected void grow() {
+        capacity = capacity * 2;
+        rideNumber = Arrays.copyOf(rideNumber, capacity);
+        tripCost = Arrays.copyOf(tripCost, capacity);
+        tripDuration = Arrays.copyOf(tripDuration, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        color = Arrays.copyOf(color, capacity);
+        subtreeSize = Arrays.copyOf(subtreeSize, capacity);
+        subtreeSum = Arrays.copyOf(subtreeSum, capacity);
+        heapIndex = Arrays.copyOf(heapIndex, capacity);
+        heap = Arrays.copyOf(heap, capacity);
+    }
+
+    @Override protected int ride(int slot) { return rideNumber[slot]; }
+    @Override protected int cost(int slot) { return tripCost[slot]; }
+    @Override protected int duration(int slot) { return tripDuration[slot]; }
+    @Override protected int left(int slot) { return left[slot]; }
+    @Override protected int right(int slot) { return right[slot]; }
+    @Override protected int parent(int slot) { return parent[slot]; }
+    @Override protected byte color(int slot) { return color[slot]; }
+    @Override protected int heapIndex(int slot) { return heapIndex[slot]; }
+    @Override protected int heapSlot(int pos) { return heap[pos]; }
+    @Override protected int subtreeSize(int slot) { return subtreeSize[slot]; }
+    @Override protected long subtreeSum(int slot) { return subtreeSum[slot]; }
+
+    @Override protected void setRide(int slot, int value) { rideNumber[slot] = value; }
+    @Override protected void setCost(int slot, int value) { tripCost[slot] = value; }
+    @Override protected void setDuration(int slot, int value) { tripDuration[slot] = value; }
+    @Override protected void setLeft(int slot, int value) { left[slot] = value; }
+    @Override protected void setRight(int slot, int value) { right[slot] = value; }
+    @Override protected void setParent(int slot, int value) { parent[slot] = value; }
+    @Override protected void setColor(int slot, byte value) { color[slot] = value; }
+    @Override protected void setSubtreeSize(int slot, int value) { subtreeSize[slot] = value; }
+    @Override protected void setSubtreeSum(int slot, long value) { subtreeSum[slot] = value; }
+
+    @Override
+    protected void setHeapSlot(int pos, int slot) {
+        heap[pos] = slot;
+        heapIndex[slot] = pos;
+    }
+}
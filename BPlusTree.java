@@ -0,0 +1,653 @@
+/*
+    B+-tree of rides keyed by ride number, the ordered index of BTreeDispatchEngine. Leaves hold up to
+    LEAF_CAPACITY rides in sorted parallel arrays (ride number, cost, duration and the HeapNode handle of the
+    ride in the RideQueue) and are linked left to right, so a range is read by scanning arrays instead of
+    following one pointer per ride. Inner pages hold up to INNER_CAPACITY children with the lowest ride number
+    of each child, and the number of rides and total tripCost below each child for Count, SumCost, Rank and
+    Select. A tree of a million rides is four pages deep.
+
+    Every page but the root stays at least half full: a page that drops below that borrows a ride or child
+    from a sibling, or is merged with it.
+*/
+class BPlusTree {
+    static final int LEAF_CAPACITY = 64;
+    static final int INNER_CAPACITY = 64;
+    private static final int LEAF_MIN = LEAF_CAPACITY / 2;
+    private static final int INNER_MIN = INNER_CAPACITY / 2;
+    private static final int MAX_HEIGHT = 32;
+
+    abstract static class Page {
+        int count;  // rides in a leaf, children in an inner page
+    }
+
+    static final class Leaf extends Page {
+        final int[] keys = new int[LEAF_CAPACITY];
+        final int[] costs = new int[LEAF_CAPACITY];
+        final int[] durations = new int[LEAF_CAPACITY];
+        final HeapNode[] handles = new HeapNode[LEAF_CAPACITY];
+        Leaf next;
+    }
+
+    static final class Inner extends Page {
+        // keys[i] is a lower bound of the ride numbers under children[i], and above every ride under children[i - 1].
+        // keys[0] of the root is not used.
+        final int[] keys = new int[INNER_CAPACITY];
+        final Page[] children = new Page[INNER_CAPACITY];
+        final int[] sizes = new int[INNER_CAPACITY];
+        final long[] sums = new long[INNER_CAPACITY];
+    }
+
+    private Page root = new Leaf();
+    private int height = 1;
+    private int size;
+
+    // Set by the recursive insert() and remove() on their way down.
+    private boolean duplicate;
+    private int removedCost;
+
+    // Inner pages and child indexes from the root to the leaf last found by locate().
+    private final Inner[] pathPages = new Inner[MAX_HEIGHT];
+    private final int[] pathIndexes = new int[MAX_HEIGHT];
+
+    int size() {
+        return size;
+    }
+
+    int height() {
+        return height;
+    }
+
+    // ----------------------------------- POINT OPERATIONS -----------------------------------
+
+    // Returns the handle of the ride, or NULL if there is none.
+    HeapNode find(int key) {
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            page = inner.children[childIndex(inner, key)];
+        }
+        Leaf leaf = (Leaf) page;
+        int pos = searchLeaf(leaf, key);
+        return pos >= 0 ? leaf.handles[pos] : null;
+    }
+
+    // Adds a ride. Returns FALSE, and changes nothing, if the ride number is already in the tree.
+    boolean insert(int key, int cost, int duration, HeapNode handle) {
+        duplicate = false;
+        Page split = insert(root, key, cost, duration, handle);
+        if (duplicate) {
+            return false;
+        }
+        if (split != null) {
+            // the root split: grow the tree by one level.
+            Inner newRoot = new Inner();
+            setChild(newRoot, 0, root, lowerBound(root));
+            setChild(newRoot, 1, split, lowerBound(split));
+            newRoot.count = 2;
+            root = newRoot;
+            height++;
+        }
+        size++;
+        return true;
+    }
+
+    // Removes a ride and returns its handle, or NULL if there is no such ride.
+    HeapNode remove(int key) {
+        HeapNode removed = remove(root, key);
+        if (removed == null) {
+            return null;
+        }
+        if (root instanceof Inner && root.count == 1) {
+            // the root has a single child left: shrink the tree by one level.
+            root = ((Inner) root).children[0];
+            height--;
+        }
+        size--;
+        return removed;
+    }
+
+    // Stores a new cost and duration for a ride that is in the tree, and adjusts the sums above it.
+    void update(int key, int cost, int duration) {
+        Leaf leaf = locate(key);
+        int pos = searchLeaf(leaf, key);
+        int delta = cost - leaf.costs[pos];
+        leaf.costs[pos] = cost;
+        leaf.durations[pos] = duration;
+        for (int level = 0; level < height - 1; level++) {
+            pathPages[level].sums[pathIndexes[level]] += delta;
+        }
+    }
+
+    // Replaces the tree, which must be empty, by the rides of 'batch', which must be sorted by ride number
+    // without repeats. handles[i] belongs to the i-th ride. Pages are filled evenly, level by level, in O(n).
+    void buildFromSorted(InsertBatch batch, HeapNode[] handles) {
+        int count = batch.size();
+        if (count == 0) {
+            return;
+        }
+        int leafCount = (count + LEAF_CAPACITY - 1) / LEAF_CAPACITY;
+        Page[] level = new Page[leafCount];
+        Leaf previous = null;
+        int from = 0;
+        for (int p = 0; p < leafCount; p++) {
+            int to = (int) ((long) count * (p + 1) / leafCount);
+            Leaf leaf = new Leaf();
+            for (int i = from; i < to; i++) {
+                int pos = i - from;
+                leaf.keys[pos] = batch.ride(i);
+                leaf.costs[pos] = batch.cost(i);
+                leaf.durations[pos] = batch.duration(i);
+                leaf.handles[pos] = handles[i];
+            }
+            leaf.count = to - from;
+            if (previous != null) {
+                previous.next = leaf;
+            }
+            previous = leaf;
+            level[p] = leaf;
+            from = to;
+        }
+        int levels = 1;
+        while (level.length > 1) {
+            int parentCount = (level.length + INNER_CAPACITY - 1) / INNER_CAPACITY;
+            Page[] parents = new Page[parentCount];
+            from = 0;
+            for (int p = 0; p < parentCount; p++) {
+                int to = (int) ((long) level.length * (p + 1) / parentCount);
+                Inner inner = new Inner();
+                for (int i = from; i < to; i++) {
+                    setChild(inner, i - from, level[i], lowerBound(level[i]));
+                }
+                inner.count = to - from;
+                parents[p] = inner;
+                from = to;
+            }
+            level = parents;
+            levels++;
+        }
+        root = level[0];
+        height = levels;
+        size = count;
+    }
+
+    // ----------------------------------- ORDER STATISTICS -----------------------------------
+
+    // Number of rides numbered low..high.
+    int count(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return countBelow(high, true) - countBelow(low, false);
+    }
+
+    // Sum of the tripCost of the rides numbered low..high.
+    long sumCost(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return sumCostBelow(high, true) - sumCostBelow(low, false);
+    }
+
+    // Number of rides numbered at most 'key'.
+    int rank(int key) {
+        return countBelow(key, true);
+    }
+
+    // Returns the handle of the k-th smallest ride number (1-based), or NULL if there are fewer than k rides.
+    HeapNode select(int k) {
+        if (k < 1 || k > size) {
+            return null;
+        }
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            int i = 0;
+            while (k > inner.sizes[i]) {
+                k -= inner.sizes[i];
+                i++;
+            }
+            page = inner.children[i];
+        }
+        return ((Leaf) page).handles[k - 1];
+    }
+
+    // Helps count the rides numbered below 'key', or up to and including it when 'inclusive' is TRUE.
+    private int countBelow(int key, boolean inclusive) {
+        int count = 0;
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            int i = childIndex(inner, key);
+            for (int j = 0; j < i; j++) {
+                count += inner.sizes[j];
+            }
+            page = inner.children[i];
+        }
+        return count + leafPrefix((Leaf) page, key, inclusive);
+    }
+
+    // Helps sum the tripCost of the rides numbered below 'key', or up to and including it when 'inclusive' is TRUE.
+    private long sumCostBelow(int key, boolean inclusive) {
+        long sum = 0;
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            int i = childIndex(inner, key);
+            for (int j = 0; j < i; j++) {
+                sum += inner.sums[j];
+            }
+            page = inner.children[i];
+        }
+        Leaf leaf = (Leaf) page;
+        int end = leafPrefix(leaf, key, inclusive);
+        for (int pos = 0; pos < end; pos++) {
+            sum += leaf.costs[pos];
+        }
+        return sum;
+    }
+
+    // Helps count the rides of 'leaf' numbered below 'key', or up to and including it when 'inclusive' is TRUE.
+    private static int leafPrefix(Leaf leaf, int key, boolean inclusive) {
+        int pos = searchLeaf(leaf, key);
+        if (pos >= 0) {
+            return inclusive ? pos + 1 : pos;
+        }
+        return -(pos + 1);
+    }
+
+    // ----------------------------------- RANGE SCANS -----------------------------------
+
+    // Walks the leaves from the first ride >= low, one ride per next(), and stops after 'high'.
+    final class Cursor implements RideCursor {
+        private Leaf leaf;
+        private int pos;
+        private int high;
+
+        void seek(int low, int high) {
+            Leaf found = locate(low);
+            int at = searchLeaf(found, low);
+            this.leaf = found;
+            this.pos = (at >= 0 ? at : -(at + 1)) - 1;  // next() steps onto the first ride
+            this.high = high;
+        }
+
+        @Override
+        public boolean next() {
+            if (leaf == null) {
+                return false;
+            }
+            pos++;
+            while (pos == leaf.count) {
+                leaf = leaf.next;
+                pos = 0;
+                if (leaf == null) {
+                    return false;
+                }
+            }
+            if (leaf.keys[pos] > high) {
+                leaf = null;
+                return false;
+            }
+            return true;
+        }
+
+        @Override public int rideNumber() { return leaf.keys[pos]; }
+        @Override public int tripCost() { return leaf.costs[pos]; }
+        @Override public int tripDuration() { return leaf.durations[pos]; }
+    }
+
+    // ----------------------------------- INSERT AND REMOVE -----------------------------------
+
+    // Helps insert into the subtree of 'page'. Returns the new right sibling of 'page' if it had to split, else NULL.
+    private Page insert(Page page, int key, int cost, int duration, HeapNode handle) {
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            int pos = searchLeaf(leaf, key);
+            if (pos >= 0) {
+                duplicate = true;
+                return null;
+            }
+            pos = -(pos + 1);
+            if (leaf.count < LEAF_CAPACITY) {
+                insertIntoLeaf(leaf, pos, key, cost, duration, handle);
+                return null;
+            }
+            // full: move the upper half into a new right sibling and insert into whichever half 'pos' falls in.
+            Leaf right = new Leaf();
+            int half = LEAF_CAPACITY / 2;
+            moveEntries(leaf, half, right, 0, LEAF_CAPACITY - half);
+            right.count = LEAF_CAPACITY - half;
+            leaf.count = half;
+            right.next = leaf.next;
+            leaf.next = right;
+            if (pos <= half) {
+                insertIntoLeaf(leaf, pos, key, cost, duration, handle);
+            } else {
+                insertIntoLeaf(right, pos - half, key, cost, duration, handle);
+            }
+            return right;
+        }
+
+        Inner inner = (Inner) page;
+        int i = childIndex(inner, key);
+        Page split = insert(inner.children[i], key, cost, duration, handle);
+        if (duplicate) {
+            return null;
+        }
+        inner.sizes[i]++;
+        inner.sums[i] += cost;
+        if (split == null) {
+            return null;
+        }
+        // child i split in two: fix its totals and add the new sibling right after it.
+        Page child = inner.children[i];
+        inner.sizes[i] = totalSize(child);
+        inner.sums[i] = totalSum(child);
+        if (inner.count < INNER_CAPACITY) {
+            insertChild(inner, i + 1, split);
+            return null;
+        }
+        Inner right = new Inner();
+        int half = INNER_CAPACITY / 2;
+        moveChildren(inner, half, right, 0, INNER_CAPACITY - half);
+        right.count = INNER_CAPACITY - half;
+        inner.count = half;
+        if (i + 1 <= half) {
+            insertChild(inner, i + 1, split);
+        } else {
+            insertChild(right, i + 1 - half, split);
+        }
+        return right;
+    }
+
+    // Helps remove 'key' from the subtree of 'page', refilling any child that drops below half full.
+    private HeapNode remove(Page page, int key) {
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            int pos = searchLeaf(leaf, key);
+            if (pos < 0) {
+                return null;
+            }
+            HeapNode removed = leaf.handles[pos];
+            removedCost = leaf.costs[pos];
+            moveEntries(leaf, pos + 1, leaf, pos, leaf.count - pos - 1);
+            leaf.count--;
+            leaf.handles[leaf.count] = null;
+            return removed;
+        }
+
+        Inner inner = (Inner) page;
+        int i = childIndex(inner, key);
+        Page child = inner.children[i];
+        HeapNode removed = remove(child, key);
+        if (removed == null) {
+            return null;
+        }
+        inner.sizes[i]--;
+        inner.sums[i] -= removedCost;
+        if (child.count < (child instanceof Leaf ? LEAF_MIN : INNER_MIN)) {
+            refill(inner, i);
+        }
+        return removed;
+    }
+
+    // Helps bring child i of 'parent' back to half full: borrow from a sibling that can spare one, or merge with one.
+    private void refill(Inner parent, int i) {
+        Page child = parent.children[i];
+        int min = child instanceof Leaf ? LEAF_MIN : INNER_MIN;
+        if (i > 0 && parent.children[i - 1].count > min) {
+            borrowFromLeft(parent, i);
+        } else if (i + 1 < parent.count && parent.children[i + 1].count > min) {
+            borrowFromRight(parent, i);
+        } else if (i > 0) {
+            merge(parent, i - 1);
+        } else if (i + 1 < parent.count) {
+            merge(parent, i);
+        }
+    }
+
+    // Helps move the last ride or child of child i - 1 to the front of child i.
+    private void borrowFromLeft(Inner parent, int i) {
+        Page child = parent.children[i];
+        Page left = parent.children[i - 1];
+        int movedSize;
+        long movedSum;
+        if (child instanceof Leaf) {
+            Leaf to = (Leaf) child;
+            Leaf from = (Leaf) left;
+            moveEntries(to, 0, to, 1, to.count);
+            moveEntries(from, from.count - 1, to, 0, 1);
+            from.handles[from.count - 1] = null;
+            movedSize = 1;
+            movedSum = to.costs[0];
+            parent.keys[i] = to.keys[0];
+        } else {
+            Inner to = (Inner) child;
+            Inner from = (Inner) left;
+            to.keys[0] = parent.keys[i];
+            moveChildren(to, 0, to, 1, to.count);
+            moveChildren(from, from.count - 1, to, 0, 1);
+            from.children[from.count - 1] = null;
+            movedSize = to.sizes[0];
+            movedSum = to.sums[0];
+            parent.keys[i] = to.keys[0];
+        }
+        child.count++;
+        left.count--;
+        parent.sizes[i - 1] -= movedSize;
+        parent.sums[i - 1] -= movedSum;
+        parent.sizes[i] += movedSize;
+        parent.sums[i] += movedSum;
+    }
+
+    // Helps move the first ride or child of child i + 1 to the end of child i.
+    private void borrowFromRight(Inner parent, int i) {
+        Page child = parent.children[i];
+        Page right = parent.children[i + 1];
+        int movedSize;
+        long movedSum;
+        if (child instanceof Leaf) {
+            Leaf to = (Leaf) child;
+            Leaf from = (Leaf) right;
+            moveEntries(from, 0, to, to.count, 1);
+            moveEntries(from, 1, from, 0, from.count - 1);
+            from.handles[from.count - 1] = null;
+            movedSize = 1;
+            movedSum = to.costs[to.count];
+            parent.keys[i + 1] = from.keys[0];
+        } else {
+            Inner to = (Inner) child;
+            Inner from = (Inner) right;
+            from.keys[0] = parent.keys[i + 1];
+            moveChildren(from, 0, to, to.count, 1);
+            moveChildren(from, 1, from, 0, from.count - 1);
+            from.children[from.count - 1] = null;
+            movedSize = to.sizes[to.count];
+            movedSum = to.sums[to.count];
+            parent.keys[i + 1] = from.keys[0];
+        }
+        child.count++;
+        right.count--;
+        parent.sizes[i] += movedSize;
+        parent.sums[i] += movedSum;
+        parent.sizes[i + 1] -= movedSize;
+        parent.sums[i + 1] -= movedSum;
+    }
+
+    // Helps merge child i + 1 of 'parent' into child i and drop it from 'parent'.
+    private void merge(Inner parent, int i) {
+        Page left = parent.children[i];
+        Page right = parent.children[i + 1];
+        if (left instanceof Leaf) {
+            Leaf to = (Leaf) left;
+            Leaf from = (Leaf) right;
+            moveEntries(from, 0, to, to.count, from.count);
+            to.next = from.next;
+        } else {
+            Inner to = (Inner) left;
+            Inner from = (Inner) right;
+            from.keys[0] = parent.keys[i + 1];
+            moveChildren(from, 0, to, to.count, from.count);
+        }
+        left.count += right.count;
+        parent.sizes[i] += parent.sizes[i + 1];
+        parent.sums[i] += parent.sums[i + 1];
+        moveChildren(parent, i + 2, parent, i + 1, parent.count - i - 2);
+        parent.count--;
+        parent.children[parent.count] = null;
+    }
+
+    // ----------------------------------- PAGE HELPERS -----------------------------------
+
+    // Helps find the leaf that holds, or would hold, 'key', remembering the path to it.
+    private Leaf locate(int key) {
+        Page page = root;
+        int level = 0;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            int i = childIndex(inner, key);
+            pathPages[level] = inner;
+            pathIndexes[level] = i;
+            level++;
+            page = inner.children[i];
+        }
+        return (Leaf) page;
+    }
+
+    // Index of the child of 'inner' whose range holds 'key': the last child whose lower bound is <= key.
+    private static int childIndex(Inner inner, int key) {
+        int low = 1;
+        int high = inner.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (inner.keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    // Position of 'key' in 'leaf', or -(insertion point + 1) if it is not there, as in Arrays.binarySearch.
+    private static int searchLeaf(Leaf leaf, int key) {
+        int low = 0;
+        int high = leaf.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = leaf.keys[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void insertIntoLeaf(Leaf leaf, int pos, int key, int cost, int duration, HeapNode handle) {
+        moveEntries(leaf, pos, leaf, pos + 1, leaf.count - pos);
+        leaf.keys[pos] = key;
+        leaf.costs[pos] = cost;
+        leaf.durations[pos] = duration;
+        leaf.handles[pos] = handle;
+        leaf.count++;
+    }
+
+    private static void insertChild(Inner inner, int i, Page child) {
+        moveChildren(inner, i, inner, i + 1, inner.count - i);
+        setChild(inner, i, child, lowerBound(child));
+        inner.count++;
+    }
+
+    private static void setChild(Inner inner, int i, Page child, int lowerBound) {
+        inner.keys[i] = lowerBound;
+        inner.children[i] = child;
+        inner.sizes[i] = totalSize(child);
+        inner.sums[i] = totalSum(child);
+    }
+
+    // Copies 'length' rides between leaves, overlapping ranges included.
+    private static void moveEntries(Leaf from, int fromPos, Leaf to, int toPos, int length) {
+        System.arraycopy(from.keys, fromPos, to.keys, toPos, length);
+        System.arraycopy(from.costs, fromPos, to.costs, toPos, length);
+        System.arraycopy(from.durations, fromPos, to.durations, toPos, length);
+        System.arraycopy(from.handles, fromPos, to.handles, toPos, length);
+    }
+
+    // Copies 'length' children with their keys and totals between inner pages, overlapping ranges included.
+    private static void moveChildren(Inner from, int fromPos, Inner to, int toPos, int length) {
+        System.arraycopy(from.keys, fromPos, to.keys, toPos, length);
+        System.arraycopy(from.children, fromPos, to.children, toPos, length);
+        System.arraycopy(from.sizes, fromPos, to.sizes, toPos, length);
+        System.arraycopy(from.sums, fromPos, to.sums, toPos, length);
+    }
+
+    private static int lowerBound(Page page) {
+        return page instanceof Leaf ? ((Leaf) page).keys[0] : ((Inner) page).keys[0];
+    }
+
+    private static int totalSize(Page page) {
+        if (page instanceof Leaf) {
+            return page.count;
+        }
+        Inner inner = (Inner) page;
+        int total = 0;
+        for (int i = 0; i < inner.count; i++) {
+            total += inner.sizes[i];
+        }
+        return total;
+    }
+
+    private static long totalSum(Page page) {
+        long total = 0;
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            for (int i = 0; i < leaf.count; i++) {
+                total += leaf.costs[i];
+            }
+            return total;
+        }
+        Inner inner = (Inner) page;
+        for (int i = 0; i < inner.count; i++) {
+            total += inner.sums[i];
+        }
+        return total;
+    }
+
+    // Prints the height and, level by level, the number of pages and rides.
+    void print() {
+        System.out.println("\n\nB+-tree: " + size + " rides, height " + height);
+        Page[] level = { root };
+        int depth = 0;
+        while (level != null) {
+            int pages = level.length;
+            int entries = 0;
+            Page[] below = null;
+            if (level[0] instanceof Inner) {
+                int children = 0;
+                for (Page page : level) {
+                    children += page.count;
+                }
+                below = new Page[children];
+                int next = 0;
+                for (Page page : level) {
+                    Inner inner = (Inner) page;
+                    for (int i = 0; i < inner.count; i++) {
+                        below[next++] = inner.children[i];
+                    }
+                }
+                entries = children;
+            } else {
+                for (Page page : level) {
+                    entries += page.count;
+                }
+            }
+            System.out.println("level " + depth + ": " + pages + " pages, " + entries + (below == null ? " rides" : " children"));
+            level = below;
+            depth++;
+        }
+    }
+}
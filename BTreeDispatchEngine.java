@@ -0,0 +1,148 @@
+/*
+    Engine that keeps rides in a BPlusTree instead of a RedBlackTree, next to the same RideQueue the object
+    engine uses. A tree entry holds the HeapNode of its ride as its handle, so GetNextRide and CancelRide remove
+    a ride from both structures without searching the queue. The leaves also carry a copy of the cost and
+    duration, which lets Print(lo, hi) read a range without touching the HeapNodes.
+
+    Unlike the other engines it has no IntSlotMap in front of the tree for the point operations: Insert,
+    UpdateTrip and CancelRide must reach the ride's leaf anyway, to place it, to refresh the copy of the cost
+    and duration, or to take it out, and a descent through a few wide nodes costs about what the map would.
+*/
+class BTreeDispatchEngine implements DispatchEngine {
+    private final BPlusTree tree = new BPlusTree();
+    private final RideQueue queue;
+    private final BPlusTree.Cursor cursor = tree.new Cursor();   // reused by every seek()
+
+    BTreeDispatchEngine(RideQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        HeapNode handle = queue.newNode(rideNumber, tripCost, tripDuration);
+        if (!tree.insert(rideNumber, tripCost, tripDuration, handle)) {
+            return false;
+        }
+        queue.insert(handle);
+        return true;
+    }
+
+    @Override
+    public void bulkLoad(InsertBatch batch) {
+        if (tree.size() != 0) {
+            throw new IllegalStateException("bulkLoad needs an empty engine");
+        }
+        int count = batch.size();
+        HeapNode[] handles = new HeapNode[count];
+        for (int i = 0; i < count; i++) {
+            handles[i] = queue.newNode(batch.ride(i), batch.cost(i), batch.duration(i));
+        }
+        tree.buildFromSorted(batch, handles);
+        queue.buildFrom(handles, batch);
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        HeapNode bestRide = queue.removeMin();
+        if (bestRide == null) {
+            return false;
+        }
+        out.accept(bestRide.rideNumber, bestRide.tripCost, bestRide.tripDuration);
+        tree.remove(bestRide.rideNumber);
+        return true;
+    }
+
+    @Override
+    public boolean peekNextRide(RideConsumer out) {
+        HeapNode bestRide = queue.getRoot();
+        if (bestRide == null) {
+            return false;
+        }
+        out.accept(bestRide.rideNumber, bestRide.tripCost, bestRide.tripDuration);
+        return true;
+    }
+
+    @Override
+    public boolean print(int rideNumber, RideConsumer out) {
+        HeapNode ride = tree.find(rideNumber);
+        if (ride == null) {
+            return false;
+        }
+        out.accept(ride.rideNumber, ride.tripCost, ride.tripDuration);
+        return true;
+    }
+
+    @Override
+    public RideCursor seek(int low, int high) {
+        cursor.seek(low, high);
+        return cursor;
+    }
+
+    // Same rules as ObjectDispatchEngine.updateTrip.
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        HeapNode ride = tree.find(rideNumber);
+        if (ride == null) {
+            return;
+        }
+        if (newTripDuration > 2 * ride.tripDuration) {
+            cancelRide(rideNumber);
+            return;
+        }
+        if (newTripDuration > ride.tripDuration) {
+            ride.tripCost += 10;
+        }
+        ride.tripDuration = newTripDuration;
+        queue.fixUpdate(ride);
+        tree.update(rideNumber, ride.tripCost, ride.tripDuration);
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        HeapNode removed = tree.remove(rideNumber);
+        if (removed != null) {
+            queue.deleteRandomNode(removed);
+        }
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public int count(int low, int high) {
+        return tree.count(low, high);
+    }
+
+    @Override
+    public long sumCost(int low, int high) {
+        return tree.sumCost(low, high);
+    }
+
+    @Override
+    public int rank(int rideNumber) {
+        return tree.rank(rideNumber);
+    }
+
+    @Override
+    public boolean select(int k, RideConsumer out) {
+        HeapNode ride = tree.select(k);
+        if (ride == null) {
+            return false;
+        }
+        out.accept(ride.rideNumber, ride.tripCost, ride.tripDuration);
+        return true;
+    }
+
+    @Override
+    public int height() {
+        return tree.height();
+    }
+
+    @Override
+    public void printDebugState() {
+        tree.print();
+        queue.print();
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+    Reads a command log in the binary format of BinaryFormat, for --format=binary. There is nothing to
+    tokenize: every record is a header int and its int arguments, copied straight into the Command.
+    A record that no text line could have produced, or a log cut short, is an IOException.
+*/
+class BinaryCommandSource implements CommandSource {
+    private final BinaryFormat.Reader in;
+    private long records;
+
+    BinaryCommandSource(ReadableByteChannel channel) throws IOException {
+        in = new BinaryFormat.Reader(channel);
+        if (!in.ensure(4) || in.getInt() != BinaryFormat.COMMAND_MAGIC) {
+            throw new IOException("not a binary command log");
+        }
+    }
+
+    // Number of commands read so far.
+    long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public boolean next(Command cmd) throws IOException {
+        if (!in.ensure(4)) {
+            return false;
+        }
+        int header = in.getInt();
+        int type = header & 0xFF;
+        int argCount = header >>> 8;
+        records++;
+        if (!CommandParser.isValid(type, argCount)) {
+            throw new IOException("bad command record " + records + ": type " + type + " with " + argCount + " arguments");
+        }
+        in.require(4 * argCount);
+        for (int i = 0; i < argCount; i++) {
+            cmd.args[i] = in.getInt();
+        }
+        if (!CommandParser.inRange(type, cmd.args)) {
+            throw new IOException("bad command record " + records + ": GetNextRides of more than " + Command.MAX_NEXT_RIDES + " rides");
+        }
+        cmd.type = type;
+        cmd.argCount = argCount;
+        cmd.lineNumber = records;
+        return true;
+    }
+}
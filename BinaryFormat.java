@@ -0,0 +1,384 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+    Binary form of command logs and results, selected with --format=binary. Everything is little-endian.
+
+    A command log starts with COMMAND_MAGIC, then one record per command: an int holding the Command type in
+    its low byte and the number of arguments in the next byte, followed by that many int arguments. So
+    Insert(25,98,46) is 16 bytes, and reading it back is a few getInt() calls, see BinaryCommandSource.
+
+    A results file starts with RESULT_MAGIC, then one record per line of output_file.txt, each an int opcode:
+        RANGE    int count, then count rides of 3 ints    a line of rides, e.g. from Print(lo, hi)
+        NUMBER   long                                     the answer to Count, SumCost or Rank
+        MESSAGE  int, an index into MESSAGES              "(0,0,0)", "Duplicate Ride Number", ...
+        TEXT     int length, then that many bytes         any other line, up to MAX_TEXT_LENGTH bytes
+    see BinaryResultSink. A ride on a line of its own is a RANGE of one.
+
+    Converters both ways, and a round-trip check of the sample files:
+        java BinaryFormat encode-commands|decode-commands|encode-results|decode-results <from> <to>
+        java BinaryFormat check <commands.txt> <expected results.txt>
+*/
+class BinaryFormat {
+    static final int COMMAND_MAGIC = 0x31435447;    // "GTC1"
+    static final int RESULT_MAGIC = 0x31525447;     // "GTR1"
+
+    // Result opcodes.
+    static final int RANGE = 1;
+    static final int NUMBER = 2;
+    static final int MESSAGE = 3;
+    static final int TEXT = 4;
+
+    static final byte[][] MESSAGES = { OutputSink.NO_RIDE, OutputSink.DUPLICATE_RIDE, OutputSink.NO_ACTIVE_RIDES };
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    static final int MAX_TEXT_LENGTH = BUFFER_SIZE - 4;    // a TEXT line and its length fit in the Reader's buffer
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: java BinaryFormat encode-commands|decode-commands|encode-results|decode-results <from> <to>");
+            System.err.println("       java BinaryFormat check <commands.txt> <expected results.txt>");
+            System.exit(1);
+        }
+        Path from = Paths.get(args[1]);
+        Path to = Paths.get(args[2]);
+        switch (args[0]) {
+            case "encode-commands":
+                System.out.println(encodeCommands(from, to) + " commands");
+                break;
+            case "decode-commands":
+                System.out.println(decodeCommands(from, to) + " commands");
+                break;
+            case "encode-results":
+                System.out.println(encodeResults(from, to) + " lines");
+                break;
+            case "decode-results":
+                System.out.println(decodeResults(from, to) + " lines");
+                break;
+            case "check":
+                if (!check(from, to)) {
+                    System.exit(1);
+                }
+                break;
+            default:
+                System.err.println("unknown conversion " + args[0]);
+                System.exit(1);
+        }
+    }
+
+    // Writes the commands of a text log to a binary one. Malformed lines are reported and left out, as a replay would.
+    static long encodeCommands(Path text, Path binary) throws IOException {
+        try (FileChannel in = FileChannel.open(text, StandardOpenOption.READ);
+             Writer out = new Writer(create(binary))) {
+            CommandParser parser = new CommandParser(in);
+            Command cmd = new Command();
+            out.putInt(COMMAND_MAGIC);
+            long count = 0;
+            while (parser.next(cmd)) {
+                out.putInt(cmd.type | cmd.argCount << 8);
+                for (int i = 0; i < cmd.argCount; i++) {
+                    out.putInt(cmd.args[i]);
+                }
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // Writes the commands of a binary log as text, one "Name(args)" line each.
+    static long decodeCommands(Path binary, Path text) throws IOException {
+        try (FileChannel in = FileChannel.open(binary, StandardOpenOption.READ);
+             java.io.Writer out = Files.newBufferedWriter(text, StandardCharsets.US_ASCII)) {
+            BinaryCommandSource source = new BinaryCommandSource(in);
+            Command cmd = new Command();
+            long count = 0;
+            while (source.next(cmd)) {
+                out.write(CommandParser.nameOf(cmd.type));
+                out.write('(');
+                for (int i = 0; i < cmd.argCount; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    out.write(Integer.toString(cmd.args[i]));
+                }
+                out.write(")\n");
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // Writes the lines of a text results file as binary records.
+    static long encodeResults(Path text, Path binary) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.US_ASCII)) {
+            BinaryResultSink out = new BinaryResultSink(create(binary));
+            long count = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                writeTextLine(line, out);
+                count++;
+            }
+            out.close();
+            return count;
+        }
+    }
+
+    // Writes the records of a binary results file as the text lines gatorTaxi would have written.
+    static long decodeResults(Path binary, Path text) throws IOException {
+        try (FileChannel in = FileChannel.open(binary, StandardOpenOption.READ)) {
+            OutputSink out = new OutputSink(create(text));
+            long count = copyResults(in, out);
+            out.close();
+            return count;
+        }
+    }
+
+    // Replays 'results', a binary results stream, into 'out'. Returns the number of records.
+    static long copyResults(ReadableByteChannel results, ResultSink out) throws IOException {
+        Reader in = new Reader(results);
+        if (!in.ensure(4) || in.getInt() != RESULT_MAGIC) {
+            throw new IOException("not a binary results file");
+        }
+        long count = 0;
+        while (in.ensure(4)) {
+            int op = in.getInt();
+            switch (op) {
+                case RANGE:
+                    in.require(4);
+                    int rides = in.getInt();
+                    out.beginRange();
+                    for (int i = 0; i < rides; i++) {
+                        in.require(12);
+                        out.accept(in.getInt(), in.getInt(), in.getInt());
+                    }
+                    out.endRange();
+                    break;
+                case NUMBER:
+                    in.require(8);
+                    out.writeNumberLine(in.getLong());
+                    break;
+                case MESSAGE:
+                    in.require(4);
+                    int message = in.getInt();
+                    if (message < 0 || message >= MESSAGES.length) {
+                        throw new IOException("unknown message " + message + " in record " + (count + 1));
+                    }
+                    out.writeLine(MESSAGES[message]);
+                    break;
+                case TEXT:
+                    in.require(4);
+                    int length = in.getInt();
+                    if (length < 0 || length > MAX_TEXT_LENGTH) {
+                        throw new IOException("text line of " + length + " bytes in record " + (count + 1));
+                    }
+                    byte[] bytes = new byte[length];
+                    in.require(length);
+                    in.get(bytes);
+                    out.writeLine(bytes);
+                    break;
+                default:
+                    throw new IOException("unknown result opcode " + op + " in record " + (count + 1));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    // Helps turn one line of a text results file into the calls gatorTaxi made to write it.
+    private static void writeTextLine(String line, ResultSink out) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        for (byte[] message : MESSAGES) {
+            if (Arrays.equals(bytes, message)) {
+                out.writeLine(message);
+                return;
+            }
+        }
+        if (line.matches("\\(-?\\d+,-?\\d+,-?\\d+\\)(,\\(-?\\d+,-?\\d+,-?\\d+\\))*")) {
+            String[] numbers = line.substring(1, line.length() - 1).split("\\),\\(|,");
+            out.beginRange();
+            for (int i = 0; i < numbers.length; i += 3) {
+                out.accept(Integer.parseInt(numbers[i]), Integer.parseInt(numbers[i + 1]), Integer.parseInt(numbers[i + 2]));
+            }
+            out.endRange();
+        } else if (line.matches("-?\\d{1,18}")) {
+            out.writeNumberLine(Long.parseLong(line));
+        } else {
+            out.writeLine(bytes);
+        }
+    }
+
+    // Round trips of both formats through the binary one, compared with the text files. Prints what it
+    // checked and returns FALSE if anything differs.
+    static boolean check(Path commands, Path expected) throws IOException {
+        Path dir = Files.createTempDirectory("gatortaxi-binary-");
+        try {
+            Path binaryCommands = dir.resolve("commands.bin");
+            Path decodedCommands = dir.resolve("commands.txt");
+            Path binaryResults = dir.resolve("results.bin");
+            Path decodedResults = dir.resolve("results.txt");
+            Path encodedExpected = dir.resolve("expected.bin");
+            Path textResults = dir.resolve("text-results.txt");
+            boolean ok = true;
+
+            // 1. text commands -> binary -> text, replayed as text, give the expected results.
+            encodeCommands(commands, binaryCommands);
+            decodeCommands(binaryCommands, decodedCommands);
+            try (FileChannel in = FileChannel.open(decodedCommands, StandardOpenOption.READ)) {
+                OutputSink out = new OutputSink(create(textResults));
+                gatorTaxi.replay(new CommandParser(in), newEngine(), out);
+                out.close();
+            }
+            ok &= report("commands text -> binary -> text, replayed", textResults, expected);
+
+            // 2. the binary commands, replayed without tokenizing, give the expected results once decoded.
+            try (FileChannel in = FileChannel.open(binaryCommands, StandardOpenOption.READ)) {
+                BinaryResultSink out = new BinaryResultSink(create(binaryResults));
+                gatorTaxi.replay(new BinaryCommandSource(in), newEngine(), out);
+                out.close();
+            }
+            decodeResults(binaryResults, decodedResults);
+            ok &= report("binary replay, results decoded", decodedResults, expected);
+
+            // 3. the expected results, encoded, are exactly what the binary replay wrote.
+            encodeResults(expected, encodedExpected);
+            ok &= report("expected results encoded vs binary replay", encodedExpected, binaryResults);
+            return ok;
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // The engine gatorTaxi runs with its default options.
+    private static DispatchEngine newEngine() {
+        return new ExpiringDispatchEngine(new SpatialDispatchEngine(DispatchEngine.create(new Options())), false);
+    }
+
+    private static boolean report(String what, Path actual, Path expected) throws IOException {
+        boolean same = Files.mismatch(actual, expected) == -1;
+        System.out.println((same ? "OK    " : "DIFF  ") + what);
+        return same;
+    }
+
+    private static FileChannel create(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Little-endian buffered reads from a channel.
+    static final class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();  // start out empty
+        }
+
+        // Makes sure 'bytes' more bytes are buffered. Returns FALSE if the input ends cleanly before the
+        // first of them, and throws if it ends after some of them.
+        boolean ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            boolean empty = !buffer.hasRemaining();
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    if (empty && !buffer.hasRemaining()) {
+                        return false;
+                    }
+                    throw new IOException("truncated record");
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        // Same, but the input must not end here.
+        void require(int bytes) throws IOException {
+            if (bytes > BUFFER_SIZE) {
+                throw new IOException("record of " + bytes + " bytes is too long");
+            }
+            if (!ensure(bytes)) {
+                throw new IOException("truncated record");
+            }
+        }
+
+        int getInt() {
+            return buffer.getInt();
+        }
+
+        long getLong() {
+            return buffer.getLong();
+        }
+
+        void get(byte[] bytes) {
+            buffer.get(bytes);
+        }
+    }
+
+    // Little-endian buffered writes to a channel.
+    static final class Writer implements AutoCloseable {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int done = 0; done < bytes.length; ) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int count = Math.min(buffer.remaining(), bytes.length - done);
+                buffer.put(bytes, done, count);
+                done += count;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/*
+    Writes results in the binary format of BinaryFormat instead of text, for --format=binary. Nothing is
+    formatted: a ride is three ints. The rides of a range are collected until endRange(), which writes them
+    as one length-prefixed RANGE record. Other lines longer than BinaryFormat.MAX_TEXT_LENGTH are refused,
+    since no reader of the format would take them back.
+*/
+class BinaryResultSink implements ResultSink {
+    private final BinaryFormat.Writer out;
+    private int[] range = new int[3 * 64];  // rides of the current range, 3 ints each
+    private int rangeInts;
+
+    BinaryResultSink(WritableByteChannel channel) throws IOException {
+        out = new BinaryFormat.Writer(channel);
+        out.putInt(BinaryFormat.RESULT_MAGIC);
+    }
+
+    @Override
+    public void writeLine(byte[] line) throws IOException {
+        for (int i = 0; i < BinaryFormat.MESSAGES.length; i++) {
+            if (line == BinaryFormat.MESSAGES[i] || Arrays.equals(line, BinaryFormat.MESSAGES[i])) {
+                out.putInt(BinaryFormat.MESSAGE);
+                out.putInt(i);
+                return;
+            }
+        }
+        if (line.length > BinaryFormat.MAX_TEXT_LENGTH) {
+            throw new IOException("line of " + line.length + " bytes is longer than a TEXT record takes");
+        }
+        out.putInt(BinaryFormat.TEXT);
+        out.putInt(line.length);
+        out.put(line);
+    }
+
+    @Override
+    public void writeRideLine(int rideNumber, int tripCost, int tripDuration) throws IOException {
+        out.putInt(BinaryFormat.RANGE);
+        out.putInt(1);
+        out.putInt(rideNumber);
+        out.putInt(tripCost);
+        out.putInt(tripDuration);
+    }
+
+    @Override
+    public void writeNumberLine(long value) throws IOException {
+        out.putInt(BinaryFormat.NUMBER);
+        out.putLong(value);
+    }
+
+    @Override
+    public void beginRange() {
+        rangeInts = 0;
+    }
+
+    @Override
+    public void accept(int rideNumber, int tripCost, int tripDuration) {
+        if (rangeInts + 3 > range.length) {
+            range = Arrays.copyOf(range, range.length * 2);
+        }
+        range[rangeInts++] = rideNumber;
+        range[rangeInts++] = tripCost;
+        range[rangeInts++] = tripDuration;
+    }
+
+    @Override
+    public void endRange() throws IOException {
+        endRange(OutputSink.NO_RIDE);
+    }
+
+    @Override
+    public void endRange(byte[] whenEmpty) throws IOException {
+        if (rangeInts == 0) {
+            writeLine(whenEmpty);
+            return;
+        }
+        out.putInt(BinaryFormat.RANGE);
+        out.putInt(rangeInts / 3);
+        for (int i = 0; i < rangeInts; i++) {
+            out.putInt(range[i]);
+        }
+    }
+
+    // Writes out everything buffered so far.
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    void close() throws IOException {
+        out.close();
+    }
+}
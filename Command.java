@@ -0,0 +1,29 @@
+// Mutable command record. The CommandParser refills the same instance for every line, so nothing is allocated per command.
+class Command {
+    // Command types.
+    static final int INSERT = 1;
+    static final int GET_NEXT_RIDE = 2;
+    static final int PRINT = 3;
+    static final int UPDATE_TRIP = 4;
+    static final int CANCEL_RIDE = 5;
+    static final int COUNT = 6;
+    static final int SUM_COST = 7;
+    static final int RANK = 8;
+    static final int SELECT = 9;
+    static final int GET_NEXT_RIDES = 10;
+    static final int GET_NEXT_RIDE_NEAR = 11;
+    static final int MIN_COST = 12;
+
+    static final int MAX_ARGS = 6;
+    static final int MAX_NEXT_RIDES = 1 << 20;  // Largest k of GetNextRides(k); each missing ride is a line of output.
+
+    int type;
+    int argCount;
+    final int[] args = new int[MAX_ARGS];
+    long lineNumber;    // 1-based line of the input file this command came from.
+
+    // Helps read the i-th argument of the command.
+    int arg(int i) {
+        return args[i];
+    }
+}
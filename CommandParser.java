@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+    Streaming parser for the command file. It reads raw bytes from a channel into one reusable buffer and
+    decodes commands such as "Insert(25,98,46)" straight into a mutable Command record, so there is no
+    String, array or boxing allocation per line. Malformed lines are reported with their line number and skipped.
+
+    mapped() instead scans the file through memory-mapped windows of MAP_WINDOW bytes, so the bytes are never
+    copied out of the page cache. The parser is a byte-at-a-time state machine, so a line that straddles two
+    windows needs no special handling: the next byte simply comes from the next window.
+*/
+class CommandParser implements CommandSource {
+    private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_WINDOW = 1L << 26;    // 64 MB, old windows are unmapped by the GC
+    private static final int MAX_NAME_LENGTH = 16;
+
+    // Command names with their type and the allowed number of arguments.
+    private static final byte[][] NAMES = {
+        "Insert".getBytes(), "GetNextRide".getBytes(), "Print".getBytes(), "UpdateTrip".getBytes(), "CancelRide".getBytes(),
+        "Count".getBytes(), "SumCost".getBytes(), "Rank".getBytes(), "Select".getBytes(), "GetNextRides".getBytes(),
+        "GetNextRideNear".getBytes(), "MinCost".getBytes()
+    };
+    private static final int[] TYPES = {
+        Command.INSERT, Command.GET_NEXT_RIDE, Command.PRINT, Command.UPDATE_TRIP, Command.CANCEL_RIDE,
+        Command.COUNT, Command.SUM_COST, Command.RANK, Command.SELECT, Command.GET_NEXT_RIDES,
+        Command.GET_NEXT_RIDE_NEAR, Command.MIN_COST
+    };
+    private static final int[] MIN_ARGS = { 3, 0, 1, 2, 1, 2, 2, 1, 1, 1, 3, 2 };
+    private static final int[] MAX_ARGS = { 6, 0, 2, 2, 1, 2, 2, 1, 1, 1, 3, 2 };
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private final boolean mapped;
+    private long mappedUpTo;    // file offset where the next window starts, when mapped
+    private final byte[] name = new byte[MAX_NAME_LENGTH];
+    private long lineNumber;
+    private int malformedLines;
+
+    public CommandParser(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.mapped = false;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();    // start out empty so the first read refills it
+    }
+
+    private CommandParser(FileChannel file) {
+        this.channel = file;
+        this.mapped = true;
+        this.buffer = ByteBuffer.allocate(0);   // empty, the first read maps the first window
+    }
+
+    // Creates a parser that reads 'file' through memory-mapped windows, starting at its current position.
+    public static CommandParser mapped(FileChannel file) throws IOException {
+        CommandParser parser = new CommandParser(file);
+        parser.mappedUpTo = file.position();
+        return parser;
+    }
+
+    // Number of lines read so far.
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    // Number of lines that were reported as malformed so far.
+    public int getMalformedLines() {
+        return malformedLines;
+    }
+
+    // Reads the next well-formed command into 'cmd'. Returns FALSE once the input is exhausted.
+    @Override
+    public boolean next(Command cmd) throws IOException {
+        while (true) {
+            int c = nextByte();
+            if (c == EOF) {
+                return false;
+            }
+            lineNumber++;
+            c = skipBlanks(c);
+            if (c == '\n' || c == EOF) {
+                continue;   // blank line
+            }
+
+            // COMMAND NAME
+            int length = 0;
+            while (isLetter(c)) {
+                if (length < MAX_NAME_LENGTH) {
+                    name[length] = (byte) c;
+                }
+                length++;
+                c = nextByte();
+            }
+            int index = (length == 0 || length > MAX_NAME_LENGTH) ? -1 : lookupName(length);
+            if (index < 0) {
+                malformed(length == 0 ? "expected a command name" : "unknown command", c);
+                continue;
+            }
+
+            c = skipBlanks(c);
+            if (c != '(') {
+                malformed("expected '('", c);
+                continue;
+            }
+
+            // ARGUMENTS
+            int argCount = 0;
+            c = skipBlanks(nextByte());
+            boolean ok = true;
+            if (c != ')') {
+                while (true) {
+                    if (argCount == Command.MAX_ARGS) {
+                        ok = false;
+                        malformed("too many arguments", c);
+                        break;
+                    }
+                    boolean negative = false;
+                    if (c == '-') {
+                        negative = true;
+                        c = nextByte();
+                    }
+                    if (!isDigit(c)) {
+                        ok = false;
+                        malformed("expected a number", c);
+                        break;
+                    }
+                    long value = 0;
+                    while (isDigit(c)) {
+                        value = value * 10 + (c - '0');
+                        if (value > Integer.MAX_VALUE + 1L) {
+                            break;
+                        }
+                        c = nextByte();
+                    }
+                    if (negative) {
+                        value = -value;
+                    }
+                    if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+                        ok = false;
+                        malformed("number out of range", c);
+                        break;
+                    }
+                    cmd.args[argCount++] = (int) value;
+                    c = skipBlanks(c);
+                    if (c == ')') {
+                        break;
+                    }
+                    if (c != ',') {
+                        ok = false;
+                        malformed("expected ',' or ')'", c);
+                        break;
+                    }
+                    c = skipBlanks(nextByte());
+                }
+            }
+            if (!ok) {
+                continue;
+            }
+
+            // Only blanks may follow the closing bracket.
+            c = skipBlanks(nextByte());
+            if (c != '\n' && c != EOF) {
+                malformed("unexpected text after ')'", c);
+                continue;
+            }
+            if (argCount < MIN_ARGS[index] || argCount > MAX_ARGS[index]) {
+                malformed("wrong number of arguments", c);
+                continue;
+            }
+            if (!inRange(TYPES[index], cmd.args)) {
+                malformed("GetNextRides of more than " + Command.MAX_NEXT_RIDES + " rides", c);
+                continue;
+            }
+
+            cmd.type = TYPES[index];
+            cmd.argCount = argCount;
+            cmd.lineNumber = lineNumber;
+            return true;
+        }
+    }
+
+    // The name of command type 'type' as it is written in the input file, or NULL if there is no such type.
+    static String nameOf(int type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return new String(NAMES[i]);
+            }
+        }
+        return null;
+    }
+
+    // Whether a command of type 'type' may have 'argCount' arguments, as a line of the input file must.
+    static boolean isValid(int type, int argCount) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return argCount >= MIN_ARGS[i] && argCount <= MAX_ARGS[i];
+            }
+        }
+        return false;
+    }
+
+    // Whether the arguments of a command of type 'type' are within the limits of Command, which only bound
+    // the k of GetNextRides(k).
+    static boolean inRange(int type, int[] args) {
+        return type != Command.GET_NEXT_RIDES || args[0] <= Command.MAX_NEXT_RIDES;
+    }
+
+    // Reports the current line as malformed and skips whatever is left of it.
+    private void malformed(String reason, int c) throws IOException {
+        malformedLines++;
+        System.err.println("Malformed command on line " + lineNumber + ": " + reason);
+        while (c != '\n' && c != EOF) {
+            c = nextByte();
+        }
+    }
+
+    // Helps find the index of the command name held in 'name', or -1 if it is unknown.
+    private int lookupName(int length) {
+        for (int i = 0; i < NAMES.length; i++) {
+            byte[] candidate = NAMES[i];
+            if (candidate.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && candidate[j] == name[j]) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Skips spaces, tabs and carriage returns and returns the first other byte.
+    private int skipBlanks(int c) throws IOException {
+        while (c == ' ' || c == '\t' || c == '\r') {
+            c = nextByte();
+        }
+        return c;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    // Returns the next byte of input, refilling the buffer from the channel when needed.
+    private int nextByte() throws IOException {
+        if (!buffer.hasRemaining() && !refill()) {
+            return EOF;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    private boolean refill() throws IOException {
+        if (mapped) {
+            FileChannel file = (FileChannel) channel;
+            long length = Math.min(MAP_WINDOW, file.size() - mappedUpTo);
+            if (length <= 0) {
+                return false;
+            }
+            buffer = file.map(FileChannel.MapMode.READ_ONLY, mappedUpTo, length);
+            mappedUpTo += length;
+            return true;
+        }
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        return read > 0;
+    }
+}
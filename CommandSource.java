@@ -0,0 +1,7 @@
+import java.io.IOException;
+
+// Where replay() gets its commands: the CommandParser itself, or the parse stage of a Pipeline.
+interface CommandSource {
+    // Reads the next command into 'cmd'. Returns FALSE once there are no more.
+    boolean next(Command cmd) throws IOException;
+}
@@ -0,0 +1,47 @@
+/*
+    Debug output of the dispatcher, selected once at startup with --diagnostics=off|summary|trace.
+        OFF     - nothing is printed. Every debug path is a single static field check.
+        SUMMARY - one line of totals when the run ends.
+        TRACE   - SUMMARY plus per command output, including the heap dumps on every GetNextRide.
+*/
+class Diagnostics {
+    static final int OFF = 0;
+    static final int SUMMARY = 1;
+    static final int TRACE = 2;
+
+    private static int level = OFF;
+
+    // Sets the level from its name, returns FALSE if the name is unknown.
+    static boolean setLevel(String name) {
+        switch (name) {
+            case "off":
+                level = OFF;
+                return true;
+            case "summary":
+                level = SUMMARY;
+                return true;
+            case "trace":
+                level = TRACE;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean summary() {
+        return level >= SUMMARY;
+    }
+
+    static boolean tracing() {
+        return level >= TRACE;
+    }
+
+    // Prints the end of run totals when SUMMARY or TRACE is selected.
+    static void printSummary(long lines, long commands, int malformedLines, int pendingRides) {
+        if (!summary()) {
+            return;
+        }
+        System.out.println("Processed " + commands + " commands from " + lines + " lines (" + malformedLines + " malformed), "
+                + pendingRides + " rides pending");
+    }
+}
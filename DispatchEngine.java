@@ -0,0 +1,165 @@
+import java.io.IOException;
+
+/*
+    The operations gatorTaxi runs for the commands of the input file. Rides found by a command are handed
+    to a RideConsumer instead of being returned, so an engine never has to allocate per command.
+    Engines are picked at startup with --engine=<name>, see create().
+*/
+interface DispatchEngine {
+    // Adds a ride. Returns FALSE, and changes nothing, if the ride number is already taken.
+    boolean insert(int rideNumber, int tripCost, int tripDuration);
+
+    // Adds a ride that is cancelled once 'ttl' ticks of the expiry clock have passed, see ExpiringDispatchEngine.
+    // An engine without that clock keeps it like any other ride.
+    default boolean insert(int rideNumber, int tripCost, int tripDuration, int ttl) {
+        return insert(rideNumber, tripCost, tripDuration);
+    }
+
+    // Adds a ride picked up at (x, y), which GetNextRideNear finds, see SpatialDispatchEngine. An engine without
+    // a spatial index keeps it like any other ride.
+    default boolean insert(int rideNumber, int tripCost, int tripDuration, int x, int y) {
+        return insert(rideNumber, tripCost, tripDuration);
+    }
+
+    // Adds a ride picked up at (x, y) that is cancelled once 'ttl' ticks have passed.
+    default boolean insert(int rideNumber, int tripCost, int tripDuration, int x, int y, int ttl) {
+        return insert(rideNumber, tripCost, tripDuration, x, y);
+    }
+
+    // Tells the engine that 'commands' commands have started so far. replay() calls it before every command;
+    // engines without an expiry clock ignore it.
+    default void advanceClock(long commands) {
+    }
+
+    // Removes the ride with the lowest (tripCost, tripDuration) and hands it to 'out'. Returns FALSE if there are no rides.
+    boolean getNextRide(RideConsumer out);
+
+    // Removes up to k rides in the order k calls of getNextRide() would, handing each to 'out'. Returns the
+    // number of rides removed, which is less than k only once there are no rides left.
+    default int getNextRides(int k, RideConsumer out) {
+        int removed = 0;
+        while (removed < k && getNextRide(out)) {
+            removed++;
+        }
+        return removed;
+    }
+
+    // Removes the ride with the lowest (tripCost, tripDuration) among those picked up within 'radius' of (x, y)
+    // and hands it to 'out'. Returns FALSE if there is none, as always for an engine without a spatial index.
+    default boolean getNextRideNear(int x, int y, int radius, RideConsumer out) {
+        return false;
+    }
+
+    // Hands the pickup location of the ride to 'out' as (rideNumber, x, y). Returns FALSE if the ride has none,
+    // as always for an engine without a spatial index.
+    default boolean location(int rideNumber, RideConsumer out) {
+        return false;
+    }
+
+    // Hands the ride getNextRide() would remove to 'out', without removing it. Returns FALSE if there are no rides.
+    boolean peekNextRide(RideConsumer out);
+
+    // Hands the ride to 'out'. Returns FALSE if there is no such ride.
+    boolean print(int rideNumber, RideConsumer out);
+
+    // Hands every ride numbered low..high to 'out', in ride number order.
+    default void printRange(int low, int high, RideConsumer out) {
+        RideCursor cursor = seek(low, high);
+        while (cursor.next()) {
+            out.accept(cursor.rideNumber(), cursor.tripCost(), cursor.tripDuration());
+        }
+    }
+
+    // Positions the engine's cursor just before the first ride numbered >= low. The cursor stops after 'high'.
+    RideCursor seek(int low, int high);
+
+    // Loads every ride of 'batch', which must be sorted by ride number without repeats, into an engine
+    // that has no rides yet. Engines build their structures in O(n) instead of inserting one ride at a time.
+    void bulkLoad(InsertBatch batch);
+
+    // Applies the UpdateTrip rules for a new trip duration. Does nothing if there is no such ride.
+    void updateTrip(int rideNumber, int newTripDuration);
+
+    // Removes the ride if it exists.
+    void cancelRide(int rideNumber);
+
+    // Makes every change applied so far durable. Called before results are acknowledged, see Server; only an
+    // engine that keeps a log has anything to do.
+    default void sync() {
+    }
+
+    // Number of pending rides.
+    int size();
+
+    // Number of rides numbered low..high.
+    int count(int low, int high);
+
+    // Total tripCost of the rides numbered low..high.
+    long sumCost(int low, int high);
+
+    // Number of rides numbered at most 'rideNumber'.
+    int rank(int rideNumber);
+
+    // Hands the ride with the lowest (tripCost, tripDuration) among those numbered low..high to 'out', the
+    // smallest ride number on ties. Returns FALSE if there is none. This default scans the range; an engine
+    // that keeps the minimum in its index, as the object engine's tree does, answers in O(log n).
+    default boolean minCost(int low, int high, RideConsumer out) {
+        RideCursor cursor = seek(low, high);
+        boolean found = false;
+        int rideNumber = 0, tripCost = 0, tripDuration = 0;
+        while (cursor.next()) {
+            if (!found || cursor.tripCost() < tripCost || (cursor.tripCost() == tripCost && cursor.tripDuration() < tripDuration)) {
+                found = true;
+                rideNumber = cursor.rideNumber();
+                tripCost = cursor.tripCost();
+                tripDuration = cursor.tripDuration();
+            }
+        }
+        if (found) {
+            out.accept(rideNumber, tripCost, tripDuration);
+        }
+        return found;
+    }
+
+    // Hands the k-th smallest ride by ride number (1-based) to 'out'. Returns FALSE if there are fewer than k rides.
+    boolean select(int k, RideConsumer out);
+
+    // Height of the engine's ordered index (levels of the tree, or of B+-tree pages), or -1 if the engine does
+    // not report one. Read by Metrics when it dumps, and may walk the whole index.
+    default int height() {
+        return -1;
+    }
+
+    // Prints the internal structures, used by --diagnostics=trace at the end of a run.
+    default void printDebugState() {
+    }
+
+    // Releases what the engine holds besides memory: worker threads, log files. The engine is not used again.
+    default void close() throws IOException {
+    }
+
+    // Names accepted by create().
+    String[] KINDS = { "object", "btree", "array", "offheap", "sharded" };
+
+    // Creates the engine registered under options.engine, or returns NULL if there is none. Also read:
+    //   options.shards          shards of a "sharded" engine, 0 meaning one per available processor
+    //   options.queue, policy   the RideQueue of an "object" or "btree" engine and the RidePolicy it hands
+    //                           out rides by, see RideQueue.create
+    // The decorators, e.g. --state-dir or the TTL clock, are not applied here, see gatorTaxi.main.
+    static DispatchEngine create(Options options) {
+        switch (options.engine) {
+            case "object":
+                return new ObjectDispatchEngine(RideQueue.create(options.queue, RidePolicy.create(options.policy)));
+            case "btree":
+                return new BTreeDispatchEngine(RideQueue.create(options.queue, RidePolicy.create(options.policy)));
+            case "array":
+                return new ArrayDispatchEngine(1024);
+            case "offheap":
+                return new OffHeapDispatchEngine();
+            case "sharded":
+                return new ShardedDispatchEngine("array", options.shards > 0 ? options.shards : Runtime.getRuntime().availableProcessors());
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/*
+    Wraps an engine so that every mutation it applies is written to a StateStore, and snapshots the
+    rides every 'snapshotEvery' mutations. A run started with the same --state-dir picks up where the
+    last one stopped, see StateStore.recover(). Reads go straight to the wrapped engine.
+
+    Pickup locations are logged with their Insert and kept in snapshots, so the wrapped engine should be the
+    SpatialDispatchEngine. TTLs and the queueing order of --policy=wait are not logged, which is why --state-dir
+    turns the TTL clock off and refuses --policy=wait, see Options.
+*/
+class DurableDispatchEngine implements DispatchEngine, RideConsumer {
+    private final DispatchEngine engine;
+    private final StateStore store;
+    private final long snapshotEvery;
+    private long mutationsSinceSnapshot;
+    private RideConsumer nextRideOut;   // where getNextRide() forwards the ride
+    private int nextRide;               // the ride getNextRide() handed out
+    private boolean logEachRide;        // set while getNextRides() runs
+
+    DurableDispatchEngine(DispatchEngine engine, StateStore store, long snapshotEvery) throws IOException {
+        this.engine = engine;
+        this.store = store;
+        this.snapshotEvery = snapshotEvery;
+        store.recover(engine);
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        if (!engine.insert(rideNumber, tripCost, tripDuration)) {
+            return false;
+        }
+        log(WriteAheadLog.INSERT, rideNumber, tripCost, tripDuration);
+        applied(1);
+        return true;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration, int x, int y) {
+        if (!engine.insert(rideNumber, tripCost, tripDuration, x, y)) {
+            return false;
+        }
+        try {
+            store.logLocated(rideNumber, tripCost, tripDuration, x, y);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        applied(1);
+        return true;
+    }
+
+    @Override
+    public void bulkLoad(InsertBatch batch) {
+        engine.bulkLoad(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            log(WriteAheadLog.INSERT, batch.ride(i), batch.cost(i), batch.duration(i));
+        }
+        applied(batch.size());
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        nextRideOut = out;
+        if (!engine.getNextRide(this)) {
+            return false;
+        }
+        log(WriteAheadLog.REMOVE, nextRide, 0, 0);
+        applied(1);
+        return true;
+    }
+
+    @Override
+    public boolean getNextRideNear(int x, int y, int radius, RideConsumer out) {
+        nextRideOut = out;
+        if (!engine.getNextRideNear(x, y, radius, this)) {
+            return false;
+        }
+        log(WriteAheadLog.REMOVE, nextRide, 0, 0);
+        applied(1);
+        return true;
+    }
+
+    @Override
+    public int getNextRides(int k, RideConsumer out) {
+        nextRideOut = out;
+        logEachRide = true;
+        int removed;
+        try {
+            removed = engine.getNextRides(k, this);
+        } finally {
+            logEachRide = false;
+        }
+        applied(removed);
+        return removed;
+    }
+
+    // Receives the rides handed out by getNextRide(), getNextRides() and getNextRideNear() and passes them on.
+    @Override
+    public void accept(int rideNumber, int tripCost, int tripDuration) {
+        nextRide = rideNumber;
+        if (logEachRide) {
+            log(WriteAheadLog.REMOVE, rideNumber, 0, 0);
+        }
+        nextRideOut.accept(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        engine.updateTrip(rideNumber, newTripDuration);
+        log(WriteAheadLog.UPDATE_TRIP, rideNumber, 0, newTripDuration);
+        applied(1);
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        engine.cancelRide(rideNumber);
+        log(WriteAheadLog.REMOVE, rideNumber, 0, 0);
+        applied(1);
+    }
+
+    @Override public boolean peekNextRide(RideConsumer out) { return engine.peekNextRide(out); }
+    @Override public boolean print(int rideNumber, RideConsumer out) { return engine.print(rideNumber, out); }
+    @Override public boolean location(int rideNumber, RideConsumer out) { return engine.location(rideNumber, out); }
+    @Override public void printRange(int low, int high, RideConsumer out) { engine.printRange(low, high, out); }
+    @Override public RideCursor seek(int low, int high) { return engine.seek(low, high); }
+    @Override public int size() { return engine.size(); }
+    @Override public int height() { return engine.height(); }
+    @Override public int count(int low, int high) { return engine.count(low, high); }
+    @Override public long sumCost(int low, int high) { return engine.sumCost(low, high); }
+    @Override public int rank(int rideNumber) { return engine.rank(rideNumber); }
+    @Override public boolean select(int k, RideConsumer out) { return engine.select(k, out); }
+    @Override public boolean minCost(int low, int high, RideConsumer out) { return engine.minCost(low, high, out); }
+    @Override public void printDebugState() { engine.printDebugState(); }
+
+    @Override
+    public void sync() {
+        try {
+            store.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Commits the log, waits for a running snapshot and closes the wrapped engine.
+    @Override
+    public void close() throws IOException {
+        store.close();
+        engine.close();
+    }
+
+    private void log(int type, int rideNumber, int tripCost, int tripDuration) {
+        try {
+            store.log(type, rideNumber, tripCost, tripDuration);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Counts mutations that are complete in both the engine and the log, snapshotting when enough have built up.
+    // Never called halfway through an operation, so a snapshot always matches the start of the new segment.
+    private void applied(int mutations) {
+        mutationsSinceSnapshot += mutations;
+        if (mutationsSinceSnapshot >= snapshotEvery) {
+            mutationsSinceSnapshot = 0;
+            try {
+                store.snapshot(engine);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
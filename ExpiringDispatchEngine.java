@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.util.function.IntConsumer;
+
+/*
+    Wraps an engine so that a ride inserted with a TTL, Insert(ride, cost, duration, ttl), is cancelled once
+    'ttl' ticks have passed. With --ttl-clock=logical a tick is one command, so a replay expires the same rides
+    at the same lines every time: the ride is gone for the command 'ttl' lines after its Insert. With
+    --ttl-clock=wall a tick is a millisecond. replay() moves the clock forward before every command, and the
+    rides that are due go through the wrapped engine's cancelRide(), the path CancelRide takes, so they leave
+    the tree and the heap together.
+
+    The TimingWheel only holds rides that are still pending: one that leaves through GetNextRide,
+    GetNextRideNear, CancelRide or an UpdateTrip that cancels it is taken off the wheel at once.
+*/
+class ExpiringDispatchEngine implements DispatchEngine, RideConsumer {
+    private final DispatchEngine engine;
+    private final boolean wallClock;
+    private final long originNanos = System.nanoTime();
+    private final TimingWheel wheel = new TimingWheel(1024);
+    private final IntConsumer expire;
+    private final RideConsumer ignore = (rideNumber, tripCost, tripDuration) -> { };
+    private RideConsumer nextRideOut;   // where getNextRide() forwards the ride
+
+    ExpiringDispatchEngine(DispatchEngine engine, boolean wallClock) {
+        this.engine = engine;
+        this.wallClock = wallClock;
+        this.expire = rideNumber -> {
+            engine.cancelRide(rideNumber);
+            if (Metrics.enabled) {
+                Metrics.expired++;
+            }
+        };
+    }
+
+    @Override
+    public void advanceClock(long commands) {
+        wheel.advance(wallClock ? (System.nanoTime() - originNanos) / 1_000_000 : commands, expire);
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration, int ttl) {
+        if (!engine.insert(rideNumber, tripCost, tripDuration)) {
+            return false;
+        }
+        wheel.schedule(rideNumber, wheel.now() + Math.max(1, ttl));
+        return true;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        return engine.insert(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration, int x, int y, int ttl) {
+        if (!engine.insert(rideNumber, tripCost, tripDuration, x, y)) {
+            return false;
+        }
+        wheel.schedule(rideNumber, wheel.now() + Math.max(1, ttl));
+        return true;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration, int x, int y) {
+        return engine.insert(rideNumber, tripCost, tripDuration, x, y);
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        nextRideOut = out;
+        return engine.getNextRide(this);
+    }
+
+    @Override
+    public int getNextRides(int k, RideConsumer out) {
+        nextRideOut = out;
+        return engine.getNextRides(k, this);
+    }
+
+    @Override
+    public boolean getNextRideNear(int x, int y, int radius, RideConsumer out) {
+        nextRideOut = out;
+        return engine.getNextRideNear(x, y, radius, this);
+    }
+
+    // Receives the rides handed out by getNextRide(), getNextRides() and getNextRideNear() and passes them on.
+    @Override
+    public void accept(int rideNumber, int tripCost, int tripDuration) {
+        if (wheel.size() != 0) {
+            wheel.cancel(rideNumber);
+        }
+        nextRideOut.accept(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        engine.updateTrip(rideNumber, newTripDuration);
+        // a big enough increase cancels the ride, which must not expire later.
+        if (wheel.contains(rideNumber) && !engine.print(rideNumber, ignore)) {
+            wheel.cancel(rideNumber);
+        }
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        engine.cancelRide(rideNumber);
+        if (wheel.size() != 0) {
+            wheel.cancel(rideNumber);
+        }
+    }
+
+    // Only ever called on an empty engine, so the wheel is empty too.
+    @Override public void bulkLoad(InsertBatch batch) { engine.bulkLoad(batch); }
+    @Override public boolean peekNextRide(RideConsumer out) { return engine.peekNextRide(out); }
+    @Override public boolean print(int rideNumber, RideConsumer out) { return engine.print(rideNumber, out); }
+    @Override public boolean location(int rideNumber, RideConsumer out) { return engine.location(rideNumber, out); }
+    @Override public void printRange(int low, int high, RideConsumer out) { engine.printRange(low, high, out); }
+    @Override public RideCursor seek(int low, int high) { return engine.seek(low, high); }
+    @Override public void sync() { engine.sync(); }
+    @Override public int size() { return engine.size(); }
+    @Override public int height() { return engine.height(); }
+    @Override public int count(int low, int high) { return engine.count(low, high); }
+    @Override public long sumCost(int low, int high) { return engine.sumCost(low, high); }
+    @Override public int rank(int rideNumber) { return engine.rank(rideNumber); }
+    @Override public boolean select(int k, RideConsumer out) { return engine.select(k, out); }
+    @Override public boolean minCost(int low, int high, RideConsumer out) { return engine.minCost(low, high, out); }
+    @Override public void printDebugState() { engine.printDebugState(); }
+    @Override public void close() throws IOException { engine.close(); }
+}
@@ -0,0 +1,287 @@
+// Binary heap, the default RideQueue.
+class Heap implements RideQueue {
+    // Class member variables
+    public HeapNode[] Heap;
+    public long[] keys;     // keys[i] is the RidePolicy key of Heap[i], what the sifts compare.
+    public int size;
+    public int maxsize;     // Current capacity of the backing array, doubles whenever it fills up.
+    // Initializing front as static with unity
+    private static final int FRONT = 1;
+    private final RidePolicy policy;
+    private long sequence;  // Rides queued so far, numbers the next one for the policy.
+    private final HeapFrontier frontier = new HeapFrontier();   // Used by removeSmallest().
+    
+    // Constructor of this class. 'maxsize' is only the initial capacity.
+    public Heap(int maxsize) {
+        this(maxsize, RidePolicy.create("cost"));
+    }
+
+    // Same, handing out rides in the order of 'policy'.
+    public Heap(int maxsize, RidePolicy policy) {
+
+        // This keyword refers to current object itself
+        this.maxsize = Math.max(1, maxsize);
+        this.size = 0;
+        this.policy = policy;
+
+        Heap = new HeapNode[this.maxsize + 1];
+        keys = new long[this.maxsize + 1];
+    }
+    
+    // Number of nodes in the Heap.
+    @Override
+    public int size() {
+        return size;
+    }
+
+    //Helps find ROOT of the Heap.
+    public HeapNode getRoot(){
+        return size>=1?Heap[1]:null; 
+    }
+
+    // Get PARENT position of any node.
+    private int parentPosition(int pos) {
+        return pos / 2;
+    }
+
+    // Get position of the RIGHT CHILD of any node.
+    private int rChildPosition(int pos) {
+        return (2 * pos) + 1;
+    }
+
+    // Get position of the LEFT CHILD of any node.
+    private int lChildPosition(int pos) {
+        return (2 * pos);
+    }
+
+    // Results in TRUE if a node is LEAF node.
+    private boolean checkForLeaf(int pos) {
+
+        if (pos > (size / 2)) {
+            return true;
+        }
+
+        return false;
+    }
+
+    // Moves the node at 'pos' UP until its parent is smaller. Returns the final position.
+    private int siftUp(int pos) {
+        HeapNode moving = Heap[pos];
+        long movingKey = keys[pos];
+        while (pos > FRONT && RidePolicy.before(movingKey, moving, keys[parentPosition(pos)], Heap[parentPosition(pos)])) {
+            if (Metrics.enabled)
+                Metrics.siftSteps++;
+            place(Heap[parentPosition(pos)], keys[parentPosition(pos)], pos);
+            pos = parentPosition(pos);
+        }
+        place(moving, movingKey, pos);
+        return pos;
+    }
+
+    // Moves the node at 'pos' DOWN until both children are bigger. Returns the final position.
+    private int siftDown(int pos) {
+        HeapNode moving = Heap[pos];
+        long movingKey = keys[pos];
+        while (!checkForLeaf(pos)) {
+            // pick the smaller of the two children, the right child may not exist.
+            int child = lChildPosition(pos);
+            int right = rChildPosition(pos);
+            if (right <= size && RidePolicy.before(keys[right], Heap[right], keys[child], Heap[child])) {
+                child = right;
+            }
+            if (!RidePolicy.before(keys[child], Heap[child], movingKey, moving)) {
+                break;
+            }
+            if (Metrics.enabled)
+                Metrics.siftSteps++;
+            place(Heap[child], keys[child], pos);
+            pos = child;
+        }
+        place(moving, movingKey, pos);
+        return pos;
+    }
+
+    // Puts 'node' in the hole at 'pos', whose children are heaps, bottom-up: the hole first follows the smaller
+    // child down to a leaf, then the node climbs back up from there. The nodes removeSmallest() fills holes with
+    // come from the end of the heap and belong near the bottom, so this takes one comparison per level instead of
+    // the two of siftDown().
+    private void sinkInto(int pos, HeapNode node, long key) {
+        int top = pos;
+        while (!checkForLeaf(pos)) {
+            int child = lChildPosition(pos);
+            int right = rChildPosition(pos);
+            if (right <= size && RidePolicy.before(keys[right], Heap[right], keys[child], Heap[child])) {
+                child = right;
+            }
+            if (Metrics.enabled)
+                Metrics.siftSteps++;
+            place(Heap[child], keys[child], pos);
+            pos = child;
+        }
+        while (pos > top && RidePolicy.before(key, node, keys[parentPosition(pos)], Heap[parentPosition(pos)])) {
+            place(Heap[parentPosition(pos)], keys[parentPosition(pos)], pos);
+            pos = parentPosition(pos);
+        }
+        place(node, key, pos);
+    }
+
+    // Restores the heap property around 'pos' by sifting up or down, whichever is needed.
+    private void reposition(int pos) {
+        if (siftUp(pos) == pos) {
+            siftDown(pos);
+        }
+    }
+
+    // Helps PLACE a node and its key at 'pos' in the HEAP. Also updates its index reference for O(1) access.
+    private void place(HeapNode node, long key, int pos) {
+        Heap[pos] = node;
+        keys[pos] = key;
+        node.myIndexInHeap = pos;
+    }
+
+    // Doubles the backing arrays once they are full, so inserts stay amortized O(log n).
+    private void grow() {
+        maxsize = maxsize * 2;
+        Heap = java.util.Arrays.copyOf(Heap, maxsize + 1);
+        keys = java.util.Arrays.copyOf(keys, maxsize + 1);
+    }
+
+    // To insert a node into the heap
+    public void insert(HeapNode element) {
+
+        if (size >= maxsize) {
+            grow();
+        }
+        size++;
+        place(element, policy.key(element, sequence++), size);
+        siftUp(size);
+    }
+
+    // Replaces the heap, which must be empty, by 'nodes' in O(n) using Floyd's bottom-up heapify.
+    public void buildFrom(HeapNode[] nodes, InsertBatch batch) {
+        int count = batch.size();
+        while (maxsize < count) {
+            grow();
+        }
+        long first = sequence;
+        for (int i = 0; i < count; i++) {
+            long queued = first + batch.position(i);
+            place(nodes[i], policy.key(nodes[i], queued), i + 1);
+            sequence = Math.max(sequence, queued + 1);
+        }
+        size = count;
+        // every position past size/2 is a leaf, so sifting down the rest from the bottom up makes a heap
+        for (int pos = parentPosition(size); pos >= FRONT; pos--) {
+            siftDown(pos);
+        }
+    }
+
+    //Helps remove the MINIMUM node from the Heap.
+    public HeapNode removeMin() {
+        if(size==0)
+            return null;
+        HeapNode popped = Heap[FRONT];
+        deleteRandomNode(popped);
+        return popped;
+    }
+
+    //Helps remove the 'k' lowest nodes at once: they are found first, then the holes they leave are filled from the end.
+    @Override
+    public int removeSmallest(int k, HeapNode[] out) {
+        int count = Math.min(k, size);
+        if (count <= 0) {
+            return 0;
+        }
+        frontier.walk(Heap, keys, FRONT, size + 1, 2, 0, count);
+        for (int i = 0; i < count; i++) {
+            int pos = frontier.taken[i];
+            out[i] = Heap[pos];
+            out[i].myIndexInHeap = 0;
+            Heap[pos] = null;
+        }
+        int newEnd = size + 1 - count;
+        int tail = size;
+        size -= count;
+        for (int i = count - 1; i >= 0; i--) {
+            int hole = frontier.taken[i];
+            if (hole < newEnd) {
+                while (Heap[tail] == null) {
+                    tail--;
+                }
+                HeapNode last = Heap[tail];
+                Heap[tail--] = null;
+                sinkInto(hole, last, keys[tail + 1]);
+            }
+        }
+        return count;
+    }
+
+    //Deletes a RANDOM Node from the Heap using Red Black Tree Reference.
+    public void deleteRandomNode(HeapNode heapNodeRefOfDeletedNode) {
+
+        int indexOfNodeToDelete = heapNodeRefOfDeletedNode.myIndexInHeap;
+        HeapNode last = Heap[size];
+        long lastKey = keys[size];
+        Heap[size--] = null;
+        heapNodeRefOfDeletedNode.myIndexInHeap = 0;
+        if(indexOfNodeToDelete<=size){
+            // move the LAST node into the hole and let it find its place from there.
+            place(last, lastKey, indexOfNodeToDelete);
+            reposition(indexOfNodeToDelete);
+        }
+
+    }
+
+    // Prints all the elements of a heap.
+    public void print() {
+        System.out.println("\n\nsize = " + size);
+        for (int i = 1; i <= size / 2; i++) {
+
+            int parent = Heap[i].rideNumber;
+            int left = -1, right = -1;
+            if (Heap[2 * i] != null)
+                left = Heap[2 * i].rideNumber;
+
+            if (2 * i + 1 <= size && Heap[2 * i + 1] != null)
+                right = Heap[2 * i + 1].rideNumber;
+
+            // Printing the parent and both childrens
+            System.out.print("Parent = " + parent +" at i= "+i+" & myIndex = "+Heap[i].myIndexInHeap);
+            if (left != -1)
+                System.out.print("Left = " + left);
+            else
+                System.out.print("Left = NULL");
+
+            if (right != -1)
+                System.out.print("Right = " + right);
+            else
+                System.out.print("Right = NULL");
+            System.out.println();
+        }
+    }
+
+    //Helps print and validate the connection between Heap and Red Black Tree using Red Black Tree Reference.
+    public void printConnection() {
+        System.out.println("\n\n");
+        for (int i = 1; i <= size; i++) {
+            if (Heap[i] != null) {
+                System.out.println(
+                        Heap[i].rideNumber + " , " +
+                        Heap[i].rbTreference.tripCost + " , " +
+                        Heap[i].rbTreference.tripDuration +" , "+
+                        " i= "+i+" & myIndex = "+Heap[i].myIndexInHeap
+                        );
+            }
+
+        }
+
+    }
+    
+    //Helps Heapify after the cost or duration of 'updatedNode' has changed, starting from its own position.
+    public void fixUpdate(HeapNode updatedNode){
+        int pos = updatedNode.myIndexInHeap;
+        keys[pos] = policy.rekey(keys[pos], updatedNode);
+        reposition(pos);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+    The k lowest nodes of an implicit heap (Heap or QuadHeap) in one go, for RideQueue.removeSmallest. They
+    form a subtree at the root, so walk() finds them lowest first with a small heap of candidate positions:
+    it starts with the root, and every position taken offers its children. That is O(k log k) comparisons and
+    moves nothing. The queue then repairs itself in one pass over 'taken' backwards: each hole left before the
+    new end of the heap gets the last node not taken, and is sifted down. A position is only taken after its
+    parent, so backwards every hole comes after the holes below it, as in Floyd's heapify, and every hole's
+    parent was taken too, so that is all the repair there is.
+*/
+final class HeapFrontier {
+    private int[] candidates = new int[16]; // positions, a binary heap ordered like the queue
+    private long[] candidateKeys = new long[16];    // keys of 'candidates', so comparing them stays in this array
+    private int count;
+    int[] taken = new int[16];              // positions walk() took, lowest node first
+
+    // Takes the 'k' lowest positions of 'heap', whose keys are in 'keys', into 'taken'. The root is at 'root',
+    // the children of 'pos' at arity * pos + offset and the 'arity' - 1 positions after it, and positions
+    // from 'end' on are empty. The heap must hold at least 'k' nodes.
+    void walk(HeapNode[] heap, long[] keys, int root, int end, int arity, int offset, int k) {
+        if (taken.length < k) {
+            taken = new int[k];
+        }
+        if (candidates.length < k * (arity - 1) + 1) {
+            candidates = new int[k * (arity - 1) + 1];
+            candidateKeys = new long[candidates.length];
+        }
+        count = 0;
+        offer(heap, keys, root);
+        for (int i = 0; i < k; i++) {
+            int pos = takeBest(heap);
+            taken[i] = pos;
+            long first = (long) arity * pos + offset;
+            for (int child = 0; child < arity && first + child < end; child++) {
+                offer(heap, keys, (int) (first + child));
+            }
+        }
+    }
+
+    // Helps add 'pos' to the candidates.
+    private void offer(HeapNode[] heap, long[] keys, int pos) {
+        long key = keys[pos];
+        int at = count++;
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (!before(key, pos, candidateKeys[parent], candidates[parent], heap)) {
+                break;
+            }
+            candidates[at] = candidates[parent];
+            candidateKeys[at] = candidateKeys[parent];
+            at = parent;
+        }
+        candidates[at] = pos;
+        candidateKeys[at] = key;
+    }
+
+    // Helps remove and return the candidate holding the lowest node.
+    private int takeBest(HeapNode[] heap) {
+        int best = candidates[0];
+        count--;
+        int moving = candidates[count];
+        long movingKey = candidateKeys[count];
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && before(candidateKeys[child + 1], candidates[child + 1], candidateKeys[child], candidates[child], heap)) {
+                child++;
+            }
+            if (!before(candidateKeys[child], candidates[child], movingKey, moving, heap)) {
+                break;
+            }
+            candidates[at] = candidates[child];
+            candidateKeys[at] = candidateKeys[child];
+            at = child;
+        }
+        candidates[at] = moving;
+        candidateKeys[at] = movingKey;
+        return best;
+    }
+
+    // RidePolicy.before() for the nodes at positions 'a' and 'b', which are only looked at when the keys tie.
+    private static boolean before(long keyA, int a, long keyB, int b, HeapNode[] heap) {
+        return keyA < keyB || (keyA == keyB && RidePolicy.before(keyA, heap[a], keyB, heap[b]));
+    }
+}
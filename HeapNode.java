@@ -0,0 +1,16 @@
+// Node class for the heap.
+class HeapNode {
+    int rideNumber;
+    int tripCost;
+    int tripDuration;
+    Node rbTreference;  // stores the node's pointer to RB tree
+    int myIndexInHeap;
+
+    //Construtor of the HeapNode.
+    public HeapNode(int rideNumber, int tripCost, int tripDuration) {
+        this.rideNumber = rideNumber;
+        this.tripCost = tripCost;
+        this.tripDuration = tripDuration;
+    }
+
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+/*
+    A run of consecutive Insert commands collected for DispatchEngine.bulkLoad(). Rides are stored as
+    parallel int columns; sortByRideNumber() orders them by ride number and drops repeated ride numbers,
+    keeping the first one in input order, exactly as inserting them one at a time would.
+*/
+class InsertBatch {
+    private int[] rideNumber;
+    private int[] tripCost;
+    private int[] tripDuration;
+    private int[] scratch;  // reordering buffer for sortByRideNumber()
+    private long[] keys;    // ride number in the high half, input position in the low half
+    private int size;
+
+    InsertBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        rideNumber = new int[capacity];
+        tripCost = new int[capacity];
+        tripDuration = new int[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(int ride, int cost, int duration) {
+        if (size == rideNumber.length) {
+            int capacity = size * 2;
+            rideNumber = Arrays.copyOf(rideNumber, capacity);
+            tripCost = Arrays.copyOf(tripCost, capacity);
+            tripDuration = Arrays.copyOf(tripDuration, capacity);
+        }
+        rideNumber[size] = ride;
+        tripCost[size] = cost;
+        tripDuration[size] = duration;
+        size++;
+    }
+
+    int ride(int i) {
+        return rideNumber[i];
+    }
+
+    int cost(int i) {
+        return tripCost[i];
+    }
+
+    int duration(int i) {
+        return tripDuration[i];
+    }
+
+    // Where ride 'i' stood among the Inserts of the batch before sortByRideNumber(), which must have run.
+    int position(int i) {
+        return (int) keys[i];
+    }
+
+    // Sorts the batch by ride number and removes repeated ride numbers. Returns the number of rides removed.
+    int sortByRideNumber() {
+        if (keys == null || keys.length != rideNumber.length) {  // the columns grew since the last sort
+            keys = new long[rideNumber.length];
+            scratch = new int[rideNumber.length];
+        }
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) rideNumber[i] << 32) | i;  // ties fall back to input order
+            sorted &= i == 0 || keys[i - 1] < keys[i];
+        }
+        if (!sorted) {  // replayed logs are usually in order already
+            Arrays.sort(keys, 0, size);
+        }
+
+        // keep the first occurrence of every ride number
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || (int) (keys[i] >> 32) != (int) (keys[distinct - 1] >> 32)) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        tripCost = reorder(tripCost, distinct);
+        tripDuration = reorder(tripDuration, distinct);
+        for (int i = 0; i < distinct; i++) {
+            rideNumber[i] = (int) (keys[i] >> 32);
+        }
+        int removed = size - distinct;
+        size = distinct;
+        return removed;
+    }
+
+    // Gathers 'column' into the order given by the low halves of 'keys', reusing the scratch array.
+    private int[] reorder(int[] column, int count) {
+        int[] target = scratch;
+        for (int i = 0; i < count; i++) {
+            target[i] = column[(int) keys[i]];
+        }
+        scratch = column;
+        return target;
+    }
+}
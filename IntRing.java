@@ -0,0 +1,169 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Bounded single-producer / single-consumer queue of ints, used to connect the Pipeline stages.
+    Records of several ints are written with put() and become visible to the consumer in batches, every
+    'publishEvery' ints or on flush(), so the cross-thread handoff costs one ordered write per batch.
+    A full ring makes the producer wait (backpressure), an empty one makes the consumer wait. The time each
+    side spends waiting is counted, see producerWaitNanos() / consumerWaitNanos(). A consumer that finds the
+    ring empty for a while parks until flush() or close() wakes it, so an idle consumer thread costs no CPU.
+*/
+class IntRing {
+    private static final int PARK_AFTER = 200;  // pause() rounds an empty ring is spun and yielded on before parking
+
+    private final int[] slots;
+    private final int mask;
+    private final int publishEvery;
+
+    // Shared positions, each written by one side only. 'written' also carries the end of the stream.
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private volatile boolean closed;
+    private volatile Thread parkedConsumer;     // set while the consumer is parked, or about to park
+
+    // Producer side.
+    private long writeIndex;
+    private long publishedIndex;
+    private long consumedCache;     // last value of 'consumed' seen, avoids reading it on every put
+    private long producerWaitNanos;
+
+    // Consumer side.
+    private long readIndex;
+    private long writtenCache;
+    private long consumerWaitNanos;
+
+    IntRing(int capacity, int publishEvery) {
+        if (Integer.bitCount(capacity) != 1 || Integer.bitCount(publishEvery) != 1 || publishEvery > capacity) {
+            throw new IllegalArgumentException("capacity and publishEvery must be powers of two, capacity >= publishEvery");
+        }
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.publishEvery = publishEvery;
+    }
+
+    // ----------------------------------- PRODUCER -----------------------------------
+
+    void put(int value) {
+        if (writeIndex - consumedCache == slots.length) {
+            consumedCache = consumed.get();
+            if (writeIndex - consumedCache == slots.length) {
+                flush();    // the consumer may be waiting for what is already here
+                long start = System.nanoTime();
+                int idle = 0;
+                while (writeIndex - (consumedCache = consumed.get()) == slots.length) {
+                    idle = pause(idle);
+                }
+                producerWaitNanos += System.nanoTime() - start;
+            }
+        }
+        slots[(int) writeIndex & mask] = value;
+        writeIndex++;
+        if (writeIndex - publishedIndex >= publishEvery) {
+            flush();
+        }
+    }
+
+    // Makes every int put so far visible to the consumer.
+    void flush() {
+        if (publishedIndex != writeIndex) {
+            publishedIndex = writeIndex;
+            written.set(writeIndex);    // a full write, so the read of 'parkedConsumer' cannot move before it
+            wakeConsumer();
+        }
+    }
+
+    // Publishes the rest of the stream and marks its end.
+    void close() {
+        flush();
+        closed = true;
+        wakeConsumer();
+    }
+
+    private void wakeConsumer() {
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    long producerWaitNanos() {
+        return producerWaitNanos;
+    }
+
+    // ----------------------------------- CONSUMER -----------------------------------
+
+    // TRUE if take() can go ahead without waiting.
+    boolean ready() {
+        return readIndex < writtenCache || readIndex < (writtenCache = written.get());
+    }
+
+    // Waits until there is an int to take. Returns FALSE once the producer closed the ring and it is drained.
+    boolean await() {
+        if (ready()) {
+            return true;
+        }
+        consumed.lazySet(readIndex);    // the producer may be waiting for room
+        long start = System.nanoTime();
+        int idle = 0;
+        while (true) {
+            boolean done = closed;  // read before 'written', so a close seen here covers every int
+            writtenCache = written.get();
+            if (readIndex < writtenCache) {
+                break;
+            }
+            if (done) {
+                consumerWaitNanos += System.nanoTime() - start;
+                return false;
+            }
+            if (idle < PARK_AFTER) {
+                idle = pause(idle);
+            } else {
+                park();
+            }
+        }
+        consumerWaitNanos += System.nanoTime() - start;
+        return true;
+    }
+
+    // Helps the consumer sleep until the producer publishes more or closes the ring. 'parkedConsumer' is set
+    // before the ring is checked once more, and the producer reads it after publishing, so either the check
+    // sees the new ints or the producer sees the consumer and unparks it. Spurious wakeups just check again.
+    private void park() {
+        parkedConsumer = Thread.currentThread();
+        if (readIndex == written.get() && !closed) {
+            LockSupport.park(this);
+        }
+        parkedConsumer = null;
+    }
+
+    // Takes the next int. Only valid after await() returned TRUE, or within a record whose first int was awaited.
+    int take() {
+        if (readIndex == writtenCache && !await()) {
+            throw new IllegalStateException("ring is closed");
+        }
+        int value = slots[(int) readIndex & mask];
+        readIndex++;
+        if ((readIndex & (publishEvery - 1)) == 0) {
+            consumed.lazySet(readIndex);
+        }
+        return value;
+    }
+
+    long consumerWaitNanos() {
+        return consumerWaitNanos;
+    }
+
+    // Spins briefly, then yields, then sleeps, so a waiting stage does not starve the others of CPU. A waiting
+    // consumer parks instead of sleeping once it has spun and yielded, see await().
+    static int pause(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(20_000);
+        }
+        return idle + 1;
+    }
+}
@@ -0,0 +1,193 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/*
+    Open-addressing hash map from ride number to slot, for the point operations of the engines. A bucket is a
+    key and its slot side by side in one int buffer probed linearly, so a lookup is usually one cache miss and
+    nothing is boxed. Slot 0 (NIL) marks an empty bucket. The buffer is a plain int array, or with 'direct'
+    lives in direct memory like the rest of OffHeapDispatchEngine, which then keeps no per ride data on the heap.
+
+    The table doubles once it is half full, but never in one go: the new table takes every write, and each
+    put() or remove() also moves MIGRATE_STEP buckets of the old table over. Until that is done, get() looks in
+    both. Buckets of the old table below 'migrated' were already copied, and a ride that is removed before its
+    bucket is copied is marked with TOMBSTONE, so the old table never has to be rearranged.
+*/
+class IntSlotMap {
+    static final int NIL = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MIGRATE_STEP = 4;
+    private static final int MIN_CAPACITY = 16;
+
+    private final boolean direct;
+    private IntBuffer table;    // bucket i is the key at 2i and the slot at 2i + 1
+    private int mask;
+    private int size;           // entries in 'table', counting those still waiting in the old table
+    private IntBuffer oldTable; // table being migrated, or NULL
+    private int oldMask;
+    private int migrated;       // buckets of the old table copied so far
+
+    IntSlotMap() {
+        this(false);
+    }
+
+    IntSlotMap(boolean direct) {
+        this.direct = direct;
+        table = allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Returns the slot of 'key', or NIL if it is not in the map.
+    int get(int key) {
+        int pos = hash(key) & mask;
+        while (true) {
+            int slot = table.get(2 * pos + 1);
+            if (slot == NIL) {
+                break;
+            }
+            if (table.get(2 * pos) == key) {
+                return slot;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return oldTable == null ? NIL : getOld(key, false);
+    }
+
+    // Adds 'key', which must not be in the map yet.
+    void put(int key, int slot) {
+        if (oldTable != null) {
+            migrate();
+        } else if (2 * (size + 1) > mask + 1) {
+            startResize();
+        }
+        insert(key, slot);
+        size++;
+    }
+
+    // Removes 'key' if it is in the map. Returns the slot it had, or NIL if it was not in the map.
+    int remove(int key) {
+        if (oldTable != null) {
+            migrate();
+        }
+        int slot = delete(key);
+        if (slot == NIL && oldTable != null) {
+            slot = getOld(key, true);
+        }
+        if (slot != NIL) {
+            size--;
+        }
+        return slot;
+    }
+
+    // Makes room for 'count' entries at once. Only used on an empty map, before a bulk load.
+    void reserve(int count) {
+        if (size == 0 && 2 * count > mask + 1) {
+            oldTable = null;
+            table = allocate(Integer.highestOneBit(Math.max(MIN_CAPACITY, 2 * count - 1)) << 1);
+        }
+    }
+
+    // Helps find 'key' among the buckets of the old table that were not copied yet, and tombstone it if 'remove'.
+    private int getOld(int key, boolean remove) {
+        int pos = hash(key) & oldMask;
+        while (true) {
+            int slot = oldTable.get(2 * pos + 1);
+            if (slot == NIL) {
+                return NIL;
+            }
+            if (oldTable.get(2 * pos) == key && slot != TOMBSTONE) {
+                if (pos < migrated) {
+                    return NIL;     // already copied, the new table has the final word
+                }
+                if (remove) {
+                    oldTable.put(2 * pos + 1, TOMBSTONE);
+                }
+                return slot;
+            }
+            pos = (pos + 1) & oldMask;
+        }
+    }
+
+    private void startResize() {
+        oldTable = table;
+        oldMask = mask;
+        migrated = 0;
+        table = allocate(2 * (mask + 1));
+        migrate();
+    }
+
+    // Helps copy the next MIGRATE_STEP buckets of the old table, and drops it once every bucket was copied.
+    // The new table receives at least half as many puts as the old one has buckets before it is half full,
+    // so the migration always ends first.
+    private void migrate() {
+        int end = Math.min(oldMask + 1, migrated + MIGRATE_STEP);
+        for (int pos = migrated; pos < end; pos++) {
+            int slot = oldTable.get(2 * pos + 1);
+            if (slot != NIL && slot != TOMBSTONE) {
+                insert(oldTable.get(2 * pos), slot);
+            }
+        }
+        migrated = end;
+        if (migrated == oldMask + 1) {
+            oldTable = null;
+        }
+    }
+
+    private void insert(int key, int slot) {
+        int pos = hash(key) & mask;
+        while (table.get(2 * pos + 1) != NIL) {
+            pos = (pos + 1) & mask;
+        }
+        table.put(2 * pos, key);
+        table.put(2 * pos + 1, slot);
+    }
+
+    // Helps remove 'key' from the new table, shifting later entries of its probe run back so no tombstone is needed.
+    // Returns the slot it had, or NIL.
+    private int delete(int key) {
+        int pos = hash(key) & mask;
+        while (true) {
+            if (table.get(2 * pos + 1) == NIL) {
+                return NIL;
+            }
+            if (table.get(2 * pos) == key) {
+                break;
+            }
+            pos = (pos + 1) & mask;
+        }
+        int removed = table.get(2 * pos + 1);
+        int hole = pos;
+        int next = (hole + 1) & mask;
+        while (table.get(2 * next + 1) != NIL) {
+            int home = hash(table.get(2 * next)) & mask;
+            // the entry at 'next' may move into the hole only if its home is not between the hole and itself.
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table.put(2 * hole, table.get(2 * next));
+                table.put(2 * hole + 1, table.get(2 * next + 1));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table.put(2 * hole + 1, NIL);
+        return removed;
+    }
+
+    // Helps create an empty table of 'capacity' buckets and make it the mask's.
+    private IntBuffer allocate(int capacity) {
+        mask = capacity - 1;
+        if (direct) {
+            return ByteBuffer.allocateDirect(8 * capacity).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.wrap(new int[2 * capacity]);
+    }
+
+    // Fibonacci hashing: ride numbers are often consecutive, the multiply spreads them over the high bits and the
+    // shift folds those into the low bits the mask keeps.
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+    Log-linear histogram of nanosecond latencies, laid out like HdrHistogram with two significant digits:
+    values below 128 get a bucket each, and every power of two above that is split into 64 buckets, so a
+    recorded value is off by less than 1.6%. record() only bumps counters in a fixed array.
+*/
+class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    private static final int SUB_BITS = 6;  // log2(SUB_BUCKETS)
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BITS);
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;  // nanoTime() is monotonic, but be safe
+        }
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    long count() {
+        return total;
+    }
+
+    // The smallest recorded value that at least 'percentile' percent of the values do not exceed, to bucket precision.
+    long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(max, highestInBucket(i));
+            }
+        }
+        return max;
+    }
+
+    // Appends the summary as a JSON object.
+    void appendJson(StringBuilder json) {
+        json.append("{\"count\":").append(total)
+            .append(",\"min\":").append(total == 0 ? 0 : min)
+            .append(",\"mean\":").append(total == 0 ? 0 : sum / total)
+            .append(",\"p50\":").append(percentile(50))
+            .append(",\"p90\":").append(percentile(90))
+            .append(",\"p99\":").append(percentile(99))
+            .append(",\"p999\":").append(percentile(99.9))
+            .append(",\"max\":").append(max)
+            .append('}');
+    }
+
+    // Helps find the bucket of 'value': the value itself below 2 * SUB_BUCKETS, else 64 buckets per power of two.
+    private static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestInBucket(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> SUB_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/*
+    Run metrics, selected with --metrics=<file>: a LatencyHistogram per command type, timed around each
+    command in replay(), and counters of the work done inside the engines. Recording allocates nothing.
+    Every --metrics-every commands, and once more when the run ends, the totals since the start are appended
+    to the file as one JSON object per line:
+        {"commands":..,"elapsedNanos":..,"final":false,"pendingRides":..,"treeHeight":..,
+         "counters":{"inserts":..,"duplicates":..,"rotations":..,"siftSteps":..,"expired":..},
+         "latencyNanos":{"Insert":{"count":..,"min":..,"mean":..,"p50":..,"p90":..,"p99":..,"p999":..,"max":..},..}}
+    When metrics are off, every recording site is a single static field check, as with Diagnostics.
+*/
+class Metrics {
+    // Latency kinds: the command types of Command, plus these two.
+    static final int BULK_LOAD = 0;     // one run of Inserts loaded by bulkLoad()
+    static final int PRINT_RANGE = 13;  // Print(lo, hi), kept apart from Print(ride)
+    private static final String[] NAMES = {
+        "BulkLoad", "Insert", "GetNextRide", "Print", "UpdateTrip", "CancelRide",
+        "Count", "SumCost", "Rank", "Select", "GetNextRides", "GetNextRideNear", "MinCost", "PrintRange"
+    };
+
+    static boolean enabled;
+
+    // Counters. Engines bump them only while 'enabled'. Shard threads of --engine=sharded bump them without
+    // synchronization, so their rotations and sift steps are approximate.
+    static long inserts;
+    static long duplicates;
+    static long rotations;      // RedBlackTree.leftRotate / rightRotate and their slot engine twins
+    static long siftSteps;      // nodes moved by a heap sift, up or down
+    static long expired;        // rides cancelled by ExpiringDispatchEngine because their TTL ran out
+
+    private static final LatencyHistogram[] latencies = new LatencyHistogram[NAMES.length];
+    private static BufferedWriter file;
+    private static long every;
+    private static long nextDump;
+    private static long startNanos;
+
+    // Turns metrics on, writing to 'path' every 'every' commands.
+    static void start(String path, long every) throws IOException {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        file = Files.newBufferedWriter(Paths.get(path));
+        Metrics.every = every;
+        nextDump = every;
+        startNanos = System.nanoTime();
+        enabled = true;
+    }
+
+    // The latency kind of 'cmd'.
+    static int kindOf(Command cmd) {
+        return cmd.type == Command.PRINT && cmd.argCount == 2 ? PRINT_RANGE : cmd.type;
+    }
+
+    // Records the latency of one command of kind 'kind' that started at 'startedNanos', and dumps the totals
+    // when another 'every' commands have run.
+    static void commandDone(int kind, long startedNanos, long commands, DispatchEngine engine) throws IOException {
+        latencies[kind].record(System.nanoTime() - startedNanos);
+        if (commands >= nextDump) {
+            nextDump = commands + every;
+            dump(commands, engine, false);
+        }
+    }
+
+    // Writes the final totals and closes the file.
+    static void finish(long commands, DispatchEngine engine) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dump(commands, engine, true);
+        file.close();
+        enabled = false;
+    }
+
+    private static void dump(long commands, DispatchEngine engine, boolean last) throws IOException {
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\"commands\":").append(commands)
+            .append(",\"elapsedNanos\":").append(System.nanoTime() - startNanos)
+            .append(",\"final\":").append(last)
+            .append(",\"pendingRides\":").append(engine.size())
+            .append(",\"treeHeight\":").append(engine.height())
+            .append(",\"counters\":{\"inserts\":").append(inserts)
+            .append(",\"duplicates\":").append(duplicates)
+            .append(",\"rotations\":").append(rotations)
+            .append(",\"siftSteps\":").append(siftSteps)
+            .append(",\"expired\":").append(expired)
+            .append("},\"latencyNanos\":{");
+        boolean first = true;
+        for (int i = 0; i < NAMES.length; i++) {
+            if (latencies[i].count() == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(NAMES[i]).append("\":");
+            latencies[i].appendJson(json);
+        }
+        json.append("}}");
+        file.write(json.toString());
+        file.newLine();
+        file.flush();
+    }
+}
@@ -0,0 +1,27 @@
+// Node Class for Red Black Tree
+class Node {
+    int rideNumber;
+    int tripCost;
+    int tripDuration;
+    Node parent; //Parent Pointer
+    Node left; // Left Child Pointer
+    Node right; // Right Child Pointer
+    int color; // Black = 0, Red = 1
+    HeapNode heapRef;   // stores the node's pointer to the Heap
+
+    // Aggregates over the subtree rooted at this node, kept up to date by RedBlackTree.
+    int size = 1;   // number of nodes
+    long sumCost;   // sum of tripCost
+    int minCost;    // lowest (tripCost, tripDuration) pair
+    int minDuration;
+
+    public Node(int rideNumber, int tripCost, int tripDuration) {
+        this.rideNumber = rideNumber;
+        this.tripCost = tripCost;
+        this.tripDuration = tripDuration;
+        this.sumCost = tripCost;
+        this.minCost = tripCost;
+        this.minDuration = tripDuration;
+    }
+
+}
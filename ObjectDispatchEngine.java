@@ -0,0 +1,313 @@
+import java.util.Arrays;
+
+// The original engine: a RedBlackTree of Nodes keyed by ride number and a RideQueue of HeapNodes, linked to each other.
+// Point operations (the duplicate check of Insert, Print(ride), UpdateTrip and CancelRide) find the Node through an
+// IntSlotMap into 'nodes' and delete it from the tree by handle, so only the placement of a new ride and the range
+// and order queries walk the tree.
+class ObjectDispatchEngine implements DispatchEngine {
+    private static final int REBUILD_FRACTION = 16;
+    private static final int REBUILD_MIN = 64;
+    private final RedBlackTree rbT = new RedBlackTree();  //Red Black Tree Class Object.
+    private final RideQueue myHeap;   //Binary Heap by default, see RideQueue.create.
+    private final TreeCursor cursor = new TreeCursor();   //Reused by every seek().
+    private final IntSlotMap index = new IntSlotMap();    //Ride number -> slot of 'nodes'.
+    private Node[] nodes = new Node[16];    //Tree node of each slot; slot 0 is IntSlotMap.NIL.
+    private int nextSlot = 1;               //First slot that was never handed out.
+    private int[] freeSlots = new int[16];  //Recycled slots.
+    private int freeCount;
+    private HeapNode[] bestRides = new HeapNode[16];  //Rides of one getNextRides(), reused.
+
+    ObjectDispatchEngine() {
+        this(new Heap(2000));   //Initial capacity of 2000, grows as needed.
+    }
+
+    ObjectDispatchEngine(RideQueue queue) {
+        this.myHeap = queue;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        if (index.get(rideNumber) != IntSlotMap.NIL) {
+            return false;
+        }
+        // INSERT FUNCTIONS
+        Node newRBNode = new Node(rideNumber, tripCost, tripDuration);
+        HeapNode newHeapNode = myHeap.newNode(rideNumber, tripCost, tripDuration);
+
+        Node insertedRBNode = rbT.insertIntoRBTree(newRBNode);
+        myHeap.insert(newHeapNode);
+
+        // Connect both new nodes to maintain reference pointers.
+        newHeapNode.rbTreference = insertedRBNode;
+        insertedRBNode.heapRef = newHeapNode;
+        remember(insertedRBNode);
+        return true;
+    }
+
+    @Override
+    public void bulkLoad(InsertBatch batch) {
+        if (myHeap.size() != 0) {
+            throw new IllegalStateException("bulkLoad needs an empty engine");
+        }
+        int count = batch.size();
+        nodes = new Node[Math.max(16, count + 1)];
+        nextSlot = 1;
+        freeCount = 0;
+        index.reserve(count);
+        Node[] treeNodes = new Node[count];
+        HeapNode[] heapNodes = new HeapNode[count];
+        for (int i = 0; i < count; i++) {
+            Node newRBNode = new Node(batch.ride(i), batch.cost(i), batch.duration(i));
+            HeapNode newHeapNode = myHeap.newNode(batch.ride(i), batch.cost(i), batch.duration(i));
+            newHeapNode.rbTreference = newRBNode;
+            newRBNode.heapRef = newHeapNode;
+            treeNodes[i] = newRBNode;
+            heapNodes[i] = newHeapNode;
+            remember(newRBNode);
+        }
+        rbT.buildFromSorted(treeNodes, count);
+        myHeap.buildFrom(heapNodes, batch);
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        if (Diagnostics.tracing())
+            myHeap.printConnection();
+        HeapNode bestRide = myHeap.removeMin();
+        if (bestRide == null) {
+            return false;
+        }
+        out.accept(bestRide.rideNumber, bestRide.tripCost, bestRide.tripDuration);
+        forget(bestRide.rideNumber);
+        rbT.deleteNode(bestRide.rbTreference);
+        return true;
+    }
+
+    // Takes the k best rides off the queue in one go, see RideQueue.removeSmallest, and then out of the tree by
+    // handle, without searching it. Deleting rides from a RedBlackTree one at a time rebalances it k times, so once
+    // k is at least 1/REBUILD_FRACTION of the rides it is cheaper to rebuild the tree from the rides that are left,
+    // or to just empty it when none are.
+    @Override
+    public int getNextRides(int k, RideConsumer out) {
+        int size = myHeap.size();
+        int taken = Math.min(k, size);
+        if (taken <= 0) {
+            return 0;
+        }
+        if (bestRides.length < taken) {
+            bestRides = new HeapNode[Math.max(taken, 2 * bestRides.length)];
+        }
+        myHeap.removeSmallest(taken, bestRides);
+        boolean rebuild = taken >= REBUILD_MIN && (long) taken * REBUILD_FRACTION >= size;
+        for (int i = 0; i < taken; i++) {
+            HeapNode bestRide = bestRides[i];
+            bestRides[i] = null;
+            out.accept(bestRide.rideNumber, bestRide.tripCost, bestRide.tripDuration);
+            forget(bestRide.rideNumber);
+            if (rebuild) {
+                bestRide.rbTreference.heapRef = null;   // marks the tree node as dispatched
+            } else {
+                rbT.deleteNode(bestRide.rbTreference);
+            }
+        }
+        if (rebuild) {
+            Node[] remaining = new Node[size - taken];
+            int count = 0;
+            for (Node node = rbT.ceiling(Integer.MIN_VALUE); node != rbT.TNULL; node = rbT.successor(node)) {
+                if (node.heapRef != null) {
+                    remaining[count++] = node;
+                }
+            }
+            rbT.buildFromSorted(remaining, count);
+        }
+        return taken;
+    }
+
+    @Override
+    public boolean peekNextRide(RideConsumer out) {
+        HeapNode bestRide = myHeap.getRoot();
+        if (bestRide == null) {
+            return false;
+        }
+        out.accept(bestRide.rideNumber, bestRide.tripCost, bestRide.tripDuration);
+        return true;
+    }
+
+    @Override
+    public boolean print(int rideNumber, RideConsumer out) {
+        Node searchedNode = find(rideNumber);
+        if (searchedNode == rbT.TNULL) {
+            return false;
+        }
+        out.accept(searchedNode.rideNumber, searchedNode.tripCost, searchedNode.tripDuration);
+        return true;
+    }
+
+    @Override
+    public void printRange(int low, int high, RideConsumer out) {
+        rbT.searchRidesInRange(low, high, out);
+    }
+
+    @Override
+    public RideCursor seek(int low, int high) {
+        cursor.next = rbT.ceiling(low);
+        cursor.high = high;
+        return cursor;
+    }
+
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        Node nodeToUpdate = find(rideNumber);
+        if (nodeToUpdate == rbT.TNULL) {
+            return;
+        }
+        /*
+            CASE 1: oldTripDuration < newTripDuration <= 2*(oldTripDuration):- 
+                    Updates:
+                    --TripCost = TripCost + 10;
+                    --oldTripDuration = newTripDuration;
+        */
+        if (newTripDuration > nodeToUpdate.tripDuration && newTripDuration <= (2 * (nodeToUpdate.tripDuration))) {
+            nodeToUpdate.tripDuration = newTripDuration;
+            nodeToUpdate.tripCost += 10;
+            nodeToUpdate.heapRef.tripCost += 10;
+            nodeToUpdate.heapRef.tripDuration = newTripDuration;
+            myHeap.fixUpdate(nodeToUpdate.heapRef);
+            rbT.updateRide(nodeToUpdate);
+        }
+        /*
+            CASE 2: newTripDuration > 2*(oldTripDuration):- 
+                    Deletes the Ride from BOTH the data structures.
+        */
+        else if (newTripDuration > (2 * (nodeToUpdate.tripDuration))) {
+            cancelRide(rideNumber);
+        }
+        /*
+            CASE 3: newTripDuration <= oldTripDuration:- 
+                    Updates the oldTripDuration to NewTripDuration in BOTH the data structures.
+        */
+        else {
+            nodeToUpdate.tripDuration = newTripDuration;
+            nodeToUpdate.heapRef.tripDuration = newTripDuration;
+            myHeap.fixUpdate(nodeToUpdate.heapRef);
+            rbT.updateRide(nodeToUpdate);
+        }
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        Node nodeToDelete = forget(rideNumber);
+        if (nodeToDelete != rbT.TNULL) { // valid node to delete
+            rbT.deleteNode(nodeToDelete);
+            myHeap.deleteRandomNode(nodeToDelete.heapRef);
+        }
+    }
+
+    // Helps find the tree node of 'rideNumber' through the index, or TNULL if there is no such ride.
+    private Node find(int rideNumber) {
+        int slot = index.get(rideNumber);
+        return slot == IntSlotMap.NIL ? rbT.TNULL : nodes[slot];
+    }
+
+    // Helps enter a new tree node in the index, in a recycled slot if there is one.
+    private void remember(Node node) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (nextSlot == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            slot = nextSlot++;
+        }
+        nodes[slot] = node;
+        index.put(node.rideNumber, slot);
+    }
+
+    // Helps drop 'rideNumber' from the index and recycle its slot. Returns its tree node, or TNULL if there was none.
+    private Node forget(int rideNumber) {
+        int slot = index.remove(rideNumber);
+        if (slot == IntSlotMap.NIL) {
+            return rbT.TNULL;
+        }
+        Node node = nodes[slot];
+        nodes[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        return node;
+    }
+
+    @Override
+    public int size() {
+        return myHeap.size();
+    }
+
+    @Override
+    public int count(int low, int high) {
+        return rbT.countRidesInRange(low, high);
+    }
+
+    @Override
+    public long sumCost(int low, int high) {
+        return rbT.sumCostInRange(low, high);
+    }
+
+    @Override
+    public int rank(int rideNumber) {
+        return rbT.rank(rideNumber);
+    }
+
+    @Override
+    public boolean minCost(int low, int high, RideConsumer out) {
+        Node cheapest = rbT.minCostInRange(low, high);
+        if (cheapest == rbT.TNULL) {
+            return false;
+        }
+        out.accept(cheapest.rideNumber, cheapest.tripCost, cheapest.tripDuration);
+        return true;
+    }
+
+    @Override
+    public boolean select(int k, RideConsumer out) {
+        Node selectedNode = rbT.select(k);
+        if (selectedNode == rbT.TNULL) {
+            return false;
+        }
+        out.accept(selectedNode.rideNumber, selectedNode.tripCost, selectedNode.tripDuration);
+        return true;
+    }
+
+    @Override
+    public int height() {
+        return rbT.height();
+    }
+
+    @Override
+    public void printDebugState() {
+        myHeap.print();
+    }
+
+    // Walks the tree through successor links, one node per next().
+    private final class TreeCursor implements RideCursor {
+        private Node current;
+        private Node next;
+        private int high;
+
+        @Override
+        public boolean next() {
+            if (next == rbT.TNULL || next.rideNumber > high) {
+                next = rbT.TNULL;
+                return false;
+            }
+            current = next;
+            next = rbT.successor(current);
+            return true;
+        }
+
+        @Override public int rideNumber() { return current.rideNumber; }
+        @Override public int tripCost() { return current.tripCost; }
+        @Override public int tripDuration() { return current.tripDuration; }
+    }
+}
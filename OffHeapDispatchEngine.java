@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+    Off-heap engine for very large fleets. Ride records, tree links, heap positions and the IntSlotMap from
+    ride number to slot live in direct ByteBuffers outside the JVM heap, so the Java heap does not grow with
+    the number of pending rides. Direct memory is capped by -XX:MaxDirectMemorySize (default: the -Xmx value),
+    which needs raising for 100M+ rides at 52 bytes each, plus 16 to 32 for the map.
+
+    Memory is handed out in chunks of SLOTS_PER_CHUNK slots. Each slot is a fixed 48 byte record:
+        ride number | cost | duration | left | right | parent | heap index | color | subtree size | subtree sum
+    and the heap is a separate chunked int column mapping positions to slots.
+*/
+class OffHeapDispatchEngine extends SlotDispatchEngine {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int SLOTS_PER_CHUNK = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = SLOTS_PER_CHUNK - 1;
+    private static final int RECORD_SIZE = 48;  // keeps SUBTREE_SUM 8 byte aligned
+
+    // Field offsets inside a record.
+    private static final int RIDE = 0;
+    private static final int COST = 4;
+    private static final int DURATION = 8;
+    private static final int LEFT = 12;
+    private static final int RIGHT = 16;
+    private static final int PARENT = 20;
+    private static final int HEAP_INDEX = 24;
+    private static final int COLOR = 28;
+    private static final int SUBTREE_SIZE = 32;
+    private static final int SUBTREE_SUM = 40;
+
+    private ByteBuffer[] records = new ByteBuffer[4];
+    private ByteBuffer[] heap = new ByteBuffer[4];
+    private int chunks;
+
+    OffHeapDispatchEngine() {
+        super(true);
+        grow();
+    }
+
+    // Adds one chunk of slots and heap positions.
+    @Override
+    protected void grow() {
+        if (chunks == records.length) {
+            records = Arrays.copyOf(records, chunks * 2);
+            heap = Arrays.copyOf(heap, chunks * 2);
+        }
+        records[chunks] = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        heap[chunks] = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * 4).order(ByteOrder.nativeOrder());
+        chunks++;
+        capacity = chunks * SLOTS_PER_CHUNK;
+    }
+
+    private int getField(int slot, int field) {
+        return records[slot >>> CHUNK_SHIFT].getInt((slot & CHUNK_MASK) * RECORD_SIZE + field);
+    }
+
+    private void putField(int slot, int field, int value) {
+        records[slot >>> CHUNK_SHIFT].putInt((slot & CHUNK_MASK) * RECORD_SIZE + field, value);
+    }
+
+    @Override protected int ride(int slot) { return getField(slot, RIDE); }
+    @Override protected int cost(int slot) { return getField(slot, COST); }
+    @Override protected int duration(int slot) { return getField(slot, DURATION); }
+    @Override protected int left(int slot) { return getField(slot, LEFT); }
+    @Override protected int right(int slot) { return getField(slot, RIGHT); }
+    @Override protected int parent(int slot) { return getField(slot, PARENT); }
+    @Override protected byte color(int slot) { return (byte) getField(slot, COLOR); }
+    @Override protected int heapIndex(int slot) { return getField(slot, HEAP_INDEX); }
+    @Override protected int subtreeSize(int slot) { return getField(slot, SUBTREE_SIZE); }
+
+    @Override
+    protected long subtreeSum(int slot) {
+        return records[slot >>> CHUNK_SHIFT].getLong((slot & CHUNK_MASK) * RECORD_SIZE + SUBTREE_SUM);
+    }
+
+    @Override
+    protected int heapSlot(int pos) {
+        return heap[pos >>> CHUNK_SHIFT].getInt((pos & CHUNK_MASK) << 2);
+    }
+
+    @Override protected void setRide(int slot, int value) { putField(slot, RIDE, value); }
+    @Override protected void setCost(int slot, int value) { putField(slot, COST, value); }
+    @Override protected void setDuration(int slot, int value) { putField(slot, DURATION, value); }
+    @Override protected void setLeft(int slot, int value) { putField(slot, LEFT, value); }
+    @Override protected void setRight(int slot, int value) { putField(slot, RIGHT, value); }
+    @Override protected void setParent(int slot, int value) { putField(slot, PARENT, value); }
+    @Override protected void setColor(int slot, byte value) { putField(slot, COLOR, value); }
+    @Override protected void setSubtreeSize(int slot, int value) { putField(slot, SUBTREE_SIZE, value); }
+
+    @Override
+    protected void setSubtreeSum(int slot, long value) {
+        records[slot >>> CHUNK_SHIFT].putLong((slot & CHUNK_MASK) * RECORD_SIZE + SUBTREE_SUM, value);
+    }
+
+    @Override
+    protected void setHeapSlot(int pos, int slot) {
+        heap[pos >>> CHUNK_SHIFT].putInt((pos & CHUNK_MASK) << 2, slot);
+        putField(slot, HEAP_INDEX, pos);
+    }
+}
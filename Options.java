@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/*
+    Command line of gatorTaxi:  java gatorTaxi <input file> [--option=value ...]
+                                java gatorTaxi [<input file>] --serve=<address> [--option=value ...]
+        --diagnostics=off|summary|trace   debug output, see Diagnostics (default off)
+        --engine=object|btree|array|offheap|sharded
+                                          ride storage, see DispatchEngine.create (default object)
+        --shards=<n>                      shards of --engine=sharded (default one per processor)
+        --queue=binary|quad|pairing       priority queue of --engine=object or btree, see RideQueue.create
+                                          (default binary)
+        --policy=cost|cost-per-minute|wait
+                                          order the queue of --engine=object or btree hands out rides in,
+                                          see RidePolicy.create (default cost)
+        --format=text|binary              the input file is text and the results go to output_file.txt, or both
+                                          are in the binary format of BinaryFormat and the results go to
+                                          output_file.bin (default text)
+        --input=read|mmap                 read the input file through a buffer, or scan it memory-mapped,
+                                          see CommandParser (default read)
+        --pipeline=on|off                 parse, apply and format on three threads, see Pipeline (default off)
+        --state-dir=<dir>                 keep a write-ahead log and snapshots in <dir> and recover from them
+                                          on startup, see StateStore (default: state is not kept). TTLs and
+                                          the order of --policy=wait are not kept, so it turns the TTL clock
+                                          off and cannot be used with --policy=wait
+        --snapshot-every=<n>              mutations between two snapshots with --state-dir (default 1000000)
+        --metrics=<file>                  write command latencies and engine counters to <file> as JSON lines,
+                                          see Metrics (default: no metrics)
+        --metrics-every=<n>               commands between two metrics lines (default 1000000)
+        --serve=<port>|unix:<path>        after the input file, if any, keep serving commands on a loopback TCP
+                                          port or a Unix domain socket until interrupted, see Server
+        --snapshot-reads=<n>              with --serve, answer Print, Count and SumCost on <n> reader threads
+                                          from snapshots while the server thread applies the other commands,
+                                          see SnapshotReadEngine (default 0: every command on the server thread)
+        --ttl-clock=logical|wall|off      clock of the TTL argument of Insert: commands run, milliseconds, or
+                                          TTLs are ignored, see ExpiringDispatchEngine (default logical, off
+                                          with --state-dir)
+
+    The fields start out as the defaults, so new Options() describes the default engine, see DispatchEngine.create.
+*/
+class Options {
+    String inputFile;
+    String engine = "object";
+    int shards;
+    String queue = "binary";
+    String policy = "cost";
+    boolean mappedInput;
+    boolean binaryFormat;
+    boolean pipeline;
+    String stateDir;
+    long snapshotEvery = 1_000_000;
+    String metricsFile;
+    long metricsEvery = 1_000_000;
+    String ttlClock = "logical";    // NULL when TTLs are ignored
+    private boolean ttlClockGiven;
+    String serve;
+    int snapshotReads;
+
+    // Parses the command line. Prints the usage and returns NULL if it is not valid.
+    static Options parse(String[] args) {
+        if (args.length == 0) {
+            return usage("missing input file");
+        }
+        Options options = new Options();
+        int first = 0;
+        if (!args[0].startsWith("--")) {
+            options.inputFile = args[0];
+            first = 1;
+        }
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                return usage("unexpected argument " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "diagnostics":
+                    if (!Diagnostics.setLevel(value)) {
+                        return usage("unknown diagnostics level " + value);
+                    }
+                    break;
+                case "engine":
+                    if (!Arrays.asList(DispatchEngine.KINDS).contains(value)) {
+                        return usage("unknown engine " + value);
+                    }
+                    options.engine = value;
+                    break;
+                case "shards":
+                    try {
+                        options.shards = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        return usage("shards must be a number");
+                    }
+                    if (options.shards <= 0) {
+                        return usage("shards must be positive");
+                    }
+                    break;
+                case "queue":
+                    if (!Arrays.asList(RideQueue.KINDS).contains(value)) {
+                        return usage("unknown queue " + value);
+                    }
+                    options.queue = value;
+                    break;
+                case "policy":
+                    if (!Arrays.asList(RidePolicy.KINDS).contains(value)) {
+                        return usage("unknown policy " + value);
+                    }
+                    options.policy = value;
+                    break;
+                case "format":
+                    if (!value.equals("text") && !value.equals("binary")) {
+                        return usage("unknown format " + value);
+                    }
+                    options.binaryFormat = value.equals("binary");
+                    break;
+                case "input":
+                    if (!value.equals("read") && !value.equals("mmap")) {
+                        return usage("unknown input mode " + value);
+                    }
+                    options.mappedInput = value.equals("mmap");
+                    break;
+                case "pipeline":
+                    if (!value.equals("on") && !value.equals("off")) {
+                        return usage("pipeline must be on or off");
+                    }
+                    options.pipeline = value.equals("on");
+                    break;
+                case "state-dir":
+                    options.stateDir = value;
+                    break;
+                case "snapshot-every":
+                    try {
+                        options.snapshotEvery = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        return usage("snapshot-every must be a number");
+                    }
+                    if (options.snapshotEvery <= 0) {
+                        return usage("snapshot-every must be positive");
+                    }
+                    break;
+                case "metrics":
+                    options.metricsFile = value;
+                    break;
+                case "metrics-every":
+                    try {
+                        options.metricsEvery = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        return usage("metrics-every must be a number");
+                    }
+                    if (options.metricsEvery <= 0) {
+                        return usage("metrics-every must be positive");
+                    }
+                    break;
+                case "serve":
+                    if (!Server.isAddress(value)) {
+                        return usage("serve needs a port or unix:<path>");
+                    }
+                    options.serve = value;
+                    break;
+                case "snapshot-reads":
+                    try {
+                        options.snapshotReads = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        return usage("snapshot-reads must be a number");
+                    }
+                    if (options.snapshotReads < 0) {
+                        return usage("snapshot-reads must not be negative");
+                    }
+                    break;
+                case "ttl-clock":
+                    if (!value.equals("logical") && !value.equals("wall") && !value.equals("off")) {
+                        return usage("unknown ttl clock " + value);
+                    }
+                    options.ttlClock = value.equals("off") ? null : value;
+                    options.ttlClockGiven = true;
+                    break;
+                default:
+                    return usage("unknown option " + arg);
+            }
+        }
+        if (options.inputFile == null && options.serve == null) {
+            return usage("missing input file");
+        }
+        if (options.pipeline && options.inputFile == null) {
+            return usage("--pipeline needs an input file");
+        }
+        if (options.binaryFormat && (options.pipeline || options.mappedInput || options.inputFile == null)) {
+            return usage("--format=binary needs an input file, and no --pipeline or --input=mmap");
+        }
+        if (!options.queue.equals("binary") && !options.engine.equals("object") && !options.engine.equals("btree")) {
+            return usage("--queue needs --engine=object or btree");
+        }
+        if (!options.policy.equals("cost") && !options.engine.equals("object") && !options.engine.equals("btree")) {
+            return usage("--policy needs --engine=object or btree");
+        }
+        if (options.snapshotReads > 0 && options.serve == null) {
+            return usage("--snapshot-reads needs --serve");
+        }
+        if (options.stateDir != null && options.policy.equals("wait")) {
+            return usage("--state-dir does not keep the order of --policy=wait");
+        }
+        if (options.stateDir != null && options.ttlClock != null) {
+            if (options.ttlClockGiven) {
+                return usage("--state-dir does not keep TTLs, it needs --ttl-clock=off");
+            }
+            options.ttlClock = null;
+        }
+        return options;
+    }
+
+    private static Options usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: java gatorTaxi [<input file>] [--serve=<port>|unix:<path>] [--snapshot-reads=<n>] [--diagnostics=off|summary|trace] [--engine=object|btree|array|offheap|sharded] [--shards=<n>]"
+                + " [--queue=binary|quad|pairing] [--policy=cost|cost-per-minute|wait] [--format=text|binary] [--input=read|mmap] [--pipeline=on|off] [--state-dir=<dir>] [--snapshot-every=<n>]"
+                + " [--metrics=<file>] [--metrics-every=<n>]"
+                + " [--ttl-clock=logical|wall|off]");
+        return null;
+    }
+}
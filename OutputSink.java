@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+    Output stage for the results file. Ride tuples and messages are formatted straight into one large
+    reusable byte buffer, which is written to the channel in big chunks. Range results are streamed in
+    as the tree traversal finds them (see beginRange / accept / endRange), so no intermediate list is built.
+*/
+class OutputSink implements ResultSink {
+    private static final int BUFFER_SIZE = 1 << 18;
+    private static final int MAX_TUPLE_LENGTH = 40;     // "(" + 3 ints of at most 11 chars + 2 commas + ")" + ","
+
+    static final byte[] NO_RIDE = "(0,0,0)".getBytes();
+    static final byte[] DUPLICATE_RIDE = "Duplicate Ride Number".getBytes();
+    static final byte[] NO_ACTIVE_RIDES = "No active ride requests".getBytes();
+
+    private final WritableByteChannel channel;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;    // wraps 'bytes', only used to hand them to the channel
+    private int position;
+    private int rangeCount;     // rides written since the last beginRange()
+
+    public OutputSink(WritableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    // Same, with a smaller buffer for sinks that are flushed often, such as the connections of a Server.
+    public OutputSink(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.bytes = new byte[Math.max(bufferSize, 2 * MAX_TUPLE_LENGTH)];
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    // Writes a whole line such as "Duplicate Ride Number".
+    @Override
+    public void writeLine(byte[] line) throws IOException {
+        if (bytes.length - position < line.length + 1) {
+            flush();
+        }
+        if (line.length >= bytes.length) {
+            writeThrough(line);
+        } else {
+            System.arraycopy(line, 0, bytes, position, line.length);
+            position += line.length;
+        }
+        bytes[position++] = '\n';
+    }
+
+    // Writes a single ride as "(rideNumber,tripCost,tripDuration)" on its own line.
+    @Override
+    public void writeRideLine(int rideNumber, int tripCost, int tripDuration) throws IOException {
+        ensureRoom();
+        putRide(rideNumber, tripCost, tripDuration);
+        bytes[position++] = '\n';
+    }
+
+    // Writes a single number, such as the answer to Count or SumCost, on its own line.
+    @Override
+    public void writeNumberLine(long value) throws IOException {
+        ensureRoom();
+        putLong(value);
+        bytes[position++] = '\n';
+    }
+
+    // Starts a comma separated line of rides, filled through accept().
+    @Override
+    public void beginRange() {
+        rangeCount = 0;
+    }
+
+    // Appends one ride to the current range line.
+    @Override
+    public void accept(int rideNumber, int tripCost, int tripDuration) {
+        try {
+            ensureRoom();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (rangeCount++ > 0) {
+            bytes[position++] = ',';
+        }
+        putRide(rideNumber, tripCost, tripDuration);
+    }
+
+    // Ends the current range line, writing "(0,0,0)" if no ride was found.
+    @Override
+    public void endRange() throws IOException {
+        endRange(NO_RIDE);
+    }
+
+    // Ends the current range line, writing 'whenEmpty' instead if no ride was found.
+    @Override
+    public void endRange(byte[] whenEmpty) throws IOException {
+        if (rangeCount == 0) {
+            writeLine(whenEmpty);
+        } else {
+            ensureRoom();
+            bytes[position++] = '\n';
+        }
+    }
+
+    // Writes out everything buffered so far.
+    public void flush() throws IOException {
+        buffer.clear().limit(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        position = 0;
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void ensureRoom() throws IOException {
+        if (bytes.length - position < MAX_TUPLE_LENGTH) {
+            flush();
+        }
+    }
+
+    private void writeThrough(byte[] line) throws IOException {
+        ByteBuffer wrapped = ByteBuffer.wrap(line);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+    }
+
+    private void putRide(int rideNumber, int tripCost, int tripDuration) {
+        bytes[position++] = '(';
+        putInt(rideNumber);
+        bytes[position++] = ',';
+        putInt(tripCost);
+        bytes[position++] = ',';
+        putInt(tripDuration);
+        bytes[position++] = ')';
+    }
+
+    // Formats an int in decimal directly into the buffer, without going through a String.
+    private void putInt(int value) {
+        putLong(value);
+    }
+
+    // Same for a long. Long.MIN_VALUE is not supported; sums of int costs never get near it.
+    private void putLong(long value) {
+        long v = value;
+        if (v < 0) {
+            bytes[position++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long p = 10; p <= v && digits < 19; p *= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        position = end;
+    }
+}
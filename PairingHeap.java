@@ -0,0 +1,216 @@
+import java.util.ArrayDeque;
+
+/*
+    Pairing heap: a heap-ordered tree where every node keeps a list of children. Insert and decrease-key are
+    O(1): the node is cut out with its subtree and melded with the root. removeMin and deleting any other node
+    merge the children of the removed node in two passes, which is O(log n) amortized. Nodes are
+    PairingNodes, a HeapNode with the tree links and the RidePolicy key, so the binary Heap does not pay for them.
+*/
+class PairingHeap implements RideQueue {
+    private PairingNode root;
+    private int size;
+    private final RidePolicy policy;
+    private long sequence;  // rides queued so far
+
+    PairingHeap(RidePolicy policy) {
+        this.policy = policy;
+    }
+
+    // HeapNode with the links of the tree: leftmost child, right sibling, and left sibling or, for a
+    // leftmost child, the parent.
+    static final class PairingNode extends HeapNode {
+        PairingNode child;
+        PairingNode next;
+        PairingNode prev;
+        long key;
+
+        PairingNode(int rideNumber, int tripCost, int tripDuration) {
+            super(rideNumber, tripCost, tripDuration);
+        }
+    }
+
+    @Override
+    public HeapNode newNode(int rideNumber, int tripCost, int tripDuration) {
+        return new PairingNode(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public HeapNode getRoot() {
+        return root;
+    }
+
+    @Override
+    public void insert(HeapNode element) {
+        PairingNode x = (PairingNode) element;
+        x.key = policy.key(x, sequence++);
+        root = meld(root, x);
+        size++;
+    }
+
+    // Melding one node at a time is already O(1) per node, the first removeMin pairs them up.
+    @Override
+    public void buildFrom(HeapNode[] nodes, InsertBatch batch) {
+        long first = sequence;
+        for (int i = 0; i < batch.size(); i++) {
+            PairingNode x = (PairingNode) nodes[i];
+            long queued = first + batch.position(i);
+            x.key = policy.key(x, queued);
+            root = meld(root, x);
+            size++;
+            sequence = Math.max(sequence, queued + 1);
+        }
+    }
+
+    @Override
+    public HeapNode removeMin() {
+        if (root == null) {
+            return null;
+        }
+        PairingNode popped = root;
+        root = combine(popped.child);
+        popped.child = null;
+        size--;
+        return popped;
+    }
+
+    @Override
+    public void deleteRandomNode(HeapNode node) {
+        PairingNode x = (PairingNode) node;
+        if (x == root) {
+            removeMin();
+            return;
+        }
+        cut(x);
+        root = meld(root, combine(x.child));
+        x.child = null;
+        size--;
+    }
+
+    @Override
+    public void fixUpdate(HeapNode node) {
+        PairingNode x = (PairingNode) node;
+        x.key = policy.rekey(x.key, x);
+        boolean childIsSmaller = false;
+        for (PairingNode c = x.child; c != null && !childIsSmaller; c = c.next) {
+            childIsSmaller = RidePolicy.before(c.key, c, x.key, x);
+        }
+        // The subtree stays heap-ordered when no child is smaller, as after a decrease-key: move it as a whole.
+        PairingNode children = null;
+        if (childIsSmaller) {
+            children = combine(x.child);
+            x.child = null;
+        }
+        if (x != root) {
+            cut(x);
+            root = meld(root, x);
+        }
+        root = meld(root, children);
+    }
+
+    // Helps link two roots: the bigger one becomes the leftmost child of the smaller one, which is returned.
+    private static PairingNode meld(PairingNode a, PairingNode b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (RidePolicy.before(b.key, b, a.key, a)) {
+            PairingNode swap = a;
+            a = b;
+            b = swap;
+        }
+        b.next = a.child;
+        if (a.child != null) {
+            a.child.prev = b;
+        }
+        b.prev = a;
+        a.child = b;
+        return a;
+    }
+
+    // Helps detach 'x', which is not the root, from its parent and siblings. Its subtree comes along.
+    private static void cut(PairingNode x) {
+        if (x.prev.child == x) {
+            x.prev.child = x.next;
+        } else {
+            x.prev.next = x.next;
+        }
+        if (x.next != null) {
+            x.next.prev = x.prev;
+        }
+        x.prev = null;
+        x.next = null;
+    }
+
+    // Helps merge a list of siblings into one tree: meld them in pairs from left to right, then meld the pairs
+    // from right to left. Iterative, so a root with a million children needs no deep recursion.
+    private static PairingNode combine(PairingNode first) {
+        PairingNode pairs = null;   // melded pairs, rightmost first, chained through 'next'
+        PairingNode a = first;
+        while (a != null) {
+            PairingNode b = a.next;
+            PairingNode rest = b == null ? null : b.next;
+            a.prev = null;
+            a.next = null;
+            if (b != null) {
+                b.prev = null;
+                b.next = null;
+                a = meld(a, b);
+            }
+            a.next = pairs;
+            pairs = a;
+            a = rest;
+        }
+        PairingNode result = null;
+        while (pairs != null) {
+            PairingNode pair = pairs;
+            pairs = pair.next;
+            pair.next = null;
+            result = meld(result, pair);
+        }
+        return result;
+    }
+
+    @Override
+    public void print() {
+        System.out.println("\n\nsize = " + size);
+        ArrayDeque<PairingNode> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            PairingNode parent = pending.pop();
+            if (parent.child == null) {
+                continue;
+            }
+            System.out.print("Parent = " + parent.rideNumber + " & children =");
+            for (PairingNode c = parent.child; c != null; c = c.next) {
+                System.out.print(" " + c.rideNumber);
+                pending.push(c);
+            }
+            System.out.println();
+        }
+    }
+
+    @Override
+    public void printConnection() {
+        System.out.println("\n\n");
+        ArrayDeque<PairingNode> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            PairingNode node = pending.pop();
+            System.out.println(node.rideNumber + " , " + node.rbTreference.tripCost + " , " + node.rbTreference.tripDuration);
+            for (PairingNode c = node.child; c != null; c = c.next) {
+                pending.push(c);
+            }
+        }
+    }
+}
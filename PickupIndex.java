@@ -0,0 +1,357 @@
+import java.util.Arrays;
+
+/*
+    Pickup locations of pending rides, for GetNextRideNear(x, y, radius): a point-region quadtree over the whole
+    int plane whose every node knows the ride with the lowest (tripCost, tripDuration, rideNumber) below it.
+    A leaf holds up to BUCKET rides and splits into four quadrants when it gets more, so the tree is only deep
+    where rides are dense, and a leaf whose rides all share one point may hold any number of them.
+
+    nearest() searches branch and bound: a node is skipped when its square lies outside the circle or its lowest
+    ride does not beat the best one found so far, and when its lowest ride lies inside the circle that ride is the
+    best of the node without looking further down. Children are visited lowest first, so a good candidate is
+    usually found in the first leaf and the rest of the circle is pruned.
+
+    Entries and nodes live in int arrays, as in TimingWheel. The four children of a node are consecutive nodes.
+    Removing a ride only recomputes the minimum of the nodes it was the minimum of, scanning one leaf and then
+    four children per level. Nodes are never merged back, so the tree keeps the shape of the densest load it saw.
+*/
+class PickupIndex {
+    static final int NIL = 0;                   // no entry
+    private static final int LEAF = -1;         // 'child' of a leaf
+    private static final int ROOT = 0;
+    private static final int BUCKET = 16;
+    private static final int ROOT_LEVEL = 32;   // the root square is 2^32 wide, a leaf of level 0 is one point
+
+    // Entries, 1-based.
+    private int[] rides;
+    private int[] xs;
+    private int[] ys;
+    private long[] keys;    // RidePolicy.costKey of the ride
+    private int[] next;     // in the list of the leaf, or in the free list
+    private int[] prev;
+    private int[] leafOf;
+    private int usedEntries = 1;
+    private int freeList = NIL;
+    private final IntSlotMap entryOf = new IntSlotMap();
+
+    // Nodes.
+    private int[] child;    // first of the four children, or LEAF
+    private int[] parent;
+    private int[] first;    // head of the entry list of a leaf
+    private int[] count;    // entries of a leaf
+    private int[] minEntry; // entry with the lowest key below the node, NIL if there is none
+    private int usedNodes = 1;
+
+    // The query nearest() is running.
+    private long queryX;
+    private long queryY;
+    private long radius;
+    private int best;
+    private final int[] order = new int[4 * ROOT_LEVEL];    // children of a node in visiting order, 4 per level
+
+    PickupIndex(int initialCapacity) {
+        int capacity = 1 + Math.max(16, initialCapacity);
+        rides = new int[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        keys = new long[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        leafOf = new int[capacity];
+        int nodes = Math.max(16, capacity / 4);
+        child = new int[nodes];
+        parent = new int[nodes];
+        first = new int[nodes];
+        count = new int[nodes];
+        minEntry = new int[nodes];
+        child[ROOT] = LEAF;
+        parent[ROOT] = LEAF;
+    }
+
+    // Number of rides indexed.
+    int size() {
+        return entryOf.size();
+    }
+
+    // Whether 'ride' is indexed.
+    boolean contains(int ride) {
+        return entryOf.get(ride) != NIL;
+    }
+
+    // Indexes 'ride' at (x, y), replacing where it was if it already was indexed.
+    void add(int ride, int tripCost, int tripDuration, int x, int y) {
+        remove(ride);
+        int entry = allocateEntry();
+        rides[entry] = ride;
+        xs[entry] = x;
+        ys[entry] = y;
+        keys[entry] = RidePolicy.costKey(tripCost, tripDuration);
+        entryOf.put(ride, entry);
+
+        int node = ROOT;
+        long x0 = Integer.MIN_VALUE;
+        long y0 = Integer.MIN_VALUE;
+        int level = ROOT_LEVEL;
+        while (true) {
+            if (before(entry, minEntry[node])) {
+                minEntry[node] = entry;
+            }
+            if (child[node] == LEAF) {
+                break;
+            }
+            level--;
+            long half = 1L << level;
+            int quadrant = quadrant(x, y, x0, y0, half);
+            x0 += (quadrant & 1) * half;
+            y0 += (quadrant >> 1) * half;
+            node = child[node] + quadrant;
+        }
+        link(entry, node);
+        if (count[node] > BUCKET && level > 0) {
+            split(node, x0, y0, level);
+        }
+    }
+
+    // Gives 'ride' a new cost and duration, keeping its location. Does nothing if it is not indexed.
+    void update(int ride, int tripCost, int tripDuration) {
+        int entry = entryOf.get(ride);
+        if (entry != NIL) {
+            add(ride, tripCost, tripDuration, xs[entry], ys[entry]);
+        }
+    }
+
+    // Takes 'ride' out of the index. Returns FALSE if it was not in it.
+    boolean remove(int ride) {
+        int entry = entryOf.get(ride);
+        if (entry == NIL) {
+            return false;
+        }
+        entryOf.remove(ride);
+        int node = leafOf[entry];
+        unlink(entry, node);
+        // only the nodes the ride was the minimum of change, and those are a path up from its leaf.
+        while (node != LEAF && minEntry[node] == entry) {
+            minEntry[node] = child[node] == LEAF ? leafMin(node) : childrenMin(node);
+            node = parent[node];
+        }
+        next[entry] = freeList;
+        freeList = entry;
+        return true;
+    }
+
+    // The ride with the lowest (tripCost, tripDuration, rideNumber) within 'radius' of (x, y), distances being
+    // euclidean, as an entry for ride(), cost() and duration(). NIL if there is none.
+    int nearest(int x, int y, int radius) {
+        best = NIL;
+        if (radius >= 0) {
+            queryX = x;
+            queryY = y;
+            this.radius = radius;
+            search(ROOT, Integer.MIN_VALUE, Integer.MIN_VALUE, ROOT_LEVEL);
+        }
+        return best;
+    }
+
+    // The entry of 'ride', NIL if it is not indexed.
+    int entry(int ride) {
+        return entryOf.get(ride);
+    }
+
+    int ride(int entry) {
+        return rides[entry];
+    }
+
+    int x(int entry) {
+        return xs[entry];
+    }
+
+    int y(int entry) {
+        return ys[entry];
+    }
+
+    int cost(int entry) {
+        return (int) (keys[entry] >> 32);
+    }
+
+    int duration(int entry) {
+        return (int) keys[entry] ^ 0x80000000;
+    }
+
+    // Helps search the node whose square starts at (x0, y0) and is 2^level wide.
+    private void search(int node, long x0, long y0, int level) {
+        int min = minEntry[node];
+        if (min == NIL || !before(min, best) || !reaches(x0, y0, level)) {
+            return;
+        }
+        if (inside(xs[min] - queryX, ys[min] - queryY)) {
+            best = min;     // nothing below the node beats its minimum
+            return;
+        }
+        if (child[node] == LEAF) {
+            for (int entry = first[node]; entry != NIL; entry = next[entry]) {
+                if (before(entry, best) && inside(xs[entry] - queryX, ys[entry] - queryY)) {
+                    best = entry;
+                }
+            }
+            return;
+        }
+        // visit the children lowest minimum first, an insertion sort of four.
+        int c = child[node];
+        int base = 4 * (level - 1);
+        for (int i = 0; i < 4; i++) {
+            int j = base + i;
+            while (j > base && before(minEntry[c + i], minEntry[c + order[j - 1]])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        long half = 1L << (level - 1);
+        for (int i = base; i < base + 4; i++) {
+            int quadrant = order[i];
+            search(c + quadrant, x0 + (quadrant & 1) * half, y0 + (quadrant >> 1) * half, level - 1);
+        }
+    }
+
+    // Helps tell whether the circle reaches into the square at (x0, y0), 2^level wide.
+    private boolean reaches(long x0, long y0, int level) {
+        long last = (1L << level) - 1;
+        long nearestX = Math.max(x0, Math.min(queryX, x0 + last));
+        long nearestY = Math.max(y0, Math.min(queryY, y0 + last));
+        return inside(nearestX - queryX, nearestY - queryY);
+    }
+
+    // Helps tell whether the offset (dx, dy) from the query point lies within the radius. Either offset may be
+    // up to 2^32, so both are checked against the radius before they are squared.
+    private boolean inside(long dx, long dy) {
+        if (Math.abs(dx) > radius || Math.abs(dy) > radius) {
+            return false;
+        }
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    // Whether entry 'a' comes before entry 'b', NIL coming after every entry.
+    private boolean before(int a, int b) {
+        if (b == NIL) {
+            return a != NIL;
+        }
+        if (a == NIL) {
+            return false;
+        }
+        return keys[a] < keys[b] || (keys[a] == keys[b] && rides[a] < rides[b]);
+    }
+
+    private static int quadrant(int x, int y, long x0, long y0, long half) {
+        return (x - x0 >= half ? 1 : 0) | (y - y0 >= half ? 2 : 0);
+    }
+
+    // Helps turn a full leaf into four leaves and deal its entries out to them, splitting those again while
+    // they are too full and not yet a single point.
+    private void split(int node, long x0, long y0, int level) {
+        int c = allocateNodes();
+        child[node] = c;
+        for (int i = 0; i < 4; i++) {
+            child[c + i] = LEAF;
+            parent[c + i] = node;
+            first[c + i] = NIL;
+            count[c + i] = 0;
+            minEntry[c + i] = NIL;
+        }
+        long half = 1L << (level - 1);
+        int entry = first[node];
+        first[node] = NIL;
+        count[node] = 0;
+        while (entry != NIL) {
+            int following = next[entry];
+            int target = c + quadrant(xs[entry], ys[entry], x0, y0, half);
+            link(entry, target);
+            if (before(entry, minEntry[target])) {
+                minEntry[target] = entry;
+            }
+            entry = following;
+        }
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            if (count[c + quadrant] > BUCKET && level > 1) {
+                split(c + quadrant, x0 + (quadrant & 1) * half, y0 + (quadrant >> 1) * half, level - 1);
+            }
+        }
+    }
+
+    private int leafMin(int node) {
+        int min = NIL;
+        for (int entry = first[node]; entry != NIL; entry = next[entry]) {
+            if (before(entry, min)) {
+                min = entry;
+            }
+        }
+        return min;
+    }
+
+    private int childrenMin(int node) {
+        int c = child[node];
+        int min = minEntry[c];
+        for (int i = 1; i < 4; i++) {
+            if (before(minEntry[c + i], min)) {
+                min = minEntry[c + i];
+            }
+        }
+        return min;
+    }
+
+    private void link(int entry, int leaf) {
+        next[entry] = first[leaf];
+        prev[entry] = NIL;
+        if (first[leaf] != NIL) {
+            prev[first[leaf]] = entry;
+        }
+        first[leaf] = entry;
+        leafOf[entry] = leaf;
+        count[leaf]++;
+    }
+
+    private void unlink(int entry, int leaf) {
+        if (prev[entry] == NIL) {
+            first[leaf] = next[entry];
+        } else {
+            next[prev[entry]] = next[entry];
+        }
+        if (next[entry] != NIL) {
+            prev[next[entry]] = prev[entry];
+        }
+        count[leaf]--;
+    }
+
+    private int allocateEntry() {
+        if (freeList != NIL) {
+            int entry = freeList;
+            freeList = next[entry];
+            return entry;
+        }
+        if (usedEntries == rides.length) {
+            int capacity = rides.length * 2;
+            rides = Arrays.copyOf(rides, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            leafOf = Arrays.copyOf(leafOf, capacity);
+        }
+        return usedEntries++;
+    }
+
+    // Helps hand out four consecutive nodes.
+    private int allocateNodes() {
+        if (usedNodes + 4 > child.length) {
+            int capacity = child.length * 2;
+            child = Arrays.copyOf(child, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            first = Arrays.copyOf(first, capacity);
+            count = Arrays.copyOf(count, capacity);
+            minEntry = Arrays.copyOf(minEntry, capacity);
+        }
+        int c = usedNodes;
+        usedNodes += 4;
+        return c;
+    }
+}
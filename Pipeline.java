@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    Runs replay() as three stages on three threads, selected with --pipeline=on:
+        parse   - the CommandParser, on its own thread, feeding commands into a ring
+        apply   - replay() on the calling thread, the only one that touches the engine
+        format  - turns the results into text for the OutputSink, on its own thread
+    The stages are connected by bounded IntRings, so a slow stage holds the others back instead of letting
+    work pile up. Commands and results each travel as one ordered stream, so the output stays in input order.
+
+    Commands are type, argCount, the arguments and the line number (2 ints). Results are an op code followed
+    by its operands, mirroring the ResultSink calls; lines such as "Duplicate Ride Number" travel as an index
+    into a table of the byte arrays seen so far.
+*/
+class Pipeline {
+    private static final int COMMAND_RING_SIZE = 1 << 16;
+    private static final int RESULT_RING_SIZE = 1 << 18;
+    private static final int PUBLISH_EVERY = 1 << 10;
+
+    // Result op codes.
+    private static final int LINE = 1;          // message index
+    private static final int RIDE_LINE = 2;     // ride, cost, duration
+    private static final int NUMBER_LINE = 3;   // high int, low int
+    private static final int BEGIN_RANGE = 4;
+    private static final int RIDE = 5;          // ride, cost, duration
+    private static final int END_RANGE = 6;     // message index used when the range is empty
+
+    private final IntRing commands = new IntRing(COMMAND_RING_SIZE, PUBLISH_EVERY);
+    private final IntRing results = new IntRing(RESULT_RING_SIZE, PUBLISH_EVERY);
+    private volatile byte[][] messages = new byte[4][];  // written by apply, read by format
+    private int messageCount;
+
+    // Per stage totals, read once the stages have finished.
+    private long parsed;
+    private long applied;
+    private long formatted;
+    private long parseNanos;
+    private long applyNanos;
+    private long formatNanos;
+    private volatile Throwable failure;
+
+    // Runs every command of 'parser' against 'engine' and writes the results to 'out'. Returns the number of commands.
+    static long run(CommandParser parser, DispatchEngine engine, OutputSink out) throws IOException {
+        Pipeline pipeline = new Pipeline();
+        long count = pipeline.execute(parser, engine, out);
+        if (Diagnostics.summary()) {
+            pipeline.printCounters();
+        }
+        return count;
+    }
+
+    private long execute(CommandParser parser, DispatchEngine engine, OutputSink out) throws IOException {
+        Thread parse = new Thread(() -> parse(parser), "pipeline-parse");
+        Thread format = new Thread(() -> format(out), "pipeline-format");
+        parse.setDaemon(true);  // nothing left to wait for if apply fails
+        format.setDaemon(true);
+        parse.start();
+        format.start();
+
+        long start = System.nanoTime();
+        try {
+            applied = gatorTaxi.replay(new RingCommandSource(), engine, new RingResultSink());
+        } finally {
+            results.close();
+            applyNanos = System.nanoTime() - start;
+        }
+        try {
+            parse.join();
+            format.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the pipeline", e);
+        }
+        if (failure != null) {
+            throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+        }
+        return applied;
+    }
+
+    // ----------------------------------- PARSE STAGE -----------------------------------
+
+    private void parse(CommandParser parser) {
+        long start = System.nanoTime();
+        Command cmd = new Command();
+        try {
+            while (parser.next(cmd)) {
+                commands.put(cmd.type);
+                commands.put(cmd.argCount);
+                for (int i = 0; i < cmd.argCount; i++) {
+                    commands.put(cmd.args[i]);
+                }
+                commands.put((int) (cmd.lineNumber >>> 32));
+                commands.put((int) cmd.lineNumber);
+                parsed++;
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            commands.close();
+            parseNanos = System.nanoTime() - start;
+        }
+    }
+
+    // The apply stage's view of the parsed commands.
+    private final class RingCommandSource implements CommandSource {
+        @Override
+        public boolean next(Command cmd) {
+            if (!commands.ready()) {
+                results.flush();    // let the format stage catch up while this stage waits
+            }
+            if (!commands.await()) {
+                return false;
+            }
+            cmd.type = commands.take();
+            cmd.argCount = commands.take();
+            for (int i = 0; i < cmd.argCount; i++) {
+                cmd.args[i] = commands.take();
+            }
+            cmd.lineNumber = ((long) commands.take() << 32) | (commands.take() & 0xFFFFFFFFL);
+            return true;
+        }
+    }
+
+    // ----------------------------------- FORMAT STAGE -----------------------------------
+
+    // The apply stage's output, encoded for the format stage.
+    private final class RingResultSink implements ResultSink {
+        @Override
+        public void writeLine(byte[] line) {
+            results.put(LINE);
+            results.put(messageIndex(line));
+        }
+
+        @Override
+        public void writeRideLine(int rideNumber, int tripCost, int tripDuration) {
+            results.put(RIDE_LINE);
+            results.put(rideNumber);
+            results.put(tripCost);
+            results.put(tripDuration);
+        }
+
+        @Override
+        public void writeNumberLine(long value) {
+            results.put(NUMBER_LINE);
+            results.put((int) (value >>> 32));
+            results.put((int) value);
+        }
+
+        @Override
+        public void beginRange() {
+            results.put(BEGIN_RANGE);
+        }
+
+        @Override
+        public void accept(int rideNumber, int tripCost, int tripDuration) {
+            results.put(RIDE);
+            results.put(rideNumber);
+            results.put(tripCost);
+            results.put(tripDuration);
+        }
+
+        @Override
+        public void endRange() {
+            endRange(OutputSink.NO_RIDE);
+        }
+
+        @Override
+        public void endRange(byte[] whenEmpty) {
+            results.put(END_RANGE);
+            results.put(messageIndex(whenEmpty));
+        }
+    }
+
+    // Index of 'line' in the message table, adding it if it is new. Lines are constants, so identity is enough.
+    private int messageIndex(byte[] line) {
+        byte[][] table = messages;
+        for (int i = 0; i < messageCount; i++) {
+            if (table[i] == line) {
+                return i;
+            }
+        }
+        if (messageCount == table.length) {
+            table = Arrays.copyOf(table, messageCount * 2);
+        }
+        table[messageCount] = line;
+        messages = table;   // published before the op that refers to it
+        return messageCount++;
+    }
+
+    private void format(OutputSink out) {
+        long start = System.nanoTime();
+        try {
+            while (results.await()) {
+                int op = results.take();
+                switch (op) {
+                    case LINE:
+                        out.writeLine(messages[results.take()]);
+                        formatted++;
+                        break;
+                    case RIDE_LINE:
+                        out.writeRideLine(results.take(), results.take(), results.take());
+                        formatted++;
+                        break;
+                    case NUMBER_LINE:
+                        out.writeNumberLine(((long) results.take() << 32) | (results.take() & 0xFFFFFFFFL));
+                        formatted++;
+                        break;
+                    case BEGIN_RANGE:
+                        out.beginRange();
+                        break;
+                    case RIDE:
+                        out.accept(results.take(), results.take(), results.take());
+                        break;
+                    case END_RANGE:
+                        out.endRange(messages[results.take()]);
+                        formatted++;
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown result op " + op);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+            while (results.await()) {
+                results.take();     // keep draining so apply is never stuck on a full ring
+            }
+        } finally {
+            formatNanos = System.nanoTime() - start;
+        }
+    }
+
+    // Commands or lines per second of every stage, and how long each one waited on its neighbours.
+    private void printCounters() {
+        printStage("parse", parsed, "commands", parseNanos,
+                ms(commands.producerWaitNanos()) + " ms blocked on apply");
+        printStage("apply", applied, "commands", applyNanos,
+                ms(commands.consumerWaitNanos()) + " ms waiting for parse, " + ms(results.producerWaitNanos()) + " ms blocked on format");
+        printStage("format", formatted, "lines", formatNanos,
+                ms(results.consumerWaitNanos()) + " ms waiting for apply");
+    }
+
+    private static void printStage(String stage, long count, String unit, long nanos, String waits) {
+        long perSecond = nanos == 0 ? 0 : count * 1_000_000_000L / nanos;
+        System.out.println("Pipeline " + stage + ": " + count + " " + unit + " in " + ms(nanos) + " ms (" + perSecond + "/s), " + waits);
+    }
+
+    private static long ms(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
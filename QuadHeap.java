@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+/*
+    4-ary implicit heap. The tree is half as deep as the binary Heap, so a sift-up after an insert or a
+    decrease-key moves a node half as many times, and the four children a sift-down compares sit next to each
+    other in the array, as do their RidePolicy keys in 'keys'. Positions are 0-based: the children of 'pos' are
+    4*pos+1 .. 4*pos+4.
+*/
+class QuadHeap implements RideQueue {
+    private static final int ARITY = 4;
+
+    private HeapNode[] heap;
+    private long[] keys;    // keys[pos] is the key of heap[pos]
+    private int size;
+    private final RidePolicy policy;
+    private long sequence;  // rides queued so far
+    private final HeapFrontier frontier = new HeapFrontier();   // used by removeSmallest()
+
+    QuadHeap(int initialCapacity, RidePolicy policy) {
+        heap = new HeapNode[Math.max(ARITY, initialCapacity)];
+        keys = new long[heap.length];
+        this.policy = policy;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public HeapNode getRoot() {
+        return size > 0 ? heap[0] : null;
+    }
+
+    @Override
+    public void insert(HeapNode element) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        place(element, policy.key(element, sequence++), size);
+        siftUp(size++);
+    }
+
+    // Floyd's bottom-up heapify, in O(n).
+    @Override
+    public void buildFrom(HeapNode[] nodes, InsertBatch batch) {
+        int count = batch.size();
+        if (heap.length < count) {
+            heap = new HeapNode[count];
+            keys = new long[count];
+        }
+        long first = sequence;
+        for (int i = 0; i < count; i++) {
+            long queued = first + batch.position(i);
+            place(nodes[i], policy.key(nodes[i], queued), i);
+            sequence = Math.max(sequence, queued + 1);
+        }
+        size = count;
+        for (int pos = (size - 2) / ARITY; pos >= 0; pos--) {
+            siftDown(pos);
+        }
+    }
+
+    @Override
+    public HeapNode removeMin() {
+        if (size == 0) {
+            return null;
+        }
+        HeapNode popped = heap[0];
+        deleteRandomNode(popped);
+        return popped;
+    }
+
+    // The 'k' lowest nodes are found first, then the holes they leave are filled from the end, see HeapFrontier.
+    @Override
+    public int removeSmallest(int k, HeapNode[] out) {
+        int count = Math.min(k, size);
+        if (count <= 0) {
+            return 0;
+        }
+        frontier.walk(heap, keys, 0, size, ARITY, 1, count);
+        for (int i = 0; i < count; i++) {
+            int pos = frontier.taken[i];
+            out[i] = heap[pos];
+            heap[pos] = null;
+        }
+        int newEnd = size - count;
+        int tail = size - 1;
+        size -= count;
+        for (int i = count - 1; i >= 0; i--) {
+            int hole = frontier.taken[i];
+            if (hole < newEnd) {
+                while (heap[tail] == null) {
+                    tail--;
+                }
+                HeapNode last = heap[tail];
+                heap[tail--] = null;
+                sinkInto(hole, last, keys[tail + 1]);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void deleteRandomNode(HeapNode node) {
+        int pos = node.myIndexInHeap;
+        HeapNode last = heap[--size];
+        heap[size] = null;
+        if (pos < size) {
+            // move the LAST node into the hole and let it find its place from there.
+            place(last, keys[size], pos);
+            if (siftUp(pos) == pos) {
+                siftDown(pos);
+            }
+        }
+    }
+
+    @Override
+    public void fixUpdate(HeapNode node) {
+        int pos = node.myIndexInHeap;
+        keys[pos] = policy.rekey(keys[pos], node);
+        if (siftUp(pos) == pos) {
+            siftDown(pos);
+        }
+    }
+
+    // Moves the node at 'pos' UP until its parent is smaller. Returns the final position.
+    private int siftUp(int pos) {
+        HeapNode moving = heap[pos];
+        long movingKey = keys[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / ARITY;
+            if (!RidePolicy.before(movingKey, moving, keys[parent], heap[parent])) {
+                break;
+            }
+            if (Metrics.enabled) {
+                Metrics.siftSteps++;
+            }
+            place(heap[parent], keys[parent], pos);
+            pos = parent;
+        }
+        place(moving, movingKey, pos);
+        return pos;
+    }
+
+    // Moves the node at 'pos' DOWN until all its children are bigger.
+    private void siftDown(int pos) {
+        HeapNode moving = heap[pos];
+        long movingKey = keys[pos];
+        while (true) {
+            int first = ARITY * pos + 1;
+            if (first >= size) {
+                break;
+            }
+            // pick the smallest of up to four children.
+            int best = first;
+            int end = Math.min(first + ARITY, size);
+            for (int child = first + 1; child < end; child++) {
+                if (RidePolicy.before(keys[child], heap[child], keys[best], heap[best])) {
+                    best = child;
+                }
+            }
+            if (!RidePolicy.before(keys[best], heap[best], movingKey, moving)) {
+                break;
+            }
+            if (Metrics.enabled) {
+                Metrics.siftSteps++;
+            }
+            place(heap[best], keys[best], pos);
+            pos = best;
+        }
+        place(moving, movingKey, pos);
+    }
+
+    // Puts 'node' in the hole at 'pos', whose subtrees are heaps, bottom-up: the hole follows the smallest child
+    // down to a leaf, then the node climbs back from there. removeSmallest() fills holes with nodes from the end
+    // of the heap, which belong near the bottom, so this saves the comparison with the node at every level.
+    private void sinkInto(int pos, HeapNode node, long key) {
+        int top = pos;
+        while (true) {
+            int first = ARITY * pos + 1;
+            if (first >= size) {
+                break;
+            }
+            int best = first;
+            int end = Math.min(first + ARITY, size);
+            for (int child = first + 1; child < end; child++) {
+                if (RidePolicy.before(keys[child], heap[child], keys[best], heap[best])) {
+                    best = child;
+                }
+            }
+            if (Metrics.enabled) {
+                Metrics.siftSteps++;
+            }
+            place(heap[best], keys[best], pos);
+            pos = best;
+        }
+        while (pos > top) {
+            int parent = (pos - 1) / ARITY;
+            if (!RidePolicy.before(key, node, keys[parent], heap[parent])) {
+                break;
+            }
+            place(heap[parent], keys[parent], pos);
+            pos = parent;
+        }
+        place(node, key, pos);
+    }
+
+    private void place(HeapNode node, long key, int pos) {
+        heap[pos] = node;
+        keys[pos] = key;
+        node.myIndexInHeap = pos;
+    }
+
+    @Override
+    public void print() {
+        System.out.println("\n\nsize = " + size);
+        for (int pos = 0; ARITY * pos + 1 < size; pos++) {
+            System.out.print("Parent = " + heap[pos].rideNumber + " at i= " + pos + " & children =");
+            for (int child = ARITY * pos + 1; child <= ARITY * pos + ARITY && child < size; child++) {
+                System.out.print(" " + heap[child].rideNumber);
+            }
+            System.out.println();
+        }
+    }
+
+    @Override
+    public void printConnection() {
+        System.out.println("\n\n");
+        for (int pos = 0; pos < size; pos++) {
+            System.out.println(heap[pos].rideNumber + " , " + heap[pos].rbTreference.tripCost + " , "
+                    + heap[pos].rbTreference.tripDuration + " , " + " i= " + pos + " & myIndex = " + heap[pos].myIndexInHeap);
+        }
+    }
+}
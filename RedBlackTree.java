@@ -0,0 +1,620 @@
+// This class implements the functions in Red Black Tree
+class RedBlackTree {
+    public Node root;
+    public Node TNULL;  //Represents a NULL node.
+
+    // Constructor for the Red Black Tree.
+    public RedBlackTree() {
+        TNULL = new Node(0, 0, 0);
+        TNULL.color = 0;
+        TNULL.left = null;
+        TNULL.right = null;
+        // An empty subtree counts nothing and never wins a minimum.
+        TNULL.size = 0;
+        TNULL.sumCost = 0;
+        TNULL.minCost = Integer.MAX_VALUE;
+        TNULL.minDuration = Integer.MAX_VALUE;
+        root = TNULL;
+    }
+
+    // Recomputes the aggregates of 'x' from its own ride and its two children.
+    private void pull(Node x) {
+        Node l = x.left, r = x.right;
+        x.size = 1 + l.size + r.size;
+        x.sumCost = x.tripCost + l.sumCost + r.sumCost;
+        int minCost = x.tripCost, minDuration = x.tripDuration;
+        if (l.minCost < minCost || (l.minCost == minCost && l.minDuration < minDuration)) {
+            minCost = l.minCost;
+            minDuration = l.minDuration;
+        }
+        if (r.minCost < minCost || (r.minCost == minCost && r.minDuration < minDuration)) {
+            minCost = r.minCost;
+            minDuration = r.minDuration;
+        }
+        x.minCost = minCost;
+        x.minDuration = minDuration;
+    }
+
+    // Recomputes the aggregates on the path from 'x' up to the root.
+    private void pullToRoot(Node x) {
+        while (x != null && x != TNULL) {
+            pull(x);
+            x = x.parent;
+        }
+    }
+
+    // Helps refresh the aggregates after the tripCost or tripDuration of 'node' was changed in place.
+    public void updateRide(Node node) {
+        pullToRoot(node);
+    }
+
+    // Number of nodes on the longest path from the root down, 0 for an empty tree. Walks the whole tree.
+    public int height() {
+        return height(root);
+    }
+
+    private int height(Node node) {
+        return node == TNULL ? 0 : 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    // Helps find the ROOT of the Red Black Tree.
+    public Node getRoot() {
+        return this.root;
+    }
+
+    private void rbTransplant(Node u, Node v) {
+        if (u.parent == null) {
+            root = v;
+        } else if (u == u.parent.left) {
+            u.parent.left = v;
+        } else {
+            u.parent.right = v;
+        }
+        v.parent = u.parent;
+    }
+
+    // Helps return a node with the minimum key.
+    public Node minimum(Node node) {
+        while (node.left != TNULL) {
+            node = node.left;
+        }
+        return node;
+    }
+    
+    // Helps return a node with the maximum key.
+    public Node maximum(Node node) {
+        while (node.right != TNULL) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    // Helps return the predecessor of any node.
+    public Node predecessor(Node x) {
+        // if the left subtree is not null,
+        // the predecessor is the rightmost node in the
+        // left subtree
+        if (x.left != TNULL) {
+            return maximum(x.left);
+        }
+
+        Node y = x.parent;
+        while (y != null && x == y.left) {
+            x = y;
+            y = y.parent;
+        }
+
+        return y == null ? TNULL : y;  // the root's parent is null, not TNULL
+    }
+
+    // Helps return the successor of any node.
+    public Node successor(Node x) {
+        // if the right subtree is not null,
+        // the successor is the leftmost node in the
+        // right subtree
+        if (x.right != TNULL) {
+            return minimum(x.right);
+        }
+
+        // else it is the lowest ancestor of x whose
+        // left child is also an ancestor of x.
+        Node y = x.parent;
+        while (y != null && x == y.right) {
+            x = y;
+            y = y.parent;
+        }
+        return y == null ? TNULL : y;  // the root's parent is null, not TNULL
+    }
+
+    // Helps rotate a node at LEFT.
+    public void leftRotate(Node x) {
+        if (Metrics.enabled)
+            Metrics.rotations++;
+        Node y = x.right;
+        x.right = y.left;
+        if (y.left != TNULL) {
+            y.left.parent = x;
+        }
+        y.parent = x.parent;
+        if (x.parent == null) {
+            this.root = y;
+        } else if (x == x.parent.left) {
+            x.parent.left = y;
+        } else {
+            x.parent.right = y;
+        }
+        y.left = x;
+        x.parent = y;
+        pull(x);    // x is now below y, so it goes first
+        pull(y);
+    }
+
+    // Helps rotate a node at RIGHT.
+    public void rightRotate(Node x) {
+        if (Metrics.enabled)
+            Metrics.rotations++;
+        Node y = x.left;
+        x.left = y.right;
+        if (y.right != TNULL) {
+            y.right.parent = x;
+        }
+        y.parent = x.parent;
+        if (x.parent == null) {
+            this.root = y;
+        } else if (x == x.parent.right) {
+            x.parent.right = y;
+        } else {
+            x.parent.left = y;
+        }
+        y.right = x;
+        x.parent = y;
+        pull(x);
+        pull(y);
+    }
+
+    // Inserts node into the required position and fixes the tree according to Red Black Tree Properties.
+    public Node insertIntoRBTree(Node newNode) {
+        // Ordinary Binary Search Insertion, linking in the caller's node instead of a copy of it.
+        Node node = newNode;
+        node.parent = null;
+        // node.data = key;
+        node.left = TNULL;
+        node.right = TNULL;
+        node.color = 1; // new node must be red
+
+        Node y = null;
+        Node x = this.root;
+
+        while (x != TNULL) {
+            y = x;
+            if (node.rideNumber < x.rideNumber) {
+                x = x.left;
+            } 
+            else {
+                x = x.right;
+            }
+        }
+
+        // y is parent of x
+        node.parent = y;
+        if (y == null) {
+            root = node;
+        } 
+        else if (node.rideNumber < y.rideNumber) {
+            y.left = node;
+        } 
+        else {
+            y.right = node;
+        }
+        pullToRoot(y);  // every ancestor gained one ride
+
+        // if new node is a root node, simply return
+        if (node.parent == null) {
+            node.color = 0;
+            return node;
+        }
+
+        // if the grandparent is null, simply return
+        if (node.parent.parent == null) {
+            return node;
+        }
+
+        // Fix the tree
+        adjustInsert(node);
+        return node;
+    }
+
+    // Replaces the tree by a balanced tree of 'nodes', which must be sorted by ride number. Any node the tree held
+    // before and that is not in 'nodes' is simply dropped.
+    // Runs in O(n) without any rotation: every level is full except maybe the deepest one, whose nodes are made
+    // red so that each path still sees the same number of black nodes.
+    public void buildFromSorted(Node[] nodes, int count) {
+        int redDepth = 31 - Integer.numberOfLeadingZeros(count);  // depth of the deepest level
+        root = buildBalanced(nodes, 0, count - 1, 0, redDepth);
+        if (root != TNULL) {
+            root.parent = null;
+            root.color = 0;
+        }
+    }
+
+    // Helps build the subtree of nodes[low..high] around its middle node, returning its root.
+    private Node buildBalanced(Node[] nodes, int low, int high, int depth, int redDepth) {
+        if (low > high) {
+            return TNULL;
+        }
+        int mid = (low + high) >>> 1;
+        Node node = nodes[mid];
+        node.left = buildBalanced(nodes, low, mid - 1, depth + 1, redDepth);
+        node.right = buildBalanced(nodes, mid + 1, high, depth + 1, redDepth);
+        if (node.left != TNULL) {
+            node.left.parent = node;
+        }
+        if (node.right != TNULL) {
+            node.right.parent = node;
+        }
+        node.color = depth == redDepth ? 1 : 0;
+        pull(node);
+        return node;
+    }
+
+    // Helps update the Red Black Tree based on its properties.
+    private void adjustInsert(Node k) {
+        Node u;
+        while (k.parent.color == 1) {
+            if (k.parent == k.parent.parent.right) {
+                u = k.parent.parent.left; // uncle
+                if (u.color == 1) {
+                    // case 3.1
+                    u.color = 0;
+                    k.parent.color = 0;
+                    k.parent.parent.color = 1;
+                    k = k.parent.parent;
+                } else {
+                    if (k == k.parent.left) {
+                        // case 3.2.2
+                        k = k.parent;
+                        rightRotate(k);
+                    }
+                    // case 3.2.1
+                    k.parent.color = 0;
+                    k.parent.parent.color = 1;
+                    leftRotate(k.parent.parent);
+                }
+            } else {
+                u = k.parent.parent.right; // uncle
+
+                if (u.color == 1) {
+                    // mirror case 3.1
+                    u.color = 0;
+                    k.parent.color = 0;
+                    k.parent.parent.color = 1;
+                    k = k.parent.parent;
+                } else {
+                    if (k == k.parent.right) {
+                        // mirror case 3.2.2
+                        k = k.parent;
+                        leftRotate(k);
+                    }
+                    // mirror case 3.2.1
+                    k.parent.color = 0;
+                    k.parent.parent.color = 1;
+                    rightRotate(k.parent.parent);
+                }
+            }
+            if (k == root) {
+                break;
+            }
+        }
+        root.color = 0;
+    }
+
+    // Helps delete a node from the tree.
+    public HeapNode deleteNodeFromRBTree(int data) {
+        return deleteNodeHelper(this.root, data);
+    }
+
+    //Helps the deleteNode() function.
+    private HeapNode deleteNodeHelper(Node node, int key) {
+        // find the node containing key
+        Node z = TNULL;
+        while (node != TNULL) {
+            if (node.rideNumber == key) {
+                z = node;
+            }
+
+            if (node.rideNumber <= key) {
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+
+        if (z == TNULL) {
+            if (Diagnostics.tracing())
+                System.out.println("Couldn't find key in the tree");
+            return null;
+        }
+        deleteNode(z);
+        return z.heapRef;
+    }
+
+    // Helps delete 'z', a node of this tree, without searching for it, e.g. when the heap or an index already led to it.
+    public void deleteNode(Node z) {
+        Node x, y;
+        y = z;
+        int yOriginalColor = y.color;
+        Node changedFrom;   // lowest node whose subtree lost a ride
+        if (z.left == TNULL) {
+            x = z.right;
+            changedFrom = z.parent;
+            rbTransplant(z, z.right);
+        } else if (z.right == TNULL) {
+            x = z.left;
+            changedFrom = z.parent;
+            rbTransplant(z, z.left);
+        } else {
+            y = minimum(z.right);
+            yOriginalColor = y.color;
+            x = y.right;
+            if (y.parent == z) {
+                x.parent = y;
+                changedFrom = y;
+            } else {
+                changedFrom = y.parent;
+                rbTransplant(y, y.right);
+                y.right = z.right;
+                y.right.parent = y;
+            }
+
+            rbTransplant(z, y);
+            y.left = z.left;
+            y.left.parent = y;
+            y.color = z.color;
+        }
+        pullToRoot(changedFrom);
+        if (yOriginalColor == 0) {
+            adjustDelete(x);
+        }
+    }
+
+    // Helps update the Red Black Tree after deletiion is done.
+    private void adjustDelete(Node x) {
+        Node s;
+        while (x != root && x.color == 0) {
+            if (x == x.parent.left) {
+                s = x.parent.right;
+                if (s.color == 1) {
+                    // case 3.1
+                    s.color = 0;
+                    x.parent.color = 1;
+                    leftRotate(x.parent);
+                    s = x.parent.right;
+                }
+
+                if (s.left.color == 0 && s.right.color == 0) {
+                    // case 3.2
+                    s.color = 1;
+                    x = x.parent;
+                } else {
+                    if (s.right.color == 0) {
+                        // case 3.3
+                        s.left.color = 0;
+                        s.color = 1;
+                        rightRotate(s);
+                        s = x.parent.right;
+                    }
+
+                    // case 3.4
+                    s.color = x.parent.color;
+                    x.parent.color = 0;
+                    s.right.color = 0;
+                    leftRotate(x.parent);
+                    x = root;
+                }
+            } else {
+                s = x.parent.left;
+                if (s.color == 1) {
+                    // case 3.1
+                    s.color = 0;
+                    x.parent.color = 1;
+                    rightRotate(x.parent);
+                    s = x.parent.left;
+                }
+
+                if (s.left.color == 0 && s.right.color == 0) {
+                    // case 3.2
+                    s.color = 1;
+                    x = x.parent;
+                } else {
+                    if (s.left.color == 0) {
+                        // case 3.3
+                        s.right.color = 0;
+                        s.color = 1;
+                        leftRotate(s);
+                        s = x.parent.left;
+                    }
+
+                    // case 3.4
+                    s.color = x.parent.color;
+                    x.parent.color = 0;
+                    s.left.color = 0;
+                    rightRotate(x.parent);
+                    x = root;
+                }
+            }
+        }
+        x.color = 0;
+    }
+
+    //Helps search a ride in the Red Black Tree using Binary Search Tree Property. 
+    public Node searchSingleRide(int rideNumber) {
+        // Traversing the Binary Search Tree
+        Node currNode = root;
+        while (currNode != null) { 
+            if (currNode.rideNumber == rideNumber) {
+                return currNode;
+            }
+            if(currNode.rideNumber<rideNumber)
+                currNode = currNode.right;  // SEARCH RIGHT SUBTREE IF CURRENT NODE'S VALUE IS LESSER THAN THE REQUIRED KEY
+            else
+                currNode = currNode.left;   // SEARCH LEFT SUBTREE IF CURRENT NODE'S VALUE IS GREATER THAN THE REQUIRED KEY
+        }
+        return TNULL;    // RETURN NULL IF THE KEY IS NOT FOUND
+    }
+
+    //Performs an IN-ORDER walk of the Red Black Tree, within the required range low-high.
+    //Every ride found is handed to 'out' in order, so callers can stream the results.
+    //The walk is iterative: seek to the first ride >= low in O(log n), then follow successors, so no stack is used.
+    public void searchRidesInRange(int low, int high, RideConsumer out){
+        for (Node currNode = ceiling(low); currNode != TNULL && currNode.rideNumber <= high; currNode = successor(currNode)) {
+            out.accept(currNode.rideNumber, currNode.tripCost, currNode.tripDuration);
+        }
+    }
+
+    // Helps find the node with the smallest ride number >= 'rideNumber', or TNULL if there is none.
+    public Node ceiling(int rideNumber) {
+        Node currNode = root;
+        Node best = TNULL;
+        while (currNode != TNULL) {
+            if (currNode.rideNumber >= rideNumber) {
+                best = currNode;    // candidate, but a smaller one may be on the left
+                currNode = currNode.left;
+            } else {
+                currNode = currNode.right;
+            }
+        }
+        return best;
+    }
+
+    // Number of rides numbered low..high, found from the subtree sizes in O(log n).
+    public int countRidesInRange(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return countRidesBelow(high, true) - countRidesBelow(low, false);
+    }
+
+    // Sum of the tripCost of the rides numbered low..high, found from the subtree sums in O(log n).
+    public long sumCostInRange(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return sumCostBelow(high, true) - sumCostBelow(low, false);
+    }
+
+    // The ride with the lowest (tripCost, tripDuration) among those numbered low..high, the smallest ride
+    // number on ties, or TNULL if there is none. Found from the subtree minimums in O(log n): the range is
+    // covered by the nodes on the two boundary paths and the whole subtrees hanging off them, which are
+    // visited in ride number order, and only the winning subtree is walked down to its ride.
+    public Node minCostInRange(int low, int high) {
+        bestNode = TNULL;
+        bestIsSubtree = false;
+        if (low <= high) {
+            offerMin(root, low, high, false, false);
+        }
+        Node currNode = bestNode;
+        if (bestIsSubtree) {
+            // the leftmost node holding the subtree's minimum
+            while (true) {
+                Node l = currNode.left;
+                if (l.minCost == bestNode.minCost && l.minDuration == bestNode.minDuration) {
+                    currNode = l;
+                } else if (currNode.tripCost == bestNode.minCost && currNode.tripDuration == bestNode.minDuration) {
+                    break;
+                } else {
+                    currNode = currNode.right;
+                }
+            }
+        }
+        return currNode;
+    }
+
+    // State of minCostInRange(): the best candidate so far, a node or a whole subtree.
+    private Node bestNode;
+    private boolean bestIsSubtree;
+
+    // Helps offer the rides of the subtree 'x' that are numbered low..high to minCostInRange(). 'aboveLow' and
+    // 'belowHigh' tell whether every ride of the subtree is known to be >= low, or <= high.
+    private void offerMin(Node x, int low, int high, boolean aboveLow, boolean belowHigh) {
+        while (x != TNULL) {
+            if (aboveLow && belowHigh) {
+                offerMin(x.minCost, x.minDuration, x, true);
+                return;
+            }
+            if (x.rideNumber < low) {
+                x = x.right;
+            } else if (x.rideNumber > high) {
+                x = x.left;
+            } else {
+                offerMin(x.left, low, high, aboveLow, true);
+                offerMin(x.tripCost, x.tripDuration, x, false);
+                x = x.right;
+                aboveLow = true;
+            }
+        }
+    }
+
+    // Candidates come in ride number order, so only a strictly lower pair replaces the best one.
+    private void offerMin(int cost, int duration, Node owner, boolean subtree) {
+        Node best = bestNode;
+        int bestCost = bestIsSubtree ? best.minCost : best.tripCost;
+        int bestDuration = bestIsSubtree ? best.minDuration : best.tripDuration;
+        if (best == TNULL || cost < bestCost || (cost == bestCost && duration < bestDuration)) {
+            bestNode = owner;
+            bestIsSubtree = subtree;
+        }
+    }
+
+    // Number of rides numbered at most 'rideNumber'.
+    public int rank(int rideNumber) {
+        return countRidesBelow(rideNumber, true);
+    }
+
+    // Returns the k-th smallest ride number (1-based), or TNULL if there are fewer than k rides.
+    public Node select(int k) {
+        Node currNode = root;
+        while (currNode != TNULL) {
+            int leftSize = currNode.left.size;
+            if (k <= leftSize) {
+                currNode = currNode.left;
+            } else if (k == leftSize + 1) {
+                return currNode;
+            } else {
+                k -= leftSize + 1;
+                currNode = currNode.right;
+            }
+        }
+        return TNULL;
+    }
+
+    // Helps count the rides numbered below 'key', or up to and including it when 'inclusive' is TRUE.
+    private int countRidesBelow(int key, boolean inclusive) {
+        int count = 0;
+        Node currNode = root;
+        while (currNode != TNULL) {
+            if (currNode.rideNumber < key || (inclusive && currNode.rideNumber == key)) {
+                count += currNode.left.size + 1;    // this node and its whole left subtree are below
+                currNode = currNode.right;
+            } else {
+                currNode = currNode.left;
+            }
+        }
+        return count;
+    }
+
+    // Helps sum the tripCost of the rides numbered below 'key', or up to and including it when 'inclusive' is TRUE.
+    private long sumCostBelow(int key, boolean inclusive) {
+        long sum = 0;
+        Node currNode = root;
+        while (currNode != TNULL) {
+            if (currNode.rideNumber < key || (inclusive && currNode.rideNumber == key)) {
+                sum += currNode.left.sumCost + currNode.tripCost;
+                currNode = currNode.right;
+            } else {
+                currNode = currNode.left;
+            }
+        }
+        return sum;
+    }
+
+}
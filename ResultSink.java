@@ -0,0 +1,25 @@
+import java.io.IOException;
+
+/*
+    Where replay() writes the results of the commands, in command order: the OutputSink itself, or the
+    format stage of a Pipeline. A range of rides is written as beginRange(), accept() per ride, endRange().
+*/
+interface ResultSink extends RideConsumer {
+    // Writes a whole line such as "Duplicate Ride Number".
+    void writeLine(byte[] line) throws IOException;
+
+    // Writes a single ride as "(rideNumber,tripCost,tripDuration)" on its own line.
+    void writeRideLine(int rideNumber, int tripCost, int tripDuration) throws IOException;
+
+    // Writes a single number on its own line.
+    void writeNumberLine(long value) throws IOException;
+
+    // Starts a comma separated line of rides, filled through accept().
+    void beginRange();
+
+    // Ends the current range line, writing "(0,0,0)" if no ride was found.
+    void endRange() throws IOException;
+
+    // Ends the current range line, writing 'whenEmpty' instead if no ride was found.
+    void endRange(byte[] whenEmpty) throws IOException;
+}
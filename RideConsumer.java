@@ -0,0 +1,4 @@
+// Receives rides one at a time, e.g. while the tree is traversed, so results can be streamed without building a list.
+interface RideConsumer {
+    void accept(int rideNumber, int tripCost, int tripDuration);
+}
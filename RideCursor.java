@@ -0,0 +1,17 @@
+/*
+    Lazy in-order walk over the rides in a ride number range, see DispatchEngine.seek(). The first call to
+    next() moves onto the first ride; the accessors then describe the current ride. A caller may stop at any
+    point, e.g. after the first 50 rides, and nothing past that point is visited.
+
+    Engines hand out one reusable cursor, so a cursor is only valid until the next seek() or change to the rides.
+*/
+interface RideCursor {
+    // Moves to the next ride in the range. Returns FALSE once the range is exhausted.
+    boolean next();
+
+    int rideNumber();
+
+    int tripCost();
+
+    int tripDuration();
+}
@@ -0,0 +1,66 @@
+/*
+    The order in which a RideQueue hands out rides, picked at startup with --policy=<name>, see create(). A policy
+    turns a ride into one long key, smallest first, and the queues keep that key next to the node: the binary
+    and 4-ary heaps in a long array parallel to their node array, so a sift compares two primitives that sit
+    side by side and only reads the HeapNodes when two keys are equal. Equal keys go to the smaller ride number,
+    which keeps the order total.
+
+    A key is computed when the ride is queued and again when UpdateTrip changes it in place, see rekey().
+*/
+interface RidePolicy {
+    // The key of 'ride', which is the 'sequence'-th ride queued, counting from 0.
+    long key(HeapNode ride, long sequence);
+
+    // The key of 'ride' after its cost or duration changed, 'key' being the one it had. Policies that read
+    // 'sequence' override this, the others compute the key afresh.
+    default long rekey(long key, HeapNode ride) {
+        return key(ride, 0);
+    }
+
+    // Whether the ride keyed 'keyA' comes before the one keyed 'keyB'.
+    static boolean before(long keyA, HeapNode a, long keyB, HeapNode b) {
+        return keyA < keyB || (keyA == keyB && a.rideNumber < b.rideNumber);
+    }
+
+    // The key of the "cost" policy: cost in the high half, duration in the low half with its sign bit flipped
+    // so that it compares unsigned, so comparing two keys compares (cost, duration).
+    static long costKey(int tripCost, int tripDuration) {
+        return ((long) tripCost << 32) | ((tripDuration ^ 0x80000000) & 0xFFFFFFFFL);
+    }
+
+    // Names accepted by create().
+    String[] KINDS = { "cost", "cost-per-minute", "wait" };
+
+    // Creates the policy registered under 'kind', or returns NULL if there is none.
+    //   cost             lowest tripCost, then lowest tripDuration: the order of the original Heap
+    //   cost-per-minute  lowest tripCost / tripDuration, durations below 1 minute counting as 1
+    //   wait             first queued, first dispatched; UpdateTrip keeps the ride's place
+    static RidePolicy create(String kind) {
+        switch (kind) {
+            case "cost":
+                return (ride, sequence) -> costKey(ride.tripCost, ride.tripDuration);
+            case "cost-per-minute":
+                return (ride, sequence) -> sortable((double) ride.tripCost / Math.max(1, ride.tripDuration));
+            case "wait":
+                return new RidePolicy() {
+                    @Override
+                    public long key(HeapNode ride, long sequence) {
+                        return sequence;
+                    }
+
+                    @Override
+                    public long rekey(long key, HeapNode ride) {
+                        return key;
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    // Helps map a double to a long that compares the same way: negative values get their magnitude bits flipped.
+    private static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+    The priority queue of the object engine: HeapNodes ordered by the key a RidePolicy gives them, by default
+    (tripCost, tripDuration), with the ride number breaking ties. Every node is its own handle, so a ride found through the RedBlackTree can be removed or
+    re-ordered without searching the queue. Queues are picked at startup with --queue=<name>, see create().
+*/
+interface RideQueue {
+    // Creates the node a ride is queued with. Queues that link their nodes together extend HeapNode with the links.
+    default HeapNode newNode(int rideNumber, int tripCost, int tripDuration) {
+        return new HeapNode(rideNumber, tripCost, tripDuration);
+    }
+
+    // Adds a node made by newNode().
+    void insert(HeapNode element);
+
+    // Replaces the queue, which must be empty, by 'nodes', made by newNode() for the rides of 'batch' in the
+    // same order. The batch is sorted, its positions give the order the rides were queued in.
+    void buildFrom(HeapNode[] nodes, InsertBatch batch);
+
+    // The lowest node, or NULL if the queue is empty.
+    HeapNode getRoot();
+
+    // Removes and returns the lowest node, or NULL if the queue is empty.
+    HeapNode removeMin();
+
+    // Removes the 'k' lowest nodes, or every node if there are fewer, into 'out' lowest first, and returns how
+    // many. The same nodes in the same order as that many removeMin() calls, which is what this default does;
+    // the implicit heaps find them all first and repair themselves once, see HeapFrontier.
+    default int removeSmallest(int k, HeapNode[] out) {
+        int count = 0;
+        HeapNode node;
+        while (count < k && (node = removeMin()) != null) {
+            out[count++] = node;
+        }
+        return count;
+    }
+
+    // Removes 'node', which must be in the queue.
+    void deleteRandomNode(HeapNode node);
+
+    // Restores the order after the tripCost or tripDuration of 'node' went up or down in place.
+    void fixUpdate(HeapNode node);
+
+    // Number of nodes.
+    int size();
+
+    // Prints the structure, used by --diagnostics=trace.
+    void print();
+
+    // Prints every node with the cost and duration its RedBlackTree node holds, used by --diagnostics=trace.
+    void printConnection();
+
+    // Names accepted by create().
+    String[] KINDS = { "binary", "quad", "pairing" };
+
+    // Creates the queue registered under 'kind', handing out rides in the order of 'policy', or returns NULL
+    // if there is none.
+    static RideQueue create(String kind, RidePolicy policy) {
+        switch (kind) {
+            case "binary":
+                return new Heap(2000, policy);
+            case "quad":
+                return new QuadHeap(2000, policy);
+            case "pairing":
+                return new PairingHeap(policy);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+    Immutable ride set keyed by ride number: a treap (a search tree kept balanced by random node priorities)
+    whose updates copy the O(log n) nodes on the path they change and share everything else with the
+    previous version. Every version is a consistent snapshot that any number of threads can read without
+    locks while the writer builds the next one; all fields are final, so a reader never sees a half
+    written ride, in particular never a tripCost from one update with the tripDuration of another.
+*/
+final class RideSnapshot {
+    static final RideSnapshot EMPTY = new RideSnapshot(null);
+
+    private final TreeNode root;
+
+    private RideSnapshot(TreeNode root) {
+        this.root = root;
+    }
+
+    private static final class TreeNode {
+        final int rideNumber;
+        final int tripCost;
+        final int tripDuration;
+        final int priority;     // max-heap order: a parent's priority is at least its children's
+        final TreeNode left;
+        final TreeNode right;
+        final int size;         // rides in this subtree
+        final long sumCost;     // tripCost summed over this subtree
+
+        TreeNode(int rideNumber, int tripCost, int tripDuration, int priority, TreeNode left, TreeNode right) {
+            this.rideNumber = rideNumber;
+            this.tripCost = tripCost;
+            this.tripDuration = tripDuration;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+            this.sumCost = tripCost + sumCost(left) + sumCost(right);
+        }
+
+        // Copy of this node with other children.
+        TreeNode with(TreeNode newLeft, TreeNode newRight) {
+            return new TreeNode(rideNumber, tripCost, tripDuration, priority, newLeft, newRight);
+        }
+    }
+
+    private static int size(TreeNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static long sumCost(TreeNode node) {
+        return node == null ? 0 : node.sumCost;
+    }
+
+    // ----------------------------------- READS -----------------------------------
+
+    int size() {
+        return size(root);
+    }
+
+    // Hands the ride to 'out'. Returns FALSE if there is no such ride.
+    boolean find(int rideNumber, RideConsumer out) {
+        TreeNode node = root;
+        while (node != null) {
+            if (rideNumber == node.rideNumber) {
+                out.accept(node.rideNumber, node.tripCost, node.tripDuration);
+                return true;
+            }
+            node = rideNumber < node.rideNumber ? node.left : node.right;
+        }
+        return false;
+    }
+
+    // Hands every ride numbered low..high to 'out', in ride number order.
+    void forEachInRange(int low, int high, RideConsumer out) {
+        forEachInRange(root, low, high, out);
+    }
+
+    private static void forEachInRange(TreeNode node, int low, int high, RideConsumer out) {
+        while (node != null) {
+            if (node.rideNumber < low) {
+                node = node.right;
+            } else if (node.rideNumber > high) {
+                node = node.left;
+            } else {
+                forEachInRange(node.left, low, high, out);
+                out.accept(node.rideNumber, node.tripCost, node.tripDuration);
+                node = node.right;  // the right side continues in this loop, only left subtrees recurse
+            }
+        }
+    }
+
+    // Number of rides numbered low..high.
+    int count(int low, int high) {
+        return low > high ? 0 : countBelow(high, true) - countBelow(low, false);
+    }
+
+    // Total tripCost of the rides numbered low..high.
+    long sumCost(int low, int high) {
+        return low > high ? 0 : sumCostBelow(high, true) - sumCostBelow(low, false);
+    }
+
+    private int countBelow(int key, boolean inclusive) {
+        int count = 0;
+        for (TreeNode node = root; node != null; ) {
+            if (node.rideNumber < key || (inclusive && node.rideNumber == key)) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private long sumCostBelow(int key, boolean inclusive) {
+        long sum = 0;
+        for (TreeNode node = root; node != null; ) {
+            if (node.rideNumber < key || (inclusive && node.rideNumber == key)) {
+                sum += sumCost(node.left) + node.tripCost;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return sum;
+    }
+
+    // ----------------------------------- NEW VERSIONS -----------------------------------
+
+    // Version with the ride added, or with its cost and duration replaced if the ride is already there.
+    // 'priority' should be random; it decides the shape of the tree.
+    RideSnapshot put(int rideNumber, int tripCost, int tripDuration, int priority) {
+        return new RideSnapshot(put(root, rideNumber, tripCost, tripDuration, priority));
+    }
+
+    private static TreeNode put(TreeNode node, int rideNumber, int tripCost, int tripDuration, int priority) {
+        if (node == null) {
+            return new TreeNode(rideNumber, tripCost, tripDuration, priority, null, null);
+        }
+        if (rideNumber == node.rideNumber) {
+            return new TreeNode(rideNumber, tripCost, tripDuration, node.priority, node.left, node.right);
+        }
+        if (rideNumber < node.rideNumber) {
+            TreeNode left = put(node.left, rideNumber, tripCost, tripDuration, priority);
+            if (left.priority > node.priority) {    // rotate right
+                return left.with(left.left, node.with(left.right, node.right));
+            }
+            return node.with(left, node.right);
+        }
+        TreeNode right = put(node.right, rideNumber, tripCost, tripDuration, priority);
+        if (right.priority > node.priority) {       // rotate left
+            return right.with(node.with(node.left, right.left), right.right);
+        }
+        return node.with(node.left, right);
+    }
+
+    // Version without the ride. Returns this version if there is no such ride.
+    RideSnapshot remove(int rideNumber) {
+        TreeNode newRoot = remove(root, rideNumber);
+        return newRoot == root ? this : new RideSnapshot(newRoot);
+    }
+
+    private static TreeNode remove(TreeNode node, int rideNumber) {
+        if (node == null) {
+            return null;
+        }
+        if (rideNumber == node.rideNumber) {
+            return merge(node.left, node.right);
+        }
+        if (rideNumber < node.rideNumber) {
+            TreeNode left = remove(node.left, rideNumber);
+            return left == node.left ? node : node.with(left, node.right);
+        }
+        TreeNode right = remove(node.right, rideNumber);
+        return right == node.right ? node : node.with(node.left, right);
+    }
+
+    // Joins two treaps where every ride of 'a' is below every ride of 'b'.
+    private static TreeNode merge(TreeNode a, TreeNode b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return a.with(a.left, merge(a.right, b));
+        }
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    // Snapshot of rides given in increasing ride number order, built in O(n) as a balanced tree. The
+    // priorities fall with depth, so the heap order holds and later random priorities settle in between.
+    static RideSnapshot ofSorted(InsertBatch rides) {
+        return new RideSnapshot(build(rides, 0, rides.size() - 1, Integer.MAX_VALUE));
+    }
+
+    private static TreeNode build(InsertBatch rides, int low, int high, int priority) {
+        if (low > high) {
+            return null;
+        }
+        int mid = (low + high) >>> 1;
+        TreeNode left = build(rides, low, mid - 1, priority - 1);
+        TreeNode right = build(rides, mid + 1, high, priority - 1);
+        return new TreeNode(rides.ride(mid), rides.cost(mid), rides.duration(mid), priority, left, right);
+    }
+}
@@ -0,0 +1,547 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+    Resident server mode, selected with --serve=<port> (TCP on the loopback interface) or --serve=unix:<path>
+    (a Unix domain socket). Clients send the commands of the input file, one per line, and may send many
+    before reading any answer. Every command is answered, in order, by the lines it would have written to
+    output_file.txt followed by one empty line, so a client matches answers to commands by counting empty
+    lines. A malformed line is answered by "Malformed command" and an empty line; blank lines get no answer.
+
+    One thread runs a Selector loop and is the only one that touches the engine. Whatever complete lines a
+    read brought in are parsed by the connection's own CommandParser and run with gatorTaxi.execute() right
+    away, and their answers are queued for the socket, so the commands of all clients are applied one after
+    another in the order they were read. The engine is synced before the answers of a read are queued, so an
+    answered change survives a crash. A client that stops reading its answers is not read from until they
+    drained below OUTPUT_HIGH_WATER. A single read whose answers outgrow MAX_OUTPUT, e.g. Print(lo,hi) over
+    millions of rides, closes that client's connection instead of growing its buffer further, once the
+    commands read before the long answer were synced; the other clients are served on. A command or a sync
+    that fails with an exception stops the server instead: the engine may be half way through a change, so
+    run() closes every connection without sending what was not synced yet and rethrows.
+
+    With --snapshot-reads=<n> the engine is wrapped in a SnapshotReadEngine and Print, Count and SumCost are
+    not run on that thread: it takes the version of the rides published by then and hands the command to one
+    of <n> reader threads, and goes on with the next command. So a read sees every change read before it, on
+    any connection, and none read after it, and long Print ranges no longer hold up the writes. The answers of
+    a connection still go out in command order: whatever follows a read waits in 'answers' until the read is
+    answered, and a connection with MAX_PENDING_ANSWERS of those is not read from. Answers of the readers are
+    also held back until the engine was synced. Reads answered by readers are not timed by --metrics.
+*/
+class Server {
+    private static final int READ_BUFFER_SIZE = 1 << 16;    // also the longest line accepted
+    private static final int SINK_BUFFER_SIZE = 1 << 13;
+    private static final int OUTPUT_HIGH_WATER = 1 << 20;
+    private static final int MAX_OUTPUT = 1 << 26;     // queued answers of one connection
+    private static final int MAX_PENDING_ANSWERS = 1 << 10;    // answers of one connection waiting for reader threads
+    private static final byte[] END_OF_ANSWER = new byte[0];
+    private static final byte[] MALFORMED = "Malformed command".getBytes();
+
+    private final DispatchEngine engine;
+    private final Command cmd = new Command();  // reused for every command of every connection
+    private long commandCount;
+    private Selector selector;
+    private ServerSocketChannel listener;
+    private Path socketFile;    // for a Unix domain socket, deleted when the server stops
+    private volatile boolean running = true;
+    private final SnapshotReadEngine snapshots;     // NULL without reader threads
+    private final Reader[] readers;
+    private final LinkedBlockingQueue<Answer> reads = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<Connection> answered = new ConcurrentLinkedQueue<>();  // filled by the readers
+    private volatile Throwable readerFailure;
+    private int maxOutput = MAX_OUTPUT;
+    private boolean failed;     // run() is failing, answers that were not synced must not go out
+
+    // 'commandCount' commands were already run, e.g. by the replay of an input file; the expiry clock goes on from there.
+    Server(DispatchEngine engine, long commandCount) {
+        this(engine, commandCount, null, 0);
+    }
+
+    // Answers Print, Count and SumCost on 'readerCount' threads from the versions of 'snapshots', which must be
+    // 'engine' or wrapped by it.
+    Server(DispatchEngine engine, long commandCount, SnapshotReadEngine snapshots, int readerCount) {
+        this.engine = engine;
+        this.commandCount = commandCount;
+        this.snapshots = readerCount > 0 ? snapshots : null;
+        this.readers = new Reader[this.snapshots == null ? 0 : readerCount];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Reader(i);
+        }
+    }
+
+    // Lowers the answers a connection may queue, so ServerOverflowCheck can reach it with a few commands.
+    void setMaxOutput(int bytes) {
+        maxOutput = Math.min(bytes, MAX_OUTPUT);
+    }
+
+    // Whether 'address' is a valid --serve address: a port number, or "unix:" followed by a path.
+    static boolean isAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return address.length() > "unix:".length();
+        }
+        try {
+            int port = Integer.parseInt(address);
+            return port >= 0 && port <= 65535;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Opens the listening socket. Port 0 picks a free port, see address().
+    void bind(String address) throws IOException {
+        selector = Selector.open();
+        if (address.startsWith("unix:")) {
+            socketFile = Path.of(address.substring("unix:".length()));
+            Files.deleteIfExists(socketFile);   // left behind by a server that was killed
+            listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            listener.bind(UnixDomainSocketAddress.of(socketFile));
+        } else {
+            listener = ServerSocketChannel.open();
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+        }
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    // The address clients connect to, in --serve form.
+    String address() throws IOException {
+        if (socketFile != null) {
+            return "unix:" + socketFile;
+        }
+        return Integer.toString(((InetSocketAddress) listener.getLocalAddress()).getPort());
+    }
+
+    // Serves clients until stop() is called, then flushes what it can to them and closes every socket.
+    // Returns the number of commands run, counting those before the server started. An exception of the
+    // engine ends it too, and is rethrown once the sockets are closed.
+    long run() throws IOException {
+        for (Reader reader : readers) {
+            reader.start();
+        }
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = answered.poll()) != null) {
+                    connection.answered();
+                }
+                if (readerFailure != null) {
+                    throw new IllegalStateException("a snapshot reader failed", readerFailure);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).ready(key);
+                    }
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            failed = true;
+            throw e;
+        } finally {
+            stopReaders();  // every read handed out is answered first
+            List<SelectionKey> open = new ArrayList<>(selector.keys());
+            for (SelectionKey key : open) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).closeQuietly(key);
+                }
+            }
+            listener.close();
+            selector.close();
+            if (socketFile != null) {
+                Files.deleteIfExists(socketFile);
+            }
+        }
+        return commandCount;
+    }
+
+    // Makes run() return. Safe to call from any thread, e.g. a shutdown hook.
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = listener.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private void stopReaders() {
+        for (int i = 0; i < readers.length; i++) {
+            reads.add(Answer.STOP);
+        }
+        try {
+            for (Reader reader : readers) {
+                reader.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Helps append 'src' to 'buffer', which is in write mode, in a bigger buffer if it does not fit.
+    // The caller keeps the total within MAX_OUTPUT.
+    private static ByteBuffer append(ByteBuffer buffer, ByteBuffer src) {
+        if (buffer.remaining() < src.remaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_OUTPUT, Math.max(buffer.capacity() * 2, buffer.position() + src.remaining())));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        buffer.put(src);
+        return buffer;
+    }
+
+    /*
+        An answer of a connection that cannot go to 'out' yet, because a read before it, or the answer itself,
+        waits for a reader thread. A read is answered by a reader, which fills 'bytes' and then sets 'done';
+        answers written by the Server's thread behind it collect in an answer that is done from the start.
+    */
+    private static final class Answer {
+        static final Answer STOP = new Answer(null, null, null);    // makes a reader return
+
+        final Connection connection;
+        final RideSnapshot snapshot;    // NULL if the Server's thread writes the answer
+        final int type, argCount, arg0, arg1;
+        ByteBuffer bytes;               // in write mode
+        boolean overflowed;             // longer than maxOutput, cut off
+        volatile boolean done;
+
+        Answer(Connection connection, RideSnapshot snapshot, Command cmd) {
+            this.connection = connection;
+            this.snapshot = snapshot;
+            this.type = cmd == null ? 0 : cmd.type;
+            this.argCount = cmd == null ? 0 : cmd.argCount;
+            this.arg0 = cmd == null ? 0 : cmd.arg(0);
+            this.arg1 = cmd == null || cmd.argCount < 2 ? 0 : cmd.arg(1);
+            if (snapshot == null) {
+                bytes = ByteBuffer.allocate(SINK_BUFFER_SIZE);
+                done = true;
+            }
+        }
+    }
+
+    // One reader thread: answers the reads handed to it, each into a buffer of its own, and hands them back.
+    private final class Reader extends Thread implements WritableByteChannel {
+        private ByteBuffer buffer = ByteBuffer.allocate(SINK_BUFFER_SIZE);    // kept in write mode
+        private final OutputSink sink = new OutputSink(this, SINK_BUFFER_SIZE);
+        private boolean overflowed;
+
+        Reader(int index) {
+            super("snapshot-reader-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Answer read;
+                while ((read = reads.take()) != Answer.STOP) {
+                    buffer.clear();
+                    overflowed = false;
+                    SnapshotReadEngine.execute(read.type, read.argCount, read.arg0, read.arg1, read.snapshot, sink);
+                    sink.writeLine(END_OF_ANSWER);
+                    sink.flush();
+                    buffer.flip();
+                    read.bytes = ByteBuffer.allocate(buffer.remaining()).put(buffer);
+                    read.overflowed = overflowed;
+                    read.done = true;
+                    if (buffer.capacity() > OUTPUT_HIGH_WATER) {
+                        buffer = ByteBuffer.allocate(SINK_BUFFER_SIZE);     // do not keep what one long range needed
+                    }
+                    answered.add(read.connection);
+                    selector.wakeup();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (IOException | RuntimeException | Error e) {
+                readerFailure = e;
+                selector.wakeup();
+            }
+        }
+
+        // The sink's view of the answer being written, cut off past maxOutput like the answers of a connection.
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            if (overflowed || buffer.position() + count > maxOutput) {
+                overflowed = true;
+                src.position(src.limit());
+                return count;
+            }
+            buffer = append(buffer, src);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // the buffer is reused for the next read
+        }
+    }
+
+    /*
+        One client. Bytes read from the socket collect in 'in' until a line is complete; the complete lines
+        are handed to the CommandParser through 'lines', a channel that reports end of input once they were
+        all read, so the parser never waits for the rest of a line. Answers are formatted by an OutputSink
+        whose channel appends to 'out', which is written to the socket whenever it takes more, or to 'answers'
+        while a read waits for a reader thread.
+    */
+    private final class Connection implements ReadableByteChannel, WritableByteChannel {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);   // kept in write mode
+        private ByteBuffer lines;                                               // complete lines of 'in'
+        private ByteBuffer out = ByteBuffer.allocate(SINK_BUFFER_SIZE);        // kept in write mode
+        private final CommandParser parser = new CommandParser(this);
+        private final OutputSink sink = new OutputSink(this, SINK_BUFFER_SIZE);
+        private final RideConsumer rideLines = gatorTaxi.rideLines(sink);
+        private boolean closing;    // the client shut down its side, close once 'out' is written
+        private boolean overflowed; // answers went past maxOutput and were dropped, the connection is closed
+        private final ArrayDeque<Answer> answers = new ArrayDeque<>();  // queued behind 'out', oldest first
+        private int held;           // bytes of the answers of this thread in 'answers'
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        // Helps serve a selected key: read and run commands, or write queued answers.
+        void ready(SelectionKey key) {
+            try {
+                if (key.isReadable()) {
+                    if (channel.read(in) < 0) {
+                        closing = true;
+                        if (in.position() > 0 && in.get(in.position() - 1) != '\n' && in.hasRemaining()) {
+                            in.put((byte) '\n');    // the last line needs no line break
+                        }
+                    } else if (!in.hasRemaining() && lastLineEnd() == 0) {
+                        throw new IOException("line longer than " + READ_BUFFER_SIZE + " bytes");
+                    }
+                    runCompleteLines();
+                }
+                settle(key);
+            } catch (IOException e) {
+                closeQuietly(key);  // the client is gone or asked too much, the engine is fine
+            }
+        }
+
+        // Helps go on after reader threads answered some of this connection's reads.
+        void answered() {
+            if (!key.isValid()) {
+                return;     // closed while they were answered
+            }
+            try {
+                settle(key);
+            } catch (IOException e) {
+                closeQuietly(key);
+            }
+        }
+
+        // Helps queue the answers that are ready, write what the socket takes, and pick what to wait for next.
+        private void settle(SelectionKey key) throws IOException {
+            takeAnswers();
+            if (overflowed) {
+                throw new IOException("answers longer than " + maxOutput + " bytes");
+            }
+            writeOut();
+            if (closing && out.position() == 0 && answers.isEmpty()) {
+                closeQuietly(key);
+            } else {
+                boolean backlog = out.position() > 0;
+                int ops = backlog ? SelectionKey.OP_WRITE : 0;
+                if (!closing && out.position() < OUTPUT_HIGH_WATER && answers.size() < MAX_PENDING_ANSWERS) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                key.interestOps(ops);
+            }
+        }
+
+        // Helps move the answers at the front of 'answers' that are done to 'out'. Only called between two
+        // runCompleteLines(), so the engine was synced for every one of them.
+        private void takeAnswers() {
+            while (!answers.isEmpty() && answers.peekFirst().done) {
+                Answer answer = answers.pollFirst();
+                if (answer.snapshot == null) {
+                    held -= answer.bytes.position();
+                }
+                if (answer.overflowed || out.position() + answer.bytes.position() > maxOutput) {
+                    overflowed = true;
+                    answers.clear();
+                    return;
+                }
+                answer.bytes.flip();
+                out = append(out, answer.bytes);
+            }
+        }
+
+        // Helps run every command whose line is complete, answering each one.
+        private void runCompleteLines() throws IOException {
+            int end = lastLineEnd();
+            if (end == 0) {
+                return;
+            }
+            in.flip();
+            lines = in.duplicate();
+            lines.limit(end);
+            while (true) {
+                int malformedBefore = parser.getMalformedLines();
+                boolean found = parser.next(cmd);
+                for (int i = malformedBefore; i < parser.getMalformedLines(); i++) {
+                    sink.writeLine(MALFORMED);
+                    sink.writeLine(END_OF_ANSWER);
+                }
+                if (!found) {
+                    break;
+                }
+                commandCount++;
+                long started = Metrics.enabled ? System.nanoTime() : 0;
+                engine.advanceClock(commandCount);
+                if (snapshots != null && SnapshotReadEngine.readsOnly(cmd)) {
+                    sink.flush();   // the answers before it go first
+                    Answer read = new Answer(this, snapshots.snapshot(), cmd);
+                    answers.add(read);
+                    reads.add(read);
+                    continue;
+                }
+                gatorTaxi.execute(cmd, engine, sink, rideLines);
+                sink.writeLine(END_OF_ANSWER);
+                if (Metrics.enabled) {
+                    Metrics.commandDone(Metrics.kindOf(cmd), started, commandCount, engine);
+                }
+                if (overflowed) {
+                    break;  // only checked between commands, so the engine never sees a command cut short
+                }
+            }
+            in.position(end);
+            in.compact();
+            engine.sync();  // with --state-dir, answers only go out once the changes behind them are on disk
+            if (overflowed) {
+                // the commands run so far stay applied and synced, the lines after them are dropped with the connection
+                throw new IOException("answers longer than " + maxOutput + " bytes");
+            }
+            sink.flush();
+        }
+
+        // Helps find where the last complete line of 'in' ends, 0 if there is none.
+        private int lastLineEnd() {
+            for (int i = in.position() - 1; i >= 0; i--) {
+                if (in.get(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+
+        private void writeOut() throws IOException {
+            if (out.position() == 0) {
+                return;
+            }
+            out.flip();
+            channel.write(out);
+            out.compact();
+        }
+
+        // The parser's view of the complete lines: they are read once, then it is the end of the input.
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!lines.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(dst.remaining(), lines.remaining());
+            ByteBuffer chunk = lines.duplicate();
+            chunk.limit(lines.position() + count);
+            dst.put(chunk);
+            lines.position(lines.position() + count);
+            return count;
+        }
+
+        // The sink's view of the queued answers: everything written is appended to 'out', or behind the reads
+        // in 'answers', up to maxOutput, past which the rest is dropped and runCompleteLines() closes the connection.
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            if (overflowed || out.position() + held + count > maxOutput) {
+                overflowed = true;
+                src.position(src.limit());
+                return count;
+            }
+            if (answers.isEmpty()) {
+                out = append(out, src);
+                return count;
+            }
+            Answer last = answers.peekLast();
+            if (last.snapshot != null) {
+                last = new Answer(this, null, null);
+                answers.add(last);
+            }
+            last.bytes = append(last.bytes, src);
+            held += count;
+            return count;
+        }
+
+        // Helps send what is still queued, as far as the socket takes it without waiting, and close it. Sends
+        // nothing if run() is failing, since the answers may be of changes that were not synced.
+        void closeQuietly(SelectionKey key) {
+            try {
+                if (!overflowed && !failed) {  // a cut off answer would only mislead the client
+                    sink.flush();
+                    takeAnswers();
+                    writeOut();
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // the client is gone, there is no one left to answer
+            }
+            answers.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing more to release
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // the socket is closed by closeQuietly()
+        }
+    }
+}
@@ -0,0 +1,549 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Engine that splits the ride numbers into blocks of BLOCK_SIZE and deals the blocks out to N shards,
+    each an engine of its own with its own tree and heap, owned by its own worker thread: only the worker
+    touches its shard's engine, from the first insert to close(). The caller queues every operation to the
+    workers as a record of 4 ints and reads the answers they leave in the Shard once they applied it:
+        UpdateTrip, CancelRide     queued to the one shard owning the ride; the caller moves on
+        Insert, Print(ride)        queued to the one shard owning the ride, which the caller waits for
+        Print(lo,hi)               queued to every shard owning a block of lo..hi; each worker scans up to
+                                   RANGE_CHUNK rides of its part into its Shard, all at once, and the caller
+                                   merges them in ride number order by a Tournament, asking a shard for its
+                                   next chunk once it used up the last one
+        GetNextRide                queued to the shard whose next ride wins a Tournament of the shards' next
+                                   rides; every worker publishes its next ride after each change
+        Count, SumCost, Rank,      queued to every shard at once and combined
+        MinCost
+        Select(k)                  binary search for the ride number whose summed rank reaches k
+        bulk load                  every shard loads its part at once
+    Results are the same as with one engine, including the ride number tie break of GetNextRide.
+
+    Only the queued operations and the fan-outs run in parallel: a text log needs the answer of an Insert or
+    a Print before its next line, so each of those costs a round trip to a worker. On a generated log of 1M
+    rides and one processor, where every round trip is a thread switch, the replay took 32.6 s with 3 shards
+    and 25.3 s with 1, against 9.5 s for the array engine the shards run (15.4 s and 13.5 s when Insert and
+    Print still ran on the caller's thread). The engine needs a free core per worker to pay off.
+
+    A worker with nothing queued parks in its IntRing, so idle shards cost no CPU. close() stops the workers
+    and waits for them to finish.
+*/
+class ShardedDispatchEngine implements DispatchEngine {
+    private static final int BLOCK_SHIFT = 6;   // blocks of 64 ride numbers
+    private static final int QUEUE_SIZE = 1 << 14;
+    private static final int RANGE_CHUNK = 1024;    // rides a worker scans for one Print(lo,hi) request
+
+    // Queued operations, each a record of the op and 3 arguments.
+    private static final int UPDATE_TRIP = 1;   // ride, duration
+    private static final int CANCEL_RIDE = 2;   // ride
+    private static final int BULK_LOAD = 3;     // loads the shard's 'batch'
+    private static final int INSERT = 4;        // ride, cost, duration; answers 'found' FALSE for a duplicate
+    private static final int PRINT = 5;         // ride; answers the ride
+    private static final int DISPATCH = 6;      // answers the next ride, removed
+    private static final int RANGE = 7;         // low, high; answers up to RANGE_CHUNK rides from low on
+    private static final int COUNT = 8;         // low, high; answers 'number'
+    private static final int SUM_COST = 9;      // low, high; answers 'number'
+    private static final int RANK = 10;         // ride; answers 'number'
+    private static final int MIN_COST = 11;     // low, high; answers the ride
+    private static final int DEBUG = 12;        // prints the shard's structures
+
+    private final Shard[] shards;
+    private final Tournament nextRides;     // leaves are shards, keyed by their next ride
+    private final MergeCursor cursor;
+
+    ShardedDispatchEngine(String shardKind, int shardCount) {
+        shards = new Shard[shardCount];
+        Options shardOptions = new Options();
+        shardOptions.engine = shardKind;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(DispatchEngine.create(shardOptions), i);
+        }
+        nextRides = new Tournament(shardCount) {
+            @Override
+            protected boolean before(int a, int b) {
+                return shards[a].before(shards[b]);
+            }
+        };
+        nextRides.rebuild();
+        cursor = new MergeCursor();
+    }
+
+    private Shard shardOf(int rideNumber) {
+        return shards[Math.floorMod(rideNumber >> BLOCK_SHIFT, shards.length)];
+    }
+
+    // Waits until every shard has applied its queue, and refreshes the shards' next rides.
+    private void syncAll() {
+        for (Shard shard : shards) {
+            shard.queue.flush();
+        }
+        for (Shard shard : shards) {
+            shard.sync();
+        }
+    }
+
+    // Queues the same operation to every shard, and waits until all of them answered.
+    private void callAll(int op, int a, int b) {
+        for (Shard shard : shards) {
+            shard.send(op, a, b, 0);
+            shard.queue.flush();
+        }
+        for (Shard shard : shards) {
+            shard.sync();
+        }
+    }
+
+    // ----------------------------------- DISPATCH OPERATIONS -----------------------------------
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        Shard shard = shardOf(rideNumber);
+        shard.call(INSERT, rideNumber, tripCost, tripDuration);
+        return shard.found;
+    }
+
+    @Override
+    public void bulkLoad(InsertBatch batch) {
+        syncAll();
+        for (Shard shard : shards) {
+            shard.batch.clear();
+        }
+        for (int i = 0; i < batch.size(); i++) {    // still sorted within every shard
+            shardOf(batch.ride(i)).batch.add(batch.ride(i), batch.cost(i), batch.duration(i));
+        }
+        callAll(BULK_LOAD, 0, 0);
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        syncAll();
+        Shard best = shards[nextRides.winner()];
+        if (!best.hasNextRide) {
+            return false;
+        }
+        best.call(DISPATCH, 0, 0, 0);
+        out.accept(best.rideNumber, best.tripCost, best.tripDuration);
+        return true;
+    }
+
+    @Override
+    public boolean peekNextRide(RideConsumer out) {
+        syncAll();
+        Shard best = shards[nextRides.winner()];
+        if (!best.hasNextRide) {
+            return false;
+        }
+        out.accept(best.nextRide, best.nextCost, best.nextDuration);
+        return true;
+    }
+
+    @Override
+    public boolean print(int rideNumber, RideConsumer out) {
+        Shard shard = shardOf(rideNumber);
+        shard.call(PRINT, rideNumber, 0, 0);
+        if (shard.found) {
+            out.accept(shard.rideNumber, shard.tripCost, shard.tripDuration);
+        }
+        return shard.found;
+    }
+
+    @Override
+    public RideCursor seek(int low, int high) {
+        cursor.seek(low, high);
+        return cursor;
+    }
+
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        shardOf(rideNumber).send(UPDATE_TRIP, rideNumber, newTripDuration, 0);
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        shardOf(rideNumber).send(CANCEL_RIDE, rideNumber, 0, 0);
+    }
+
+    @Override
+    public int size() {
+        syncAll();
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    @Override
+    public int count(int low, int high) {
+        callAll(COUNT, low, high);
+        int count = 0;
+        for (Shard shard : shards) {
+            count += (int) shard.number;
+        }
+        return count;
+    }
+
+    @Override
+    public long sumCost(int low, int high) {
+        callAll(SUM_COST, low, high);
+        long sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.number;
+        }
+        return sum;
+    }
+
+    @Override
+    public int rank(int rideNumber) {
+        callAll(RANK, rideNumber, 0);
+        int rank = 0;
+        for (Shard shard : shards) {
+            rank += (int) shard.number;
+        }
+        return rank;
+    }
+
+    @Override
+    public boolean minCost(int low, int high, RideConsumer out) {
+        callAll(MIN_COST, low, high);
+        Shard best = null;
+        for (Shard shard : shards) {
+            if (shard.found && (best == null || shard.cheaperThan(best))) {
+                best = shard;
+            }
+        }
+        if (best == null) {
+            return false;
+        }
+        out.accept(best.rideNumber, best.tripCost, best.tripDuration);
+        return true;
+    }
+
+    @Override
+    public boolean select(int k, RideConsumer out) {
+        if (k < 1 || k > size()) {     // size() syncs
+            return false;
+        }
+        // the k-th ride is the smallest ride number whose rank reaches k
+        long low = Integer.MIN_VALUE;
+        long high = Integer.MAX_VALUE;
+        while (low < high) {
+            long mid = (low + high) >> 1;
+            if (rank((int) mid) >= k) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return print((int) low, out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+        for (Shard shard : shards) {
+            shard.engine.close();
+        }
+    }
+
+    @Override
+    public void printDebugState() {
+        syncAll();
+        for (Shard shard : shards) {
+            System.out.println("\nShard " + shard.index + ":");
+            shard.call(DEBUG, 0, 0, 0);
+        }
+    }
+
+    // ----------------------------------- SHARDS -----------------------------------
+
+    /*
+        One shard: its engine, the queue its worker applies, and what the worker answers. The worker writes
+        the answer fields and then counts the operation as applied, and the caller reads them only after it
+        saw that count in sync(), so the ordered write and read of 'applied' hand them over. The next ride and
+        size the worker publishes after each change are copied to caller-side fields in sync(), because the
+        Tournament reads the fields of every shard, including shards still busy with their queues.
+    */
+    private final class Shard {
+        final DispatchEngine engine;
+        final int index;
+        final InsertBatch batch = new InsertBatch(16);  // this shard's part of a bulk load
+        final IntRing queue = new IntRing(QUEUE_SIZE, 64);
+        private final AtomicLong applied = new AtomicLong();    // operations the worker finished
+        private final Thread worker;
+        private long sent;          // operations queued so far, caller side
+        private volatile Throwable failure;     // set if the worker died
+        private boolean stale;      // queued operations may have changed the next ride
+
+        // Answers, written by the worker.
+        boolean found;
+        int rideNumber;
+        int tripCost;
+        int tripDuration;
+        long number;
+        final int[] range = new int[3 * RANGE_CHUNK];   // rides of a RANGE request, 3 ints each
+        int rangeCount;
+
+        // Next ride and size, as the worker publishes them and as the caller last copied them.
+        private boolean publishedHasNext;
+        private int publishedRide;
+        private int publishedCost;
+        private int publishedDuration;
+        private int publishedSize;
+        boolean hasNextRide;
+        int nextRide;
+        int nextCost;
+        int nextDuration;
+        int size;
+
+        Shard(DispatchEngine engine, int index) {
+            this.engine = engine;
+            this.index = index;
+            worker = new Thread(this::work, "shard-" + index);
+            worker.setDaemon(true);     // an engine that is never closed does not keep the process alive
+            worker.start();
+        }
+
+        // Queues an operation without waiting for it.
+        void send(int op, int a, int b, int c) {
+            queue.put(op);
+            queue.put(a);
+            queue.put(b);
+            queue.put(c);
+            sent++;
+            stale = true;
+        }
+
+        // Queues an operation and waits for its answer.
+        void call(int op, int a, int b, int c) {
+            send(op, a, b, c);
+            sync();
+        }
+
+        // Waits until the worker applied everything sent, then copies its next ride and size.
+        void sync() {
+            if (!stale) {
+                return;
+            }
+            queue.flush();
+            int idle = 0;
+            while (applied.get() != sent) {
+                if (failure != null) {
+                    throw new IllegalStateException("Shard " + index + " failed", failure);
+                }
+                idle = IntRing.pause(idle);
+            }
+            stale = false;
+            hasNextRide = publishedHasNext;
+            nextRide = publishedRide;
+            nextCost = publishedCost;
+            nextDuration = publishedDuration;
+            size = publishedSize;
+            nextRides.update(index);
+        }
+
+        // Lets the worker apply what is queued and end, and waits for it.
+        void stop() throws IOException {
+            queue.close();
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while stopping shard " + index, e);
+            }
+        }
+
+        // Same order as the heaps: cost, then duration, then ride number. Empty shards come last.
+        boolean before(Shard other) {
+            if (!hasNextRide || !other.hasNextRide) {
+                return hasNextRide;
+            }
+            if (nextCost != other.nextCost) {
+                return nextCost < other.nextCost;
+            }
+            if (nextDuration != other.nextDuration) {
+                return nextDuration < other.nextDuration;
+            }
+            return nextRide < other.nextRide;
+        }
+
+        // Same order, for the rides two shards answered.
+        boolean cheaperThan(Shard other) {
+            if (tripCost != other.tripCost) {
+                return tripCost < other.tripCost;
+            }
+            if (tripDuration != other.tripDuration) {
+                return tripDuration < other.tripDuration;
+            }
+            return rideNumber < other.rideNumber;
+        }
+
+        // Worker thread: applies the queue in order.
+        private void work() {
+            RideConsumer answer = (ride, cost, duration) -> {
+                rideNumber = ride;
+                tripCost = cost;
+                tripDuration = duration;
+            };
+            RideConsumer next = (ride, cost, duration) -> {
+                publishedRide = ride;
+                publishedCost = cost;
+                publishedDuration = duration;
+            };
+            long done = 0;
+            try {
+                while (queue.await()) {
+                    int op = queue.take();
+                    int a = queue.take();
+                    int b = queue.take();
+                    int c = queue.take();
+                    boolean changed = true;
+                    switch (op) {
+                        case UPDATE_TRIP:
+                            engine.updateTrip(a, b);
+                            break;
+                        case CANCEL_RIDE:
+                            engine.cancelRide(a);
+                            break;
+                        case BULK_LOAD:
+                            engine.bulkLoad(batch);
+                            break;
+                        case INSERT:
+                            found = engine.insert(a, b, c);
+                            break;
+                        case DISPATCH:
+                            found = engine.getNextRide(answer);
+                            break;
+                        default:
+                            changed = false;
+                            query(op, a, b, answer);
+                    }
+                    if (changed) {
+                        publishedHasNext = engine.peekNextRide(next);
+                        publishedSize = engine.size();
+                    }
+                    applied.lazySet(++done);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        // Helps the worker answer the operations that change nothing.
+        private void query(int op, int a, int b, RideConsumer answer) {
+            switch (op) {
+                case PRINT:
+                    found = engine.print(a, answer);
+                    break;
+                case RANGE:
+                    RideCursor rides = engine.seek(a, b);
+                    int count = 0;
+                    while (count < RANGE_CHUNK && rides.next()) {
+                        range[3 * count] = rides.rideNumber();
+                        range[3 * count + 1] = rides.tripCost();
+                        range[3 * count + 2] = rides.tripDuration();
+                        count++;
+                    }
+                    rangeCount = count;
+                    break;
+                case COUNT:
+                    number = engine.count(a, b);
+                    break;
+                case SUM_COST:
+                    number = engine.sumCost(a, b);
+                    break;
+                case RANK:
+                    number = engine.rank(a);
+                    break;
+                case MIN_COST:
+                    found = engine.minCost(a, b, answer);
+                    break;
+                case DEBUG:
+                    engine.printDebugState();
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown shard op " + op);
+            }
+        }
+    }
+
+    // Merges the chunks the shards answer for one range into ride number order.
+    private final class MergeCursor implements RideCursor {
+        private final boolean[] asked = new boolean[shards.length];     // shards that hold part of the range
+        private final int[] position = new int[shards.length];  // ride of the shard's chunk the cursor is at
+        private final boolean[] hasRide = new boolean[shards.length];
+        private final Tournament lowest = new Tournament(shards.length) {
+            @Override
+            protected boolean before(int a, int b) {
+                if (!hasRide[a] || !hasRide[b]) {
+                    return hasRide[a];
+                }
+                return shards[a].range[3 * position[a]] < shards[b].range[3 * position[b]];
+            }
+        };
+        private int high;
+        private int current = -1;   // shard whose chunk holds the current ride, -1 before the first next()
+        private int[] currentRange;
+        private int currentAt;
+
+        void seek(int low, int high) {
+            this.high = high;
+            // the shards owning a block of low..high: consecutive blocks go to consecutive shards, so the
+            // first 'shards.length' blocks of the range reach every shard it touches
+            long firstBlock = low >> BLOCK_SHIFT;
+            long lastBlock = Math.min(high >> BLOCK_SHIFT, firstBlock + shards.length - 1);
+            Arrays.fill(asked, false);
+            for (long block = firstBlock; low <= high && block <= lastBlock; block++) {
+                int i = Math.floorMod(block, shards.length);
+                asked[i] = true;
+                shards[i].send(RANGE, low, high, 0);
+                shards[i].queue.flush();
+            }
+            for (int i = 0; i < shards.length; i++) {
+                position[i] = 0;
+                if (asked[i]) {
+                    shards[i].sync();
+                }
+                hasRide[i] = asked[i] && shards[i].rangeCount > 0;
+            }
+            lowest.rebuild();
+            current = -1;
+        }
+
+        @Override
+        public boolean next() {
+            if (current >= 0) {
+                advance(current);
+                lowest.update(current);
+            }
+            current = lowest.winner();
+            currentRange = shards[current].range;
+            currentAt = 3 * position[current];
+            return hasRide[current];
+        }
+
+        // Helps move shard i's part of the range on by one ride, asking for its next chunk after the last.
+        private void advance(int i) {
+            Shard shard = shards[i];
+            if (++position[i] < shard.rangeCount) {
+                return;
+            }
+            int last = shard.range[3 * (shard.rangeCount - 1)];
+            position[i] = 0;
+            if (shard.rangeCount == RANGE_CHUNK && last < high) {
+                shard.call(RANGE, last + 1, high, 0);
+                hasRide[i] = shard.rangeCount > 0;
+            } else {
+                hasRide[i] = false;
+            }
+        }
+
+        @Override public int rideNumber() { return currentRange[currentAt]; }
+        @Override public int tripCost() { return currentRange[currentAt + 1]; }
+        @Override public int tripDuration() { return currentRange[currentAt + 2]; }
+    }
+}
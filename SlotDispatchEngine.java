@@ -0,0 +1,682 @@
+/*
+    Engine whose rides live in numbered slots instead of objects. A slot holds the ride number, cost and
+    duration, the red-black tree links and color, and the position in the heap; the heap itself maps
+    positions to slots. Freed slots are recycled through a free list.
+
+    The algorithms are the same as RedBlackTree and Heap: slot 0 plays the part of TNULL, and heap order is
+    (tripCost, tripDuration, rideNumber). Like Node, every slot also carries the size and tripCost sum of
+    its subtree, which answer the Count, SumCost, Rank and Select commands in O(log n). Subclasses decide where the columns are stored by implementing
+    the accessors at the bottom, see ArrayDispatchEngine (int arrays) and OffHeapDispatchEngine (direct memory).
+
+    Point operations (the duplicate check of Insert, Print(ride), UpdateTrip and CancelRide) find their slot
+    through an IntSlotMap instead of walking the tree, which only range and order queries need.
+*/
+abstract class SlotDispatchEngine implements DispatchEngine {
+    private static final int NIL = 0;   // sentinel slot, always BLACK
+    protected static final byte BLACK = 0;
+    protected static final byte RED = 1;
+    private static final int FRONT = 1;
+
+    protected int capacity;     // number of slots allocated, including NIL
+    private int nextUnused = 1; // first slot that was never handed out
+    private int freeList = NIL; // recycled slots, chained through 'right'
+    private int root = NIL;
+    private int size;
+    private final SlotCursor cursor = new SlotCursor();   // reused by every seek()
+    private final IntSlotMap index;    // ride number -> slot
+
+    // 'directIndex' keeps the IntSlotMap in direct memory too, as OffHeapDispatchEngine keeps its columns.
+    protected SlotDispatchEngine(boolean directIndex) {
+        this.index = new IntSlotMap(directIndex);
+    }
+
+    // ----------------------------------- DISPATCH OPERATIONS -----------------------------------
+
+    @Override
+    public boolean insert(int ride, int cost, int duration) {
+        if (find(ride) != NIL) {
+            return false;
+        }
+        int slot = allocate();
+        setRide(slot, ride);
+        setCost(slot, cost);
+        setDuration(slot, duration);
+        treeInsert(slot);
+        heapInsert(slot);
+        index.put(ride, slot);
+        size++;
+        return true;
+    }
+
+    @Override
+    public void bulkLoad(InsertBatch batch) {
+        if (size != 0) {
+            throw new IllegalStateException("bulkLoad needs an empty engine");
+        }
+        int count = batch.size();
+        // slots are handed out in ride number order, so the tree can be built from a range of slot numbers
+        int first = nextUnused;
+        while (capacity - first < count) {
+            grow();
+        }
+        nextUnused = first + count;
+        index.reserve(count);
+        for (int i = 0; i < count; i++) {
+            int slot = first + i;
+            setRide(slot, batch.ride(i));
+            setCost(slot, batch.cost(i));
+            setDuration(slot, batch.duration(i));
+            setHeapSlot(i + 1, slot);
+            index.put(batch.ride(i), slot);
+        }
+        int redDepth = 31 - Integer.numberOfLeadingZeros(count);
+        root = buildBalanced(first, first + count - 1, 0, redDepth);
+        setParent(root, NIL);
+        if (root != NIL) {
+            setColor(root, BLACK);
+        }
+        size = count;
+        for (int pos = size / 2; pos >= FRONT; pos--) {    // Floyd's heapify
+            heapSiftDown(pos, size);
+        }
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        if (size == 0) {
+            return false;
+        }
+        int slot = heapSlot(FRONT);
+        out.accept(ride(slot), cost(slot), duration(slot));
+        remove(slot);
+        return true;
+    }
+
+    @Override
+    public boolean peekNextRide(RideConsumer out) {
+        if (size == 0) {
+            return false;
+        }
+        int slot = heapSlot(FRONT);
+        out.accept(ride(slot), cost(slot), duration(slot));
+        return true;
+    }
+
+    @Override
+    public boolean print(int ride, RideConsumer out) {
+        int slot = find(ride);
+        if (slot == NIL) {
+            return false;
+        }
+        out.accept(ride(slot), cost(slot), duration(slot));
+        return true;
+    }
+
+    @Override
+    public void printRange(int low, int high, RideConsumer out) {
+        for (int slot = ceiling(low); slot != NIL && ride(slot) <= high; slot = successor(slot)) {
+            out.accept(ride(slot), cost(slot), duration(slot));
+        }
+    }
+
+    @Override
+    public RideCursor seek(int low, int high) {
+        cursor.next = ceiling(low);
+        cursor.high = high;
+        return cursor;
+    }
+
+    @Override
+    public void updateTrip(int ride, int newDuration) {
+        int slot = find(ride);
+        if (slot == NIL) {
+            return;
+        }
+        int oldDuration = duration(slot);
+        if (newDuration > oldDuration && newDuration <= 2 * oldDuration) {
+            setCost(slot, cost(slot) + 10);
+            setDuration(slot, newDuration);
+            heapReposition(heapIndex(slot));
+            pullToRoot(slot);   // the cost is part of the subtree sums
+        } else if (newDuration > 2 * oldDuration) {
+            remove(slot);
+        } else {
+            setDuration(slot, newDuration);
+            heapReposition(heapIndex(slot));
+        }
+    }
+
+    @Override
+    public void cancelRide(int ride) {
+        int slot = find(ride);
+        if (slot != NIL) {
+            remove(slot);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int count(int low, int high) {
+        return low > high ? 0 : countBelow(high, true) - countBelow(low, false);
+    }
+
+    @Override
+    public long sumCost(int low, int high) {
+        return low > high ? 0 : sumCostBelow(high, true) - sumCostBelow(low, false);
+    }
+
+    @Override
+    public int rank(int ride) {
+        return countBelow(ride, true);
+    }
+
+    @Override
+    public boolean select(int k, RideConsumer out) {
+        int x = root;
+        while (x != NIL) {
+            int leftSize = subtreeSize(left(x));
+            if (k <= leftSize) {
+                x = left(x);
+            } else if (k == leftSize + 1) {
+                out.accept(ride(x), cost(x), duration(x));
+                return true;
+            } else {
+                k -= leftSize + 1;
+                x = right(x);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int height() {
+        return height(root);
+    }
+
+    private int height(int x) {
+        return x == NIL ? 0 : 1 + Math.max(height(left(x)), height(right(x)));
+    }
+
+    @Override
+    public void printDebugState() {
+        System.out.println("\n\n" + getClass().getSimpleName() + ": size = " + size + ", slots = " + capacity + ", root slot = " + root);
+        for (int i = 1; i <= size; i++) {
+            int slot = heapSlot(i);
+            System.out.println(ride(slot) + " , " + cost(slot) + " , " + duration(slot) + " ,  i= " + i + " & slot = " + slot);
+        }
+    }
+
+    // Removes the ride in 'slot' from the tree and the heap and recycles the slot.
+    private void remove(int slot) {
+        index.remove(ride(slot));
+        heapDelete(slot);
+        treeDelete(slot);
+        release(slot);
+        size--;
+    }
+
+    // Walks the tree through successor links, one slot per next().
+    private final class SlotCursor implements RideCursor {
+        private int current = NIL;
+        private int next = NIL;
+        private int high;
+
+        @Override
+        public boolean next() {
+            if (next == NIL || ride(next) > high) {
+                next = NIL;
+                return false;
+            }
+            current = next;
+            next = successor(current);
+            return true;
+        }
+
+        @Override public int rideNumber() { return ride(current); }
+        @Override public int tripCost() { return cost(current); }
+        @Override public int tripDuration() { return duration(current); }
+    }
+
+    // ----------------------------------- SLOTS -----------------------------------
+
+    private int allocate() {
+        int slot;
+        if (freeList != NIL) {
+            slot = freeList;
+            freeList = right(slot);
+        } else {
+            if (nextUnused == capacity) {
+                grow();
+            }
+            slot = nextUnused++;
+        }
+        return slot;
+    }
+
+    private void release(int slot) {
+        setRight(slot, freeList);
+        freeList = slot;
+    }
+
+    // Makes room for more slots by raising 'capacity', in steps big enough that allocation stays amortized O(1).
+    protected abstract void grow();
+
+    // ----------------------------------- RED BLACK TREE -----------------------------------
+
+    // Rides numbered below 'key', or up to and including it when 'inclusive' is TRUE.
+    private int countBelow(int key, boolean inclusive) {
+        int count = 0;
+        int x = root;
+        while (x != NIL) {
+            int r = ride(x);
+            if (r < key || (inclusive && r == key)) {
+                count += subtreeSize(left(x)) + 1;
+                x = right(x);
+            } else {
+                x = left(x);
+            }
+        }
+        return count;
+    }
+
+    private long sumCostBelow(int key, boolean inclusive) {
+        long sum = 0;
+        int x = root;
+        while (x != NIL) {
+            int r = ride(x);
+            if (r < key || (inclusive && r == key)) {
+                sum += subtreeSum(left(x)) + cost(x);
+                x = right(x);
+            } else {
+                x = left(x);
+            }
+        }
+        return sum;
+    }
+
+    // Recomputes the subtree size and sum of 'x' from its children. NIL is never pulled, so it stays at 0.
+    private void pull(int x) {
+        int l = left(x), r = right(x);
+        setSubtreeSize(x, 1 + subtreeSize(l) + subtreeSize(r));
+        setSubtreeSum(x, cost(x) + subtreeSum(l) + subtreeSum(r));
+    }
+
+    private void pullToRoot(int x) {
+        while (x != NIL) {
+            pull(x);
+            x = parent(x);
+        }
+    }
+
+    private int find(int ride) {
+        return index.get(ride);
+    }
+
+    // First slot with a ride number >= 'ride', or NIL.
+    private int ceiling(int ride) {
+        int x = root;
+        int best = NIL;
+        while (x != NIL) {
+            if (ride(x) >= ride) {
+                best = x;
+                x = left(x);
+            } else {
+                x = right(x);
+            }
+        }
+        return best;
+    }
+
+    private int minimum(int x) {
+        while (left(x) != NIL) {
+            x = left(x);
+        }
+        return x;
+    }
+
+    private int successor(int x) {
+        if (right(x) != NIL) {
+            return minimum(right(x));
+        }
+        int y = parent(x);
+        while (y != NIL && x == right(y)) {
+            x = y;
+            y = parent(y);
+        }
+        return y;
+    }
+
+    private void leftRotate(int x) {
+        if (Metrics.enabled) {
+            Metrics.rotations++;
+        }
+        int y = right(x);
+        setRight(x, left(y));
+        if (left(y) != NIL) {
+            setParent(left(y), x);
+        }
+        setParent(y, parent(x));
+        if (parent(x) == NIL) {
+            root = y;
+        } else if (x == left(parent(x))) {
+            setLeft(parent(x), y);
+        } else {
+            setRight(parent(x), y);
+        }
+        setLeft(y, x);
+        setParent(x, y);
+        pull(x);
+        pull(y);
+    }
+
+    private void rightRotate(int x) {
+        if (Metrics.enabled) {
+            Metrics.rotations++;
+        }
+        int y = left(x);
+        setLeft(x, right(y));
+        if (right(y) != NIL) {
+            setParent(right(y), x);
+        }
+        setParent(y, parent(x));
+        if (parent(x) == NIL) {
+            root = y;
+        } else if (x == right(parent(x))) {
+            setRight(parent(x), y);
+        } else {
+            setLeft(parent(x), y);
+        }
+        setRight(y, x);
+        setParent(x, y);
+        pull(x);
+        pull(y);
+    }
+
+    // Builds a balanced subtree of the consecutive slots low..high, same coloring as RedBlackTree.buildFromSorted.
+    private int buildBalanced(int low, int high, int depth, int redDepth) {
+        if (low > high) {
+            return NIL;
+        }
+        int mid = (low + high) >>> 1;
+        int l = buildBalanced(low, mid - 1, depth + 1, redDepth);
+        int r = buildBalanced(mid + 1, high, depth + 1, redDepth);
+        setLeft(mid, l);
+        setRight(mid, r);
+        if (l != NIL) {
+            setParent(l, mid);
+        }
+        if (r != NIL) {
+            setParent(r, mid);
+        }
+        setColor(mid, depth == redDepth ? RED : BLACK);
+        pull(mid);
+        return mid;
+    }
+
+    private void treeInsert(int z) {
+        int y = NIL;
+        int x = root;
+        int key = ride(z);
+        while (x != NIL) {
+            y = x;
+            x = key < ride(x) ? left(x) : right(x);
+        }
+        setParent(z, y);
+        if (y == NIL) {
+            root = z;
+        } else if (key < ride(y)) {
+            setLeft(y, z);
+        } else {
+            setRight(y, z);
+        }
+        setLeft(z, NIL);
+        setRight(z, NIL);
+        setColor(z, RED);
+        pullToRoot(z);
+        adjustInsert(z);
+    }
+
+    private void adjustInsert(int k) {
+        while (color(parent(k)) == RED) {
+            int p = parent(k);
+            int g = parent(p);
+            if (p == right(g)) {
+                int u = left(g); // uncle
+                if (color(u) == RED) {
+                    setColor(u, BLACK);
+                    setColor(p, BLACK);
+                    setColor(g, RED);
+                    k = g;
+                } else {
+                    if (k == left(p)) {
+                        k = p;
+                        rightRotate(k);
+                    }
+                    setColor(parent(k), BLACK);
+                    setColor(parent(parent(k)), RED);
+                    leftRotate(parent(parent(k)));
+                }
+            } else {
+                int u = right(g); // uncle
+                if (color(u) == RED) {
+                    setColor(u, BLACK);
+                    setColor(p, BLACK);
+                    setColor(g, RED);
+                    k = g;
+                } else {
+                    if (k == right(p)) {
+                        k = p;
+                        leftRotate(k);
+                    }
+                    setColor(parent(k), BLACK);
+                    setColor(parent(parent(k)), RED);
+                    rightRotate(parent(parent(k)));
+                }
+            }
+        }
+        setColor(root, BLACK);
+    }
+
+    private void transplant(int u, int v) {
+        if (parent(u) == NIL) {
+            root = v;
+        } else if (u == left(parent(u))) {
+            setLeft(parent(u), v);
+        } else {
+            setRight(parent(u), v);
+        }
+        setParent(v, parent(u));
+    }
+
+    private void treeDelete(int z) {
+        int x;
+        int y = z;
+        byte yOriginalColor = color(y);
+        int changedFrom;    // lowest slot whose subtree lost a ride
+        if (left(z) == NIL) {
+            x = right(z);
+            changedFrom = parent(z);
+            transplant(z, right(z));
+        } else if (right(z) == NIL) {
+            x = left(z);
+            changedFrom = parent(z);
+            transplant(z, left(z));
+        } else {
+            y = minimum(right(z));
+            yOriginalColor = color(y);
+            x = right(y);
+            if (parent(y) == z) {
+                setParent(x, y);
+                changedFrom = y;
+            } else {
+                changedFrom = parent(y);
+                transplant(y, right(y));
+                setRight(y, right(z));
+                setParent(right(y), y);
+            }
+            transplant(z, y);
+            setLeft(y, left(z));
+            setParent(left(y), y);
+            setColor(y, color(z));
+        }
+        pullToRoot(changedFrom);
+        if (yOriginalColor == BLACK) {
+            adjustDelete(x);
+        }
+    }
+
+    private void adjustDelete(int x) {
+        while (x != root && color(x) == BLACK) {
+            if (x == left(parent(x))) {
+                int s = right(parent(x));
+                if (color(s) == RED) {
+                    setColor(s, BLACK);
+                    setColor(parent(x), RED);
+                    leftRotate(parent(x));
+                    s = right(parent(x));
+                }
+                if (color(left(s)) == BLACK && color(right(s)) == BLACK) {
+                    setColor(s, RED);
+                    x = parent(x);
+                } else {
+                    if (color(right(s)) == BLACK) {
+                        setColor(left(s), BLACK);
+                        setColor(s, RED);
+                        rightRotate(s);
+                        s = right(parent(x));
+                    }
+                    setColor(s, color(parent(x)));
+                    setColor(parent(x), BLACK);
+                    setColor(right(s), BLACK);
+                    leftRotate(parent(x));
+                    x = root;
+                }
+            } else {
+                int s = left(parent(x));
+                if (color(s) == RED) {
+                    setColor(s, BLACK);
+                    setColor(parent(x), RED);
+                    rightRotate(parent(x));
+                    s = left(parent(x));
+                }
+                if (color(left(s)) == BLACK && color(right(s)) == BLACK) {
+                    setColor(s, RED);
+                    x = parent(x);
+                } else {
+                    if (color(left(s)) == BLACK) {
+                        setColor(right(s), BLACK);
+                        setColor(s, RED);
+                        leftRotate(s);
+                        s = left(parent(x));
+                    }
+                    setColor(s, color(parent(x)));
+                    setColor(parent(x), BLACK);
+                    setColor(left(s), BLACK);
+                    rightRotate(parent(x));
+                    x = root;
+                }
+            }
+        }
+        setColor(x, BLACK);
+    }
+
+    // ----------------------------------- HEAP -----------------------------------
+
+    // Same order as the default RidePolicy, "cost": cost, then duration, then ride number.
+    private int compareSlots(int a, int b) {
+        int c = Integer.compare(cost(a), cost(b));
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compare(duration(a), duration(b));
+        return c != 0 ? c : Integer.compare(ride(a), ride(b));
+    }
+
+    private void heapInsert(int slot) {
+        setHeapSlot(size + 1, slot);
+        heapSiftUp(size + 1);
+    }
+
+    // Removes 'slot' from the heap. Must run before 'size' is decremented.
+    private void heapDelete(int slot) {
+        int pos = heapIndex(slot);
+        int last = heapSlot(size);
+        if (pos < size) {
+            setHeapSlot(pos, last);
+            heapReposition(pos, size - 1);
+        }
+    }
+
+    private void heapReposition(int pos) {
+        heapReposition(pos, size);
+    }
+
+    private void heapReposition(int pos, int heapSize) {
+        if (heapSiftUp(pos) == pos) {
+            heapSiftDown(pos, heapSize);
+        }
+    }
+
+    private int heapSiftUp(int pos) {
+        int moving = heapSlot(pos);
+        while (pos > FRONT && compareSlots(moving, heapSlot(pos / 2)) < 0) {
+            if (Metrics.enabled) {
+                Metrics.siftSteps++;
+            }
+            setHeapSlot(pos, heapSlot(pos / 2));
+            pos = pos / 2;
+        }
+        setHeapSlot(pos, moving);
+        return pos;
+    }
+
+    private void heapSiftDown(int pos, int heapSize) {
+        int moving = heapSlot(pos);
+        while (2 * pos <= heapSize) {
+            int child = 2 * pos;
+            if (child + 1 <= heapSize && compareSlots(heapSlot(child + 1), heapSlot(child)) < 0) {
+                child++;
+            }
+            if (compareSlots(heapSlot(child), moving) >= 0) {
+                break;
+            }
+            if (Metrics.enabled) {
+                Metrics.siftSteps++;
+            }
+            setHeapSlot(pos, heapSlot(child));
+            pos = child;
+        }
+        setHeapSlot(pos, moving);
+    }
+
+    // ----------------------------------- COLUMN ACCESS -----------------------------------
+
+    protected abstract int ride(int slot);
+    protected abstract int cost(int slot);
+    protected abstract int duration(int slot);
+    protected abstract int left(int slot);
+    protected abstract int right(int slot);
+    protected abstract int parent(int slot);
+    protected abstract byte color(int slot);
+    protected abstract int heapIndex(int slot);
+    protected abstract int heapSlot(int pos);
+    protected abstract int subtreeSize(int slot);
+    protected abstract long subtreeSum(int slot);
+
+    protected abstract void setRide(int slot, int value);
+    protected abstract void setCost(int slot, int value);
+    protected abstract void setDuration(int slot, int value);
+    protected abstract void setLeft(int slot, int value);
+    protected abstract void setRight(int slot, int value);
+    protected abstract void setParent(int slot, int value);
+    protected abstract void setColor(int slot, byte value);
+    protected abstract void setSubtreeSize(int slot, int value);
+    protected abstract void setSubtreeSum(int slot, long value);
+
+    // Puts 'slot' at heap position 'pos' and records the position in the slot.
+    protected abstract void setHeapSlot(int pos, int slot);
+}
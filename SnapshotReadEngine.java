@@ -0,0 +1,181 @@
+import java.io.IOException;
+
+/*
+    Wraps an engine and mirrors its rides into a RideSnapshot, publishing a new version after every change.
+    The wrapped engine and the snapshots are updated by the one writer thread, as before; any other thread
+    may call snapshot() at any time and query the version it gets (Print, ranges, Count, SumCost) without
+    locks and without ever waiting for the writer.
+
+    gatorTaxi wraps the engine in one with --snapshot-reads=<n>, and the Server then hands Print, Count and
+    SumCost to <n> reader threads, each with the version published when the command was read, while its own
+    thread goes on applying the other commands; see execute() and Server. The writer answers its own reads
+    from the snapshot too, so both give the same answers. SnapshotReadStress in the bench module checks that
+    readers never see a torn ride while a writer runs.
+*/
+class SnapshotReadEngine implements DispatchEngine, RideConsumer {
+    private final DispatchEngine engine;
+    private volatile RideSnapshot published = RideSnapshot.EMPTY;
+    private RideSnapshot current = RideSnapshot.EMPTY;  // writer's copy of 'published'
+    private int seed = 0x2545F491;  // xorshift state for treap priorities
+    private RideConsumer nextRideOut;
+    private boolean seen;   // set by accept()
+    private RideSnapshot batch; // version being built while getNextRides() runs, or NULL
+    private int seenRide, seenCost, seenDuration;
+
+    SnapshotReadEngine(DispatchEngine engine) {
+        this.engine = engine;
+    }
+
+    // The latest version of the ride set. Safe to call from any thread.
+    RideSnapshot snapshot() {
+        return published;
+    }
+
+    // Whether 'cmd' only reads what a snapshot holds, so execute() can answer it away from the writer.
+    static boolean readsOnly(Command cmd) {
+        return cmd.type == Command.PRINT || cmd.type == Command.COUNT || cmd.type == Command.SUM_COST;
+    }
+
+    // Answers a command readsOnly() accepts from 'snapshot', with the lines gatorTaxi.execute() writes for it.
+    static void execute(int type, int argCount, int arg0, int arg1, RideSnapshot snapshot, ResultSink out) throws IOException {
+        switch (type) {
+            case Command.PRINT:
+                out.beginRange();
+                if (argCount == 2) {
+                    snapshot.forEachInRange(arg0, arg1, out);
+                } else {
+                    snapshot.find(arg0, out);
+                }
+                out.endRange();
+                break;
+            case Command.COUNT:
+                out.writeNumberLine(snapshot.count(arg0, arg1));
+                break;
+            case Command.SUM_COST:
+                out.writeNumberLine(snapshot.sumCost(arg0, arg1));
+                break;
+            default:
+                throw new IllegalArgumentException("not a snapshot read: command " + type);
+        }
+    }
+
+    private void publish(RideSnapshot next) {
+        if (next != current) {
+            current = next;
+            published = next;
+        }
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed >>> 1;  // non-negative, below the priorities of a bulk load
+    }
+
+    // ----------------------------------- WRITES -----------------------------------
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        if (!engine.insert(rideNumber, tripCost, tripDuration)) {
+            return false;
+        }
+        publish(current.put(rideNumber, tripCost, tripDuration, nextPriority()));
+        return true;
+    }
+
+    @Override
+    public void bulkLoad(InsertBatch batch) {
+        engine.bulkLoad(batch);
+        publish(RideSnapshot.ofSorted(batch));
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        nextRideOut = out;
+        seen = false;
+        engine.getNextRide(this);
+        nextRideOut = null;
+        if (!seen) {
+            return false;
+        }
+        publish(current.remove(seenRide));
+        return true;
+    }
+
+    // Publishes one version for the whole batch, so readers see all k rides go at once.
+    @Override
+    public int getNextRides(int k, RideConsumer out) {
+        nextRideOut = out;
+        batch = current;
+        int removed = engine.getNextRides(k, this);
+        nextRideOut = null;
+        RideSnapshot next = batch;
+        batch = null;
+        publish(next);
+        return removed;
+    }
+
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        engine.updateTrip(rideNumber, newTripDuration);
+        // the engine applied the UpdateTrip rules, copy whatever they left behind
+        seen = false;
+        engine.print(rideNumber, this);
+        publish(seen ? current.put(rideNumber, seenCost, seenDuration, nextPriority()) : current.remove(rideNumber));
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        engine.cancelRide(rideNumber);
+        publish(current.remove(rideNumber));
+    }
+
+    // Records the ride the wrapped engine handed out, and passes it on when getNextRide() or getNextRides() asked for it.
+    @Override
+    public void accept(int rideNumber, int tripCost, int tripDuration) {
+        seen = true;
+        seenRide = rideNumber;
+        seenCost = tripCost;
+        seenDuration = tripDuration;
+        if (batch != null) {
+            batch = batch.remove(rideNumber);
+        }
+        if (nextRideOut != null) {
+            nextRideOut.accept(rideNumber, tripCost, tripDuration);
+        }
+    }
+
+    // ----------------------------------- READS -----------------------------------
+
+    @Override
+    public boolean print(int rideNumber, RideConsumer out) {
+        return current.find(rideNumber, out);
+    }
+
+    @Override
+    public void printRange(int low, int high, RideConsumer out) {
+        current.forEachInRange(low, high, out);
+    }
+
+    @Override
+    public int count(int low, int high) {
+        return current.count(low, high);
+    }
+
+    @Override
+    public long sumCost(int low, int high) {
+        return current.sumCost(low, high);
+    }
+
+    @Override public boolean peekNextRide(RideConsumer out) { return engine.peekNextRide(out); }
+    @Override public RideCursor seek(int low, int high) { return engine.seek(low, high); }
+    @Override public int size() { return engine.size(); }
+    @Override public int height() { return engine.height(); }
+    @Override public int rank(int rideNumber) { return engine.rank(rideNumber); }
+    @Override public boolean select(int k, RideConsumer out) { return engine.select(k, out); }
+    @Override public boolean minCost(int low, int high, RideConsumer out) { return engine.minCost(low, high, out); }
+    @Override public void sync() { engine.sync(); }
+    @Override public void printDebugState() { engine.printDebugState(); }
+    @Override public void close() throws IOException { engine.close(); }
+}
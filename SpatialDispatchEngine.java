@@ -0,0 +1,122 @@
+import java.io.IOException;
+
+/*
+    Wraps an engine with a PickupIndex of the rides inserted with a pickup location, Insert(ride, cost, duration,
+    x, y), for GetNextRideNear(x, y, radius): the ride with the lowest (tripCost, tripDuration) within 'radius'
+    of (x, y), whatever --policy the queue orders by. The ride found leaves the wrapped engine through
+    cancelRide(), the path CancelRide takes, so it leaves the tree and the heap together.
+
+    The index only holds rides that are still pending: one that leaves through GetNextRide, CancelRide, an
+    UpdateTrip that cancels it or an expiry is taken out at once, and an UpdateTrip that keeps it re-keys it.
+    With --state-dir the DurableDispatchEngine wraps this one, so that it logs locations and GetNextRideNear
+    and recovers located rides through insert(), see StateStore.
+*/
+class SpatialDispatchEngine implements DispatchEngine, RideConsumer {
+    private final DispatchEngine engine;
+    private final PickupIndex index = new PickupIndex(1024);
+    private final RideConsumer reindex = this::reindex;
+    private RideConsumer nextRideOut;   // where getNextRide() forwards the ride
+
+    SpatialDispatchEngine(DispatchEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration, int x, int y) {
+        if (!engine.insert(rideNumber, tripCost, tripDuration)) {
+            return false;
+        }
+        index.add(rideNumber, tripCost, tripDuration, x, y);
+        return true;
+    }
+
+    @Override
+    public boolean insert(int rideNumber, int tripCost, int tripDuration) {
+        return engine.insert(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public boolean getNextRideNear(int x, int y, int radius, RideConsumer out) {
+        int entry = index.nearest(x, y, radius);
+        if (entry == PickupIndex.NIL) {
+            return false;
+        }
+        int rideNumber = index.ride(entry);
+        int tripCost = index.cost(entry);
+        int tripDuration = index.duration(entry);
+        index.remove(rideNumber);
+        engine.cancelRide(rideNumber);
+        out.accept(rideNumber, tripCost, tripDuration);
+        return true;
+    }
+
+    @Override
+    public boolean getNextRide(RideConsumer out) {
+        nextRideOut = out;
+        return engine.getNextRide(this);
+    }
+
+    @Override
+    public int getNextRides(int k, RideConsumer out) {
+        nextRideOut = out;
+        return engine.getNextRides(k, this);
+    }
+
+    @Override
+    public boolean location(int rideNumber, RideConsumer out) {
+        int entry = index.entry(rideNumber);
+        if (entry == PickupIndex.NIL) {
+            return false;
+        }
+        out.accept(rideNumber, index.x(entry), index.y(entry));
+        return true;
+    }
+
+    // Receives the rides handed out by getNextRide() and getNextRides() and passes them on.
+    @Override
+    public void accept(int rideNumber, int tripCost, int tripDuration) {
+        if (index.size() != 0) {
+            index.remove(rideNumber);
+        }
+        nextRideOut.accept(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public void updateTrip(int rideNumber, int newTripDuration) {
+        engine.updateTrip(rideNumber, newTripDuration);
+        // a big enough increase cancels the ride, any other changes its cost or duration.
+        if (index.contains(rideNumber) && !engine.print(rideNumber, reindex)) {
+            index.remove(rideNumber);
+        }
+    }
+
+    // Helps re-key a ride after UpdateTrip, with the cost and duration the engine now has for it.
+    private void reindex(int rideNumber, int tripCost, int tripDuration) {
+        index.update(rideNumber, tripCost, tripDuration);
+    }
+
+    @Override
+    public void cancelRide(int rideNumber) {
+        engine.cancelRide(rideNumber);
+        if (index.size() != 0) {
+            index.remove(rideNumber);
+        }
+    }
+
+    // Only ever called on an empty engine, and bulk loaded rides have no location.
+    @Override public void bulkLoad(InsertBatch batch) { engine.bulkLoad(batch); }
+    @Override public boolean peekNextRide(RideConsumer out) { return engine.peekNextRide(out); }
+    @Override public boolean print(int rideNumber, RideConsumer out) { return engine.print(rideNumber, out); }
+    @Override public void printRange(int low, int high, RideConsumer out) { engine.printRange(low, high, out); }
+    @Override public RideCursor seek(int low, int high) { return engine.seek(low, high); }
+    @Override public void sync() { engine.sync(); }
+    @Override public int size() { return engine.size(); }
+    @Override public int height() { return engine.height(); }
+    @Override public int count(int low, int high) { return engine.count(low, high); }
+    @Override public long sumCost(int low, int high) { return engine.sumCost(low, high); }
+    @Override public int rank(int rideNumber) { return engine.rank(rideNumber); }
+    @Override public boolean select(int k, RideConsumer out) { return engine.select(k, out); }
+    @Override public boolean minCost(int low, int high, RideConsumer out) { return engine.minCost(low, high, out); }
+    @Override public void printDebugState() { engine.printDebugState(); }
+    @Override public void close() throws IOException { engine.close(); }
+}
@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+    Crash recovery files of a DispatchEngine, kept in one directory:
+        wal-<n>.log       WriteAheadLog segment n
+        snapshot-<n>.bin  every ride at the start of segment n, in ride number order
+    The state is the newest snapshot plus every segment from its number on. A snapshot file is
+        magic | ride count | (ride number, trip cost, trip duration) ... |
+        located ride count | (ride number, trip cost, trip duration, x, y) ... | CRC32 of the rides
+    the rides with a pickup location coming second, and only appears under its final name once it is complete,
+    so recovery never sees a partial one. Snapshots of the older "GTS1" kind, without locations, are still read.
+
+    Snapshots are taken while commands keep running: the rides are copied in memory, which is the only
+    pause, and a background thread writes the copy out and then removes the files it makes obsolete.
+*/
+class StateStore {
+    private static final int SNAPSHOT_MAGIC = 0x47545332;  // "GTS2"
+    private static final int PLAIN_SNAPSHOT_MAGIC = 0x47545331;  // "GTS1", no located rides
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final Path dir;
+    private WriteAheadLog wal;
+    private long segment;   // number of the segment 'wal' writes to
+    // Only touched while no writer runs.
+    private final InsertBatch snapshotRides = new InsertBatch(1024);  // rides without a location
+    private int[] snapshotLocated = new int[5 * 64];    // (ride, cost, duration, x, y) of the others
+    private int locatedCount;
+    private final RideConsumer locationOut = this::located;
+    private int locatedX;
+    private int locatedY;
+    private Thread snapshotWriter;
+    private volatile IOException snapshotFailure;
+
+    StateStore(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    // Loads the newest snapshot and the log after it into 'engine', which must be empty, then opens a new segment.
+    void recover(DispatchEngine engine) throws IOException {
+        long snapshot = newest("snapshot-", ".bin");
+        if (snapshot >= 0) {
+            readSnapshot(file("snapshot-", snapshot, ".bin"), engine);
+        }
+        long[] segments = numbers("wal-", ".log");
+        for (long n : segments) {
+            if (n >= snapshot) {
+                WriteAheadLog.replay(file("wal-", n, ".log"), engine);
+            }
+        }
+        segment = segments.length == 0 ? Math.max(snapshot, 0) : segments[segments.length - 1] + 1;
+        wal = new WriteAheadLog(file("wal-", segment, ".log"));
+    }
+
+    void log(int type, int rideNumber, int tripCost, int tripDuration) throws IOException {
+        wal.append(type, rideNumber, tripCost, tripDuration);
+    }
+
+    // Logs an Insert with a pickup location.
+    void logLocated(int rideNumber, int tripCost, int tripDuration, int x, int y) throws IOException {
+        wal.appendLocated(rideNumber, tripCost, tripDuration, x, y);
+    }
+
+    // Forces what has been logged so far to disk.
+    void commit() throws IOException {
+        wal.commit();
+    }
+
+    // Starts a new segment and writes a snapshot of 'engine' as of its start in the background.
+    void snapshot(DispatchEngine engine) throws IOException {
+        awaitSnapshot();    // one writer at a time, it owns snapshotRides
+        wal.close();
+        segment++;
+        wal = new WriteAheadLog(file("wal-", segment, ".log"));
+
+        snapshotRides.clear();
+        locatedCount = 0;
+        RideCursor cursor = engine.seek(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        while (cursor.next()) {
+            if (!engine.location(cursor.rideNumber(), locationOut)) {
+                snapshotRides.add(cursor.rideNumber(), cursor.tripCost(), cursor.tripDuration());
+                continue;
+            }
+            if (5 * locatedCount == snapshotLocated.length) {
+                snapshotLocated = Arrays.copyOf(snapshotLocated, 2 * snapshotLocated.length);
+            }
+            int at = 5 * locatedCount++;
+            snapshotLocated[at] = cursor.rideNumber();
+            snapshotLocated[at + 1] = cursor.tripCost();
+            snapshotLocated[at + 2] = cursor.tripDuration();
+            snapshotLocated[at + 3] = locatedX;
+            snapshotLocated[at + 4] = locatedY;
+        }
+        long number = segment;
+        snapshotWriter = new Thread(() -> {
+            try {
+                writeSnapshot(number);
+            } catch (IOException e) {
+                snapshotFailure = e;
+            }
+        }, "snapshot-writer");
+        snapshotWriter.start();
+    }
+
+    // Receives the location of a ride while snapshot() copies the rides.
+    private void located(int rideNumber, int x, int y) {
+        locatedX = x;
+        locatedY = y;
+    }
+
+    // Commits the log and waits for a running snapshot to finish.
+    void close() throws IOException {
+        wal.close();
+        awaitSnapshot();
+    }
+
+    private void awaitSnapshot() throws IOException {
+        if (snapshotWriter != null) {
+            try {
+                snapshotWriter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing a snapshot", e);
+            }
+            snapshotWriter = null;
+        }
+        if (snapshotFailure != null) {
+            IOException failure = snapshotFailure;
+            snapshotFailure = null;
+            throw failure;
+        }
+    }
+
+    // Runs on the snapshot writer thread.
+    private void writeSnapshot(long number) throws IOException {
+        Path target = file("snapshot-", number, ".bin");
+        Path temporary = dir.resolve(target.getFileName() + ".tmp");
+        int count = snapshotRides.size();
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(count);
+            for (int i = 0; i < count; i++) {
+                if (buffer.remaining() < 12) {
+                    drain(buffer, out, crc);
+                }
+                buffer.putInt(snapshotRides.ride(i)).putInt(snapshotRides.cost(i)).putInt(snapshotRides.duration(i));
+            }
+            if (buffer.remaining() < 4) {
+                drain(buffer, out, crc);
+            }
+            buffer.putInt(locatedCount);
+            for (int i = 0; i < 5 * locatedCount; i++) {
+                if (buffer.remaining() < 4) {
+                    drain(buffer, out, crc);
+                }
+                buffer.putInt(snapshotLocated[i]);
+            }
+            drain(buffer, out, crc);
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+
+        // everything before this snapshot is now redundant
+        for (long n : numbers("snapshot-", ".bin")) {
+            if (n < number) {
+                Files.deleteIfExists(file("snapshot-", n, ".bin"));
+            }
+        }
+        for (long n : numbers("wal-", ".log")) {
+            if (n < number) {
+                Files.deleteIfExists(file("wal-", n, ".log"));
+            }
+        }
+    }
+
+    // Writes out the buffer. The header is skipped by the checksum, which covers the rides only.
+    private static void drain(ByteBuffer buffer, FileChannel out, CRC32 crc) throws IOException {
+        buffer.flip();
+        ByteBuffer rides = buffer.duplicate();
+        if (out.position() == 0) {
+            rides.position(8);
+        }
+        crc.update(rides);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void readSnapshot(Path file, DispatchEngine engine) throws IOException {
+        InsertBatch rides = new InsertBatch(1024);
+        int[] located = new int[0];
+        CRC32 crc = new CRC32();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            readFully(in, buffer, 8);
+            int magic = buffer.getInt();
+            if (magic != SNAPSHOT_MAGIC && magic != PLAIN_SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                if (!buffer.hasRemaining()) {
+                    readFully(in, buffer, Math.min(buffer.capacity() / 12, count - i) * 12);
+                    crc.update(buffer.array(), 0, buffer.limit());
+                }
+                rides.add(buffer.getInt(), buffer.getInt(), buffer.getInt());
+            }
+            if (magic == SNAPSHOT_MAGIC) {
+                readFully(in, buffer, 4);
+                crc.update(buffer.array(), 0, 4);
+                located = new int[5 * buffer.getInt()];
+                for (int i = 0; i < located.length; i++) {
+                    if (!buffer.hasRemaining()) {
+                        readFully(in, buffer, Math.min(buffer.capacity() / 20, (located.length - i) / 5) * 20);
+                        crc.update(buffer.array(), 0, buffer.limit());
+                    }
+                    located[i] = buffer.getInt();
+                }
+            }
+            readFully(in, buffer, 4);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                throw new IOException("Corrupt snapshot: " + file);
+            }
+        }
+        rides.sortByRideNumber();   // already sorted, this only checks
+        engine.bulkLoad(rides);
+        for (int i = 0; i < located.length; i += 5) {
+            engine.insert(located[i], located[i + 1], located[i + 2], located[i + 3], located[i + 4]);
+        }
+    }
+
+    // Reads exactly 'length' bytes into the start of 'buffer' and flips it.
+    private static void readFully(FileChannel in, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                throw new IOException("Snapshot is cut short");
+            }
+        }
+        buffer.flip();
+    }
+
+    private Path file(String prefix, long number, String suffix) {
+        return dir.resolve(prefix + number + suffix);
+    }
+
+    // Highest number among the files named prefix<n>suffix, or -1 if there are none.
+    private long newest(String prefix, String suffix) throws IOException {
+        long[] all = numbers(prefix, suffix);
+        return all.length == 0 ? -1 : all[all.length - 1];
+    }
+
+    // Numbers of the files named prefix<n>suffix, in ascending order.
+    private long[] numbers(String prefix, String suffix) throws IOException {
+        long[] found = new long[8];
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                try {
+                    long n = Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = n;
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+    Hierarchical timing wheel holding the expiry tick of rides, for ExpiringDispatchEngine. Ticks are whatever
+    unit the caller advances the wheel in. There are LEVELS wheels of SLOTS slots: a ride due within the current
+    256-tick span waits in the slot of its tick on level 0, one due later waits on the lowest level whose span
+    it shares with the current tick, in the slot of its tick at that level's granularity. Whenever level l
+    wraps around, the next slot of level l+1 is cascaded into the levels below it. A ride moves down at most
+    LEVELS-1 times, so advance() does O(1) amortized work per tick and per ride.
+
+    Entries live in int arrays, as the rides of the slot engines do. Every slot is a circular doubly linked list
+    headed by a sentinel entry of its own, so schedule() and cancel() are O(1) and allocate nothing once the
+    arrays have grown. A ride has at most one entry, found through an IntSlotMap.
+*/
+class TimingWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int NIL = 0;
+    private static final int FIRST_ENTRY = 1 + LEVELS * SLOTS;  // entries 1 .. LEVELS * SLOTS are the sentinels
+
+    private int[] next;
+    private int[] prev;
+    private int[] rides;
+    private long[] due;
+    private int used = FIRST_ENTRY;     // entries handed out so far, sentinels included
+    private int freeList = NIL;         // chained through 'next'
+    private final IntSlotMap entryOf = new IntSlotMap();
+    private long now;
+
+    TimingWheel(int initialCapacity) {
+        int capacity = FIRST_ENTRY + Math.max(16, initialCapacity);
+        next = new int[capacity];
+        prev = new int[capacity];
+        rides = new int[capacity];
+        due = new long[capacity];
+        for (int sentinel = 1; sentinel < FIRST_ENTRY; sentinel++) {
+            next[sentinel] = sentinel;
+            prev[sentinel] = sentinel;
+        }
+    }
+
+    // The tick the wheel was last advanced to.
+    long now() {
+        return now;
+    }
+
+    // Number of rides waiting to expire.
+    int size() {
+        return entryOf.size();
+    }
+
+    // Whether 'ride' is waiting to expire.
+    boolean contains(int ride) {
+        return entryOf.get(ride) != NIL;
+    }
+
+    // Makes 'ride' expire at tick 'dueTick', replacing its earlier expiry if it had one. A tick that has
+    // already passed means the next one.
+    void schedule(int ride, long dueTick) {
+        cancel(ride);
+        int entry = allocate();
+        rides[entry] = ride;
+        due[entry] = Math.max(dueTick, now + 1);
+        link(entry);
+        entryOf.put(ride, entry);
+    }
+
+    // Takes 'ride' off the wheel. Returns FALSE if it was not on it.
+    boolean cancel(int ride) {
+        int entry = entryOf.get(ride);
+        if (entry == NIL) {
+            return false;
+        }
+        entryOf.remove(ride);
+        unlink(entry);
+        release(entry);
+        return true;
+    }
+
+    // Moves the clock forward to tick 'to', handing every ride that becomes due to 'expired', in tick order.
+    // The ride is off the wheel by the time 'expired' sees it.
+    void advance(long to, IntConsumer expired) {
+        while (now < to) {
+            if (entryOf.size() == 0) {
+                now = to;   // nothing to expire, skip the empty ticks
+                return;
+            }
+            now++;
+            if ((now & SLOT_MASK) == 0) {
+                cascade(1);
+            }
+            int sentinel = sentinel(0, (int) now & SLOT_MASK);
+            while (next[sentinel] != sentinel) {
+                int entry = next[sentinel];
+                int ride = rides[entry];
+                unlink(entry);
+                release(entry);
+                entryOf.remove(ride);
+                expired.accept(ride);
+            }
+        }
+    }
+
+    // Helps move the slot of 'level' the clock just reached into the levels below, after the level above it
+    // if that one wrapped around too.
+    private void cascade(int level) {
+        int slot = (int) (now >>> (SLOT_BITS * level)) & SLOT_MASK;
+        if (slot == 0 && level + 1 < LEVELS) {
+            cascade(level + 1);
+        }
+        int sentinel = sentinel(level, slot);
+        int entry = next[sentinel];
+        next[sentinel] = sentinel;
+        prev[sentinel] = sentinel;
+        while (entry != sentinel) {
+            int following = next[entry];
+            link(entry);
+            entry = following;
+        }
+    }
+
+    // Helps put an entry into its slot: the lowest level whose span holds both the current tick and the due one.
+    private void link(int entry) {
+        long dueTick = due[entry];
+        long differing = dueTick ^ now;
+        int level = 0;
+        while (level < LEVELS - 1 && (differing >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        int sentinel = sentinel(level, (int) (dueTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        int last = prev[sentinel];
+        next[last] = entry;
+        prev[entry] = last;
+        next[entry] = sentinel;
+        prev[sentinel] = entry;
+    }
+
+    private void unlink(int entry) {
+        next[prev[entry]] = next[entry];
+        prev[next[entry]] = prev[entry];
+    }
+
+    private static int sentinel(int level, int slot) {
+        return 1 + level * SLOTS + slot;
+    }
+
+    private int allocate() {
+        if (freeList != NIL) {
+            int entry = freeList;
+            freeList = next[entry];
+            return entry;
+        }
+        if (used == next.length) {
+            int capacity = next.length * 2;
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            rides = Arrays.copyOf(rides, capacity);
+            due = Arrays.copyOf(due, capacity);
+        }
+        return used++;
+    }
+
+    private void release(int entry) {
+        next[entry] = freeList;
+        freeList = entry;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+    Winner tree over a fixed number of leaves, used by ShardedDispatchEngine to find the best of its shards:
+    the shard with the lowest next ride, or the cursor with the lowest ride number while merging a range.
+    After one leaf changes, update() replays only the matches on its path to the root, O(log leaves).
+*/
+abstract class Tournament {
+    private final int leaves;
+    private final int size;     // leaves rounded up to a power of two, padding leaves never win
+    private final int[] tree;   // tree[i] = leaf that won the match at internal node i, root at 1
+
+    Tournament(int leaves) {
+        this.leaves = leaves;
+        int size = 2;
+        while (size < leaves) {
+            size *= 2;
+        }
+        this.size = size;
+        this.tree = new int[size];
+    }
+
+    // TRUE if leaf 'a' should win over leaf 'b'.
+    protected abstract boolean before(int a, int b);
+
+    // Replays every match, after all the leaves changed.
+    void rebuild() {
+        for (int node = size - 1; node >= 1; node--) {
+            tree[node] = play(node);
+        }
+    }
+
+    // Replays the matches on the path from 'leaf' to the root.
+    void update(int leaf) {
+        for (int node = (leaf + size) / 2; node >= 1; node /= 2) {
+            tree[node] = play(node);
+        }
+    }
+
+    int winner() {
+        return tree[1];
+    }
+
+    private int play(int node) {
+        int a = entrant(2 * node);
+        int b = entrant(2 * node + 1);
+        if (a >= leaves) {
+            return b;
+        }
+        if (b >= leaves) {
+            return a;
+        }
+        return before(b, a) ? b : a;
+    }
+
+    private int entrant(int node) {
+        return node >= size ? node - size : tree[node];
+    }
+}
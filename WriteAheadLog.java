@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Append-only log of the mutations applied to a DispatchEngine, one file per segment. Every record is
+        type | ride number | trip cost | trip duration
+    16 bytes, except an Insert with a pickup location, which is followed by
+        x | y
+    Records are gathered in a buffer and written and forced to disk a group at a time (group commit), when the
+    buffer fills up or when commit() is called before results are acknowledged, so a crash loses at most the
+    last uncommitted group. A record cut short by a crash is ignored on replay.
+*/
+class WriteAheadLog {
+    static final int INSERT = 1;
+    static final int UPDATE_TRIP = 2;
+    static final int REMOVE = 3;    // CancelRide, or the ride handed out by GetNextRide or GetNextRideNear
+    static final int INSERT_AT = 4; // Insert with a pickup location
+
+    private static final int RECORD_SIZE = 16;
+    private static final int LOCATED_RECORD_SIZE = 24;
+    private static final int GROUP_RECORDS = 4096;  // records per group commit, fewer if they have locations
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(GROUP_RECORDS * RECORD_SIZE);
+
+    // Creates a new, empty segment file.
+    WriteAheadLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    void append(int type, int rideNumber, int tripCost, int tripDuration) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            commit();
+        }
+        buffer.putInt(type).putInt(rideNumber).putInt(tripCost).putInt(tripDuration);
+    }
+
+    // Appends an INSERT_AT record.
+    void appendLocated(int rideNumber, int tripCost, int tripDuration, int x, int y) throws IOException {
+        if (buffer.remaining() < LOCATED_RECORD_SIZE) {
+            commit();
+        }
+        buffer.putInt(INSERT_AT).putInt(rideNumber).putInt(tripCost).putInt(tripDuration).putInt(x).putInt(y);
+    }
+
+    // Writes the pending records and forces them to disk.
+    void commit() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    // Applies every complete record of the segment 'file' to 'engine'. Returns the number of records applied.
+    static long replay(Path file, DispatchEngine engine) throws IOException {
+        long records = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(GROUP_RECORDS * RECORD_SIZE);
+            while (true) {
+                int read = in.read(buffer);
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    if (buffer.getInt(buffer.position()) == INSERT_AT && buffer.remaining() < LOCATED_RECORD_SIZE) {
+                        break;  // the rest of it is in the next read
+                    }
+                    int type = buffer.getInt();
+                    int rideNumber = buffer.getInt();
+                    int tripCost = buffer.getInt();
+                    int tripDuration = buffer.getInt();
+                    switch (type) {
+                        case INSERT:
+                            engine.insert(rideNumber, tripCost, tripDuration);
+                            break;
+                        case INSERT_AT:
+                            engine.insert(rideNumber, tripCost, tripDuration, buffer.getInt(), buffer.getInt());
+                            break;
+                        case UPDATE_TRIP:
+                            engine.updateTrip(rideNumber, tripDuration);
+                            break;
+                        case REMOVE:
+                            engine.cancelRide(rideNumber);
+                            break;
+                        default:
+                            throw new IOException("Corrupt record " + records + " in " + file);
+                    }
+                    records++;
+                }
+                buffer.compact();
+                if (read < 0) {
+                    break;  // anything left over is the torn tail of the last group
+                }
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,104 @@
+package gatortaxi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+    The operations of RedBlackTreeBenchmark on a BPlusTree with the same keys and probes, so the two indexes can
+    be compared side by side:
+        java -jar bench/target/benchmarks.jar "(RedBlackTree|BPlusTree)Benchmark" -p rangeWidth=100,10000
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BPlusTreeBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "1000", "100000", "1000000" })
+    int size;
+
+    @Param({ "100" })
+    int rangeWidth;
+
+    BPlusTree tree;
+    BPlusTree.Cursor cursor;
+    HeapNode handle = new HeapNode(0, 10, 10);
+    int[] presentKeys = new int[PROBES];    // rides in the tree (even numbers)
+    int[] absentKeys = new int[PROBES];     // rides never in the tree (odd numbers)
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        tree = new BPlusTree();
+        cursor = tree.new Cursor();
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys) {
+            int cost = random.nextInt(1000);
+            int duration = 1 + random.nextInt(1000);
+            tree.insert(key, cost, duration, new HeapNode(key, cost, duration));
+        }
+        for (int i = 0; i < PROBES; i++) {
+            presentKeys[i] = 2 * random.nextInt(size);
+            absentKeys[i] = 2 * random.nextInt(size) + 1;
+        }
+    }
+
+    private int nextProbe() {
+        return next = (next + 1) & (PROBES - 1);
+    }
+
+    @Benchmark
+    public Object insertThenDelete() {
+        int key = absentKeys[nextProbe()];
+        tree.insert(key, 10, 10, handle);
+        return tree.remove(key);
+    }
+
+    @Benchmark
+    public Object deleteThenInsert() {
+        int key = presentKeys[nextProbe()];
+        HeapNode removed = tree.remove(key);
+        return tree.insert(key, 10, 10, removed);
+    }
+
+    @Benchmark
+    public Object find() {
+        return tree.find(presentKeys[nextProbe()]);
+    }
+
+    @Benchmark
+    public void rangeScan(Blackhole bh) {
+        int low = presentKeys[nextProbe()];
+        cursor.seek(low, low + rangeWidth);
+        while (cursor.next()) {
+            bh.consume(cursor.rideNumber());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package gatortaxi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+    Replays generated command logs through every configuration of gatorTaxi and compares output_file.txt with
+    what ReferenceModel expects. Each run is a gatorTaxi process of its own, started from this jar in a scratch
+    directory, so the command line is exercised the way it is used.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.CrossCheck [rides per log] [seed] [engine ...]
+
+    The configurations are every engine (or the ones named), and for the object and btree engines every --queue
+    and --policy, each run with and without --pipeline, and each of those once in a single process and once
+    with a --state-dir, the log then being split in PARTS and replayed by as many processes one after the other.
+    Every engine is also run with --input=mmap and with --format=binary. Sharded runs use 3 shards.
+
+    The logs are one of the original commands with GetNextRides and the analytics, one adding TTLs, pickup
+    locations and GetNextRideNear, and one of long GetNextRides batches. --state-dir turns TTLs off, so those
+    runs are compared with ReferenceModel ignoring TTLs too. Prints every run that differs, and exits with 1 if
+    any did; `make check` runs it with the defaults.
+*/
+public class CrossCheck {
+    private static final int PARTS = 3;
+    private static final int SHARDS = 3;
+    private static final String[][] LOGS = {
+        { "core", "insert=30,dispatch=8,update=14,cancel=8,print=8,range=8,batch=3,count=3,sum=3,mincost=3,rank=2,select=2" },
+        { "located", "insert=15,ttl=10,located=15,dispatch=8,update=12,cancel=8,print=6,range=6,near=8,batch=3,count=2,sum=2,mincost=2" },
+        { "batches", "insert=40,update=10,cancel=5,print=5,range=5,batch=5" },
+    };
+
+    // This jar, which holds gatorTaxi too, with absolute paths since the runs start in other directories.
+    private static final String CLASS_PATH = Stream.of(System.getProperty("java.class.path").split(java.io.File.pathSeparator))
+            .map(entry -> Paths.get(entry).toAbsolutePath().toString())
+            .collect(java.util.stream.Collectors.joining(java.io.File.pathSeparator));
+
+    private final Path scratch;
+    private final Map<String, Path> expected = new HashMap<>();
+    private int runs;
+    private int failures;
+
+    private CrossCheck(Path scratch) {
+        this.scratch = scratch;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int rides = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        List<String> engines = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : Arrays.asList(DispatchEngine.KINDS);
+
+        Path scratch = Files.createTempDirectory("gatortaxi-crosscheck-");
+        CrossCheck check = new CrossCheck(scratch);
+        try {
+            for (String[] log : LOGS) {
+                check.log(log[0], log[1], rides, seed, engines);
+            }
+        } finally {
+            delete(scratch);
+        }
+        System.out.printf("%d runs, %d differ%n", check.runs, check.failures);
+        if (check.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Generates the log 'name' and replays it through every configuration of 'engines'.
+    private void log(String name, String mix, int rides, long seed, List<String> engines) throws IOException, InterruptedException {
+        Path log = scratch.resolve(name + ".txt");
+        long commands = new WorkloadGenerator(rides, mix, seed)
+                .withMaxCost(60).withMaxDuration(60).withRangeWidth(50).withMaxTtl(2000)
+                .withMaxBatch(name.equals("batches") ? rides / 8 : 8)
+                .writeTo(log);
+        int before = failures;
+        int runsBefore = runs;
+        for (String engine : engines) {
+            boolean queued = engine.equals("object") || engine.equals("btree");
+            for (String queue : queued ? RideQueue.KINDS : new String[] { "binary" }) {
+                for (String policy : queued ? RidePolicy.KINDS : new String[] { "cost" }) {
+                    List<String> options = new ArrayList<>(List.of("--engine=" + engine));
+                    if (engine.equals("sharded")) {
+                        options.add("--shards=" + SHARDS);
+                    }
+                    if (queued) {
+                        options.add("--queue=" + queue);
+                        options.add("--policy=" + policy);
+                    }
+                    for (String pipeline : new String[] { "off", "on" }) {
+                        List<String> withPipeline = with(options, "--pipeline=" + pipeline);
+                        check(log, policy, withPipeline, false, false);
+                        if (!policy.equals("wait")) {
+                            check(log, policy, withPipeline, false, true);
+                        }
+                    }
+                    if (queue.equals("binary") && policy.equals("cost")) {
+                        check(log, policy, with(options, "--input=mmap"), false, false);
+                        check(log, policy, options, true, false);
+                        check(log, policy, options, true, true);
+                    }
+                }
+            }
+        }
+        System.out.printf("%-8s %,d commands, %d runs, %d differ%n", name, commands, runs - runsBefore, failures - before);
+    }
+
+    // Replays 'log' with 'options', in the binary format if 'binary', and split across restarts with a
+    // --state-dir if 'durable', and compares the results with ReferenceModel's.
+    private void check(Path log, String policy, List<String> options, boolean binary, boolean durable)
+            throws IOException, InterruptedException {
+        runs++;
+        Path dir = Files.createTempDirectory(scratch, "run-");
+        List<String> all = new ArrayList<>(options);
+        if (binary) {
+            all.add("--format=binary");
+        }
+        if (durable) {
+            all.add("--state-dir=" + dir.resolve("state"));
+        }
+        Path actual = dir.resolve("results.txt");
+        List<Path> parts = durable ? split(log, dir, PARTS) : List.of(log);
+        for (Path part : parts) {
+            if (!gatorTaxi(dir, part, all, binary, actual)) {
+                fail(log, all, "gatorTaxi failed on " + part.getFileName() + ":\n" + Files.readString(dir.resolve("stdout.txt")));
+                delete(dir);
+                return;
+            }
+        }
+        Path want = expected(log, policy, !durable);
+        String difference = firstDifference(actual, want);
+        if (difference != null) {
+            fail(log, all, difference);
+        }
+        delete(dir);
+    }
+
+    // Runs gatorTaxi on 'input' in 'dir' and appends its results, as text, to 'results'. Returns FALSE if it
+    // did not exit cleanly.
+    private static boolean gatorTaxi(Path dir, Path input, List<String> options, boolean binary, Path results)
+            throws IOException, InterruptedException {
+        if (binary) {
+            Path encoded = dir.resolve("input.bin");
+            BinaryFormat.encodeCommands(input, encoded);
+            input = encoded;
+        }
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC",
+                "-cp", CLASS_PATH, "gatortaxi.gatorTaxi", input.toString()));
+        command.addAll(options);
+        Process process = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectErrorStream(true).redirectOutput(dir.resolve("stdout.txt").toFile()).start();
+        if (process.waitFor() != 0) {
+            return false;
+        }
+        Path output = dir.resolve("output_file.txt");
+        if (binary) {
+            BinaryFormat.decodeResults(dir.resolve("output_file.bin"), output);
+        }
+        try (var out = Files.newOutputStream(results, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            Files.copy(output, out);
+        }
+        return true;
+    }
+
+    // The results ReferenceModel gives for 'log', computed once per policy and TTL setting.
+    private Path expected(Path log, String policy, boolean expiring) throws IOException {
+        String key = log.getFileName() + "-" + policy + (expiring ? "" : "-no-ttl");
+        Path file = expected.get(key);
+        if (file == null) {
+            file = scratch.resolve("expected-" + key + ".txt");
+            ReferenceModel.run(log, file, policy, expiring);
+            expected.put(key, file);
+        }
+        return file;
+    }
+
+    // Helps split 'log' into 'count' logs of consecutive lines in 'dir'.
+    private static List<Path> split(Path log, Path dir, int count) throws IOException {
+        List<String> lines = Files.readAllLines(log);
+        List<Path> parts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path part = dir.resolve("part-" + i + ".txt");
+            Files.write(part, lines.subList(lines.size() * i / count, lines.size() * (i + 1) / count));
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    // Describes the first line where 'actual' and 'expected' differ, or returns NULL if they are the same.
+    private static String firstDifference(Path actual, Path expected) throws IOException {
+        try (BufferedReader a = Files.newBufferedReader(actual); BufferedReader b = Files.newBufferedReader(expected)) {
+            for (long line = 1; ; line++) {
+                String got = a.readLine();
+                String want = b.readLine();
+                if (got == null && want == null) {
+                    return null;
+                }
+                if (got == null || !got.equals(want)) {
+                    return "line " + line + ": got " + clip(got) + ", expected " + clip(want);
+                }
+            }
+        }
+    }
+
+    private static String clip(String line) {
+        return line == null ? "end of file" : line.length() > 120 ? line.substring(0, 120) + "..." : line;
+    }
+
+    private void fail(Path log, List<String> options, String message) {
+        failures++;
+        System.out.println("DIFF  " + log.getFileName() + " " + String.join(" ", options) + ": " + message);
+    }
+
+    private static List<String> with(List<String> options, String option) {
+        List<String> copy = new ArrayList<>(options);
+        copy.add(option);
+        return copy;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package gatortaxi;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Channel that drops everything written to it, so replays measure the dispatcher and not the disk.
+class DiscardChannel implements WritableByteChannel {
+    long bytesWritten;
+
+    @Override
+    public int write(ByteBuffer src) {
+        int n = src.remaining();
+        src.position(src.limit());
+        bytesWritten += n;
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
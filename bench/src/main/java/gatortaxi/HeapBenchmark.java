@@ -0,0 +1,120 @@
+package gatortaxi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Single operations on a RideQueue holding 'size' rides. Every removal is paired with an insert so the size stays put.
+    updateTripOrCancel is the update/cancel-heavy mix of the dispatcher: half UpdateTrip case 1 (cost up by 10),
+    a quarter UpdateTrip case 3 (shorter duration) and a quarter CancelRide followed by a new Insert.
+        java -jar bench/target/benchmarks.jar HeapBenchmark -p queue=binary,quad,pairing
+    'policy' is the RidePolicy the queue orders by, e.g. -p policy=cost,cost-per-minute,wait.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeapBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "1000", "100000", "1000000" })
+    int size;
+
+    @Param({ "binary", "quad", "pairing" })
+    String queue;
+
+    @Param({ "cost" })
+    String policy;
+
+    RideQueue heap;
+    HeapNode[] nodes;
+    int[] costs = new int[PROBES];
+    int[] positions = new int[PROBES];
+    int[] kinds = new int[PROBES];
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(11);
+        heap = RideQueue.create(queue, RidePolicy.create(policy));
+        nodes = new HeapNode[size];
+        for (int i = 0; i < size; i++) {
+            nodes[i] = heap.newNode(i, random.nextInt(1000), 1 + random.nextInt(1000));
+            heap.insert(nodes[i]);
+        }
+        for (int i = 0; i < PROBES; i++) {
+            costs[i] = random.nextInt(1000);
+            positions[i] = random.nextInt(size);
+            kinds[i] = random.nextInt(4);
+        }
+    }
+
+    private int nextProbe() {
+        return next = (next + 1) & (PROBES - 1);
+    }
+
+    @Benchmark
+    public HeapNode removeMinThenInsert() {
+        HeapNode min = heap.removeMin();
+        min.tripCost = costs[nextProbe()];
+        heap.insert(min);
+        return min;
+    }
+
+    @Benchmark
+    public HeapNode deleteRandomNodeThenInsert() {
+        int probe = nextProbe();
+        HeapNode node = nodes[positions[probe]];
+        heap.deleteRandomNode(node);
+        node.tripCost = costs[probe];
+        heap.insert(node);
+        return node;
+    }
+
+    @Benchmark
+    public HeapNode fixUpdate() {
+        int probe = nextProbe();
+        HeapNode node = nodes[positions[probe]];
+        node.tripCost = costs[probe];
+        heap.fixUpdate(node);
+        return node;
+    }
+
+    @Benchmark
+    public HeapNode updateTripOrCancel() {
+        int probe = nextProbe();
+        HeapNode node = nodes[positions[probe]];
+        switch (kinds[probe]) {
+            case 0:
+            case 1:
+                node.tripCost += 10;
+                heap.fixUpdate(node);
+                break;
+            case 2:
+                node.tripDuration = 1 + node.tripDuration / 2;
+                heap.fixUpdate(node);
+                break;
+            default:
+                heap.deleteRandomNode(node);
+                node.tripCost = costs[probe];
+                node.tripDuration = 1 + costs[probe];
+                heap.insert(node);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,146 @@
+package gatortaxi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/*
+    Randomized check of the RideQueues against java.util.PriorityQueue: insert, removeMin, removeSmallest
+    (GetNextRides), delete by handle and key change (UpdateTrip changing a node in place, then fixUpdate), in
+    random order. After every
+    operation the queue's root and size must match the PriorityQueue, ordered by (tripCost, tripDuration,
+    rideNumber) as the default "cost" policy orders. Costs and durations come from a small range, so ties on
+    cost and on (cost, duration) are common.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.HeapStress [operations] [seed]
+
+    Every queue kind is checked in turn. The number of pending nodes drifts between empty and a few thousand,
+    so the queues grow and shrink through their whole range many times.
+*/
+public class HeapStress {
+    private static final int MAX_PENDING = 4096;
+    private static final int PHASE = 20_000;     // operations between turns of the mix
+    private static final int MAX_BATCH = 300;    // largest k of removeSmallest
+    private static final Comparator<HeapNode> ORDER = Comparator.<HeapNode>comparingInt(node -> node.tripCost)
+            .thenComparingInt(node -> node.tripDuration)
+            .thenComparingInt(node -> node.rideNumber);
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        for (String kind : RideQueue.KINDS) {
+            run(kind, operations, seed);
+        }
+    }
+
+    private static void run(String kind, int operations, long seed) {
+        RideQueue queue = RideQueue.create(kind, RidePolicy.create("cost"));
+        PriorityQueue<HeapNode> expected = new PriorityQueue<>(ORDER);
+        ArrayList<HeapNode> pending = new ArrayList<>();   // handles for delete and key change
+        SplittableRandom random = new SplittableRandom(seed);
+        int nextRide = 0;
+        long[] counts = new long[5];
+        HeapNode[] batch = new HeapNode[MAX_BATCH];
+
+        for (int i = 0; i < operations; i++) {
+            // the mix leans to inserts and to removals in turn, so the queue keeps filling up and draining
+            boolean filling = (i / PHASE) % 2 == 0;
+            int op;
+            if (pending.isEmpty()) {
+                op = 0;
+            } else if (pending.size() >= MAX_PENDING) {
+                op = 1 + random.nextInt(4);
+            } else {
+                int draw = random.nextInt(12);
+                op = draw < (filling ? 7 : 3) ? 0 : 1 + draw % 4;
+            }
+            counts[op]++;
+            switch (op) {
+                case 0: {
+                    HeapNode node = queue.newNode(nextRide++, random.nextInt(50), 1 + random.nextInt(20));
+                    queue.insert(node);
+                    expected.add(node);
+                    pending.add(node);
+                    break;
+                }
+                case 1: {
+                    HeapNode node = queue.removeMin();
+                    HeapNode want = expected.poll();
+                    if (node != want) {
+                        fail(kind, i, "removeMin returned ride " + describe(node) + ", expected " + describe(want));
+                    }
+                    forget(pending, node);
+                    break;
+                }
+                case 2: {
+                    HeapNode node = pending.get(random.nextInt(pending.size()));
+                    queue.deleteRandomNode(node);
+                    expected.remove(node);
+                    forget(pending, node);
+                    break;
+                }
+                case 3: {
+                    int k = random.nextInt(random.nextBoolean() ? 8 : MAX_BATCH);
+                    int taken = queue.removeSmallest(k, batch);
+                    if (taken != Math.min(k, expected.size())) {
+                        fail(kind, i, "removeSmallest(" + k + ") took " + taken + " of " + expected.size());
+                    }
+                    for (int j = 0; j < taken; j++) {
+                        HeapNode want = expected.poll();
+                        if (batch[j] != want) {
+                            fail(kind, i, "removeSmallest(" + k + ") returned " + describe(batch[j]) + " at " + j + ", expected " + describe(want));
+                        }
+                        forget(pending, batch[j]);
+                    }
+                    break;
+                }
+                default: {
+                    HeapNode node = pending.get(random.nextInt(pending.size()));
+                    expected.remove(node);
+                    node.tripCost = random.nextInt(50);
+                    node.tripDuration = 1 + random.nextInt(20);
+                    queue.fixUpdate(node);
+                    expected.add(node);
+                    break;
+                }
+            }
+            if (queue.size() != expected.size()) {
+                fail(kind, i, "size " + queue.size() + ", expected " + expected.size());
+            }
+            if (queue.getRoot() != expected.peek()) {
+                fail(kind, i, "root " + describe(queue.getRoot()) + ", expected " + describe(expected.peek()));
+            }
+        }
+        // drain what is left, which must come out in order
+        while (!expected.isEmpty()) {
+            HeapNode want = expected.poll();
+            HeapNode node = queue.removeMin();
+            if (node != want) {
+                fail(kind, operations, "drain returned " + describe(node) + ", expected " + describe(want));
+            }
+        }
+        if (queue.removeMin() != null) {
+            fail(kind, operations, "queue not empty after the drain");
+        }
+        System.out.printf("%-8s %,d operations OK (%,d inserts, %,d removeMin, %,d deletes, %,d removeSmallest, %,d key changes)%n",
+                kind, operations, counts[0], counts[1], counts[2], counts[3], counts[4]);
+    }
+
+    // Helps drop 'node' from the handle list, moving the last handle into its place.
+    private static void forget(ArrayList<HeapNode> pending, HeapNode node) {
+        int i = pending.indexOf(node);
+        HeapNode last = pending.remove(pending.size() - 1);
+        if (last != node) {
+            pending.set(i, last);
+        }
+    }
+
+    private static String describe(HeapNode node) {
+        return node == null ? "NULL" : "(" + node.rideNumber + "," + node.tripCost + "," + node.tripDuration + ")";
+    }
+
+    private static void fail(String kind, int operation, String message) {
+        throw new AssertionError(kind + " queue, operation " + operation + ": " + message);
+    }
+}
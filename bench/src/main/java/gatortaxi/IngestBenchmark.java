@@ -0,0 +1,74 @@
+package gatortaxi;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Parsing alone, without any engine work, for the two input modes of --input and for a binary log of the
+    same commands (--format=binary). Divide the file size printed at setup by the score to get the ingest rate.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestBenchmark {
+    @Param({ "1000000", "10000000" })
+    int rides;
+
+    @Param({ "read", "mmap", "binary" })
+    String input;
+
+    Path log;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        log = Files.createTempFile("gatortaxi-ingest-", ".txt");
+        new WorkloadGenerator(rides, WorkloadGenerator.DEFAULT_MIX, 1).writeTo(log);
+        if (input.equals("binary")) {
+            Path text = log;
+            log = Files.createTempFile("gatortaxi-ingest-", ".bin");
+            BinaryFormat.encodeCommands(text, log);
+            Files.delete(text);
+        }
+        System.out.println("input file: " + Files.size(log) + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(log);
+    }
+
+    @Benchmark
+    public long parse() throws IOException {
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+            CommandSource parser = input.equals("binary") ? new BinaryCommandSource(in)
+                    : input.equals("mmap") ? CommandParser.mapped(in) : new CommandParser(in);
+            Command cmd = new Command();
+            long sum = 0;
+            while (parser.next(cmd)) {
+                sum += cmd.type + cmd.arg(0);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package gatortaxi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    GetNextRideNear on 'size' pending rides picked up uniformly in an EXTENT x EXTENT square, think metres of a
+    city 100 km across. index asks the PickupIndex, bruteForce scans every ride for the best one within 'radius'
+    of the probe, as an engine without the index would have to. dispatchThenInsert removes the ride found and
+    picks it up again somewhere else, so it also pays for keeping the index up to date.
+        java -jar bench/target/benchmarks.jar NearbyBenchmark -p size=10000000
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class NearbyBenchmark {
+    private static final int PROBES = 1 << 12;
+    private static final int EXTENT = 100_000;
+
+    @Param({ "1000000", "10000000" })
+    int size;
+
+    @Param({ "200", "2000" })
+    int radius;
+
+    PickupIndex index;
+    // the same rides as plain columns, for the scan
+    long[] keys;
+    int[] xs;
+    int[] ys;
+    int[] probeX = new int[PROBES];
+    int[] probeY = new int[PROBES];
+    SplittableRandom random = new SplittableRandom(17);
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new PickupIndex(size);
+        keys = new long[size];
+        xs = new int[size];
+        ys = new int[size];
+        for (int ride = 0; ride < size; ride++) {
+            int cost = random.nextInt(1000);
+            int duration = 1 + random.nextInt(1000);
+            xs[ride] = random.nextInt(EXTENT);
+            ys[ride] = random.nextInt(EXTENT);
+            keys[ride] = RidePolicy.costKey(cost, duration);
+            index.add(ride, cost, duration, xs[ride], ys[ride]);
+        }
+        for (int i = 0; i < PROBES; i++) {
+            probeX[i] = random.nextInt(EXTENT);
+            probeY[i] = random.nextInt(EXTENT);
+        }
+    }
+
+    private int nextProbe() {
+        return next = (next + 1) & (PROBES - 1);
+    }
+
+    @Benchmark
+    public int index() {
+        int probe = nextProbe();
+        return index.nearest(probeX[probe], probeY[probe], radius);
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        int probe = nextProbe();
+        long x = probeX[probe];
+        long y = probeY[probe];
+        long limit = (long) radius * radius;
+        int best = -1;
+        long bestKey = Long.MAX_VALUE;
+        for (int ride = 0; ride < size; ride++) {
+            long dx = xs[ride] - x;
+            long dy = ys[ride] - y;
+            if (dx * dx + dy * dy <= limit && keys[ride] < bestKey) {   // rides are scanned in number order
+                best = ride;
+                bestKey = keys[ride];
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int dispatchThenInsert() {
+        int probe = nextProbe();
+        int entry = index.nearest(probeX[probe], probeY[probe], radius);
+        if (entry == PickupIndex.NIL) {
+            return -1;
+        }
+        int ride = index.ride(entry);
+        index.remove(ride);
+        index.add(ride, random.nextInt(1000), 1 + random.nextInt(1000), random.nextInt(EXTENT), random.nextInt(EXTENT));
+        return ride;
+    }
+}
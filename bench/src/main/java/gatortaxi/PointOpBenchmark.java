@@ -0,0 +1,101 @@
+package gatortaxi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Latency distribution of the point commands on an engine holding 'size' rides. SampleTime mode reports
+    percentiles, so the p99 of UpdateTrip can be compared between engines, e.g. the tree walk of the object
+    engine against the hash index of the slot engines:
+        java -jar bench/target/benchmarks.jar PointOpBenchmark -p engine=object,array
+    updateTrip alternates between a shorter and a longer duration, so rides are never cancelled.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PointOpBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "1000000" })
+    int size;
+
+    @Param({ "object", "btree", "array", "offheap" })
+    String engine;
+
+    DispatchEngine dispatch;
+    int[] presentKeys = new int[PROBES];
+    int[] absentKeys = new int[PROBES];
+    int next;
+    int longer;
+    final RideConsumer discard = (rideNumber, tripCost, tripDuration) -> { };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(13);
+        Options options = new Options();
+        options.engine = engine;
+        dispatch = DispatchEngine.create(options);
+        // inserted one at a time in random order, as a long-running dispatcher would have built it
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys) {
+            dispatch.insert(key, random.nextInt(1000), 100);
+        }
+        for (int i = 0; i < PROBES; i++) {
+            presentKeys[i] = 2 * random.nextInt(size);
+            absentKeys[i] = 2 * random.nextInt(size) + 1;
+        }
+    }
+
+    private int nextProbe() {
+        return next = (next + 1) & (PROBES - 1);
+    }
+
+    @Benchmark
+    public void updateTrip() {
+        longer ^= 1;
+        dispatch.updateTrip(presentKeys[nextProbe()], longer == 1 ? 101 : 100);
+    }
+
+    @Benchmark
+    public boolean print() {
+        return dispatch.print(presentKeys[nextProbe()], discard);
+    }
+
+    @Benchmark
+    public boolean duplicateCheck() {
+        return dispatch.insert(presentKeys[nextProbe()], 1, 1);
+    }
+
+    @Benchmark
+    public boolean insertThenCancel() {
+        int key = absentKeys[nextProbe()];
+        boolean inserted = dispatch.insert(key, 1, 1);
+        dispatch.cancelRide(key);
+        return inserted;
+    }
+}
@@ -0,0 +1,92 @@
+package gatortaxi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Single operations on a RedBlackTree holding 'size' rides. Mutations come in pairs so the tree keeps its size.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedBlackTreeBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "1000", "100000", "1000000" })
+    int size;
+
+    @Param({ "100" })
+    int rangeWidth;
+
+    RedBlackTree tree;
+    int[] presentKeys = new int[PROBES];    // rides in the tree (even numbers)
+    int[] absentKeys = new int[PROBES];     // rides never in the tree (odd numbers)
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        tree = new RedBlackTree();
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys) {
+            tree.insertIntoRBTree(new Node(key, random.nextInt(1000), 1 + random.nextInt(1000)));
+        }
+        for (int i = 0; i < PROBES; i++) {
+            presentKeys[i] = 2 * random.nextInt(size);
+            absentKeys[i] = 2 * random.nextInt(size) + 1;
+        }
+    }
+
+    private int nextProbe() {
+        return next = (next + 1) & (PROBES - 1);
+    }
+
+    @Benchmark
+    public Object insertThenDelete() {
+        int key = absentKeys[nextProbe()];
+        tree.insertIntoRBTree(new Node(key, 10, 10));
+        return tree.deleteNodeFromRBTree(key);
+    }
+
+    @Benchmark
+    public Object deleteThenInsert() {
+        int key = presentKeys[nextProbe()];
+        tree.deleteNodeFromRBTree(key);
+        return tree.insertIntoRBTree(new Node(key, 10, 10));
+    }
+
+    @Benchmark
+    public Object searchSingleRide() {
+        return tree.searchSingleRide(presentKeys[nextProbe()]);
+    }
+
+    @Benchmark
+    public void searchRidesInRange(Blackhole bh) {
+        int low = presentKeys[nextProbe()];
+        tree.searchRidesInRange(low, low + rangeWidth, (rideNumber, tripCost, tripDuration) -> bh.consume(rideNumber));
+    }
+}
@@ -0,0 +1,300 @@
+package gatortaxi;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*
+    The dispatcher written the obvious way, as the oracle CrossCheck compares gatorTaxi against: the pending
+    rides in a TreeMap by ride number and a TreeSet in dispatch order, with none of the engines, queues, caches
+    or batching of the real thing. GetNextRideNear scans every ride. It reads a text command log and writes the
+    lines output_file.txt should hold.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.ReferenceModel <commands.txt> <expected.txt> [policy] [ttl=on|off]
+
+    'policy' is one of RidePolicy.KINDS (default cost). With ttl=off the TTL argument of Insert is ignored, as
+    gatorTaxi does with --ttl-clock=off and --state-dir. Every line must be a well-formed command, as the lines
+    of WorkloadGenerator are.
+*/
+public class ReferenceModel {
+    private static final String NO_ACTIVE = "No active ride requests";
+
+    private static final class Ride {
+        final int number;
+        int cost;
+        int duration;
+        final long sequence;    // order of arrival, the key of the "wait" policy
+        final boolean located;
+        final int x;
+        final int y;
+
+        Ride(int number, int cost, int duration, long sequence, boolean located, int x, int y) {
+            this.number = number;
+            this.cost = cost;
+            this.duration = duration;
+            this.sequence = sequence;
+            this.located = located;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + number + "," + cost + "," + duration + ")";
+        }
+    }
+
+    private static final Comparator<Ride> BY_COST = Comparator.<Ride>comparingInt(ride -> ride.cost)
+            .thenComparingInt(ride -> ride.duration)
+            .thenComparingInt(ride -> ride.number);
+
+    private final TreeMap<Integer, Ride> rides = new TreeMap<>();
+    private final TreeSet<Ride> queue;
+    private final boolean expiring;
+    private final HashMap<Integer, Long> dueOf = new HashMap<>();     // the command a ride's TTL runs out at
+    private final PriorityQueue<long[]> expiries = new PriorityQueue<>(Comparator.comparingLong(entry -> entry[0]));
+    private long arrivals;
+    private long commandNumber;
+
+    public ReferenceModel(String policy, boolean expiring) {
+        this.expiring = expiring;
+        switch (policy) {
+            case "cost":
+                queue = new TreeSet<>(BY_COST);
+                break;
+            case "cost-per-minute":
+                queue = new TreeSet<>(Comparator.<Ride>comparingDouble(ride -> (double) ride.cost / Math.max(1, ride.duration))
+                        .thenComparingInt(ride -> ride.number));
+                break;
+            case "wait":
+                queue = new TreeSet<>(Comparator.<Ride>comparingLong(ride -> ride.sequence)
+                        .thenComparingInt(ride -> ride.number));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown policy " + policy);
+        }
+    }
+
+    // Replays the text log 'commands' and writes the expected results to 'expected'.
+    public static void run(Path commands, Path expected, String policy, boolean expiring) throws IOException {
+        ReferenceModel model = new ReferenceModel(policy, expiring);
+        try (BufferedReader in = Files.newBufferedReader(commands);
+             BufferedWriter out = Files.newBufferedWriter(expected)) {
+            StringBuilder answer = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                answer.setLength(0);
+                model.execute(line, answer);
+                out.append(answer);
+            }
+        }
+    }
+
+    // Runs one line of the log and appends the lines it answers, each ended by '\n', to 'out'.
+    public void execute(String line, StringBuilder out) {
+        line = line.trim();
+        int open = line.indexOf('(');
+        int close = line.lastIndexOf(')');
+        if (open < 0 || close < open) {
+            throw new IllegalArgumentException("not a command: " + line);
+        }
+        String name = line.substring(0, open).trim();
+        String inside = line.substring(open + 1, close).trim();
+        String[] parts = inside.isEmpty() ? new String[0] : inside.split(",");
+        int[] args = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            args[i] = Integer.parseInt(parts[i].trim());
+        }
+
+        commandNumber++;
+        expire();
+        switch (name) {
+            case "Insert":
+                insert(args, out);
+                break;
+            case "GetNextRide":
+                next(out);
+                break;
+            case "GetNextRides":
+                for (int i = 0; i < args[0]; i++) {
+                    next(out);
+                }
+                break;
+            case "GetNextRideNear":
+                nextNear(args[0], args[1], args[2], out);
+                break;
+            case "Print":
+                if (args.length == 1) {
+                    Ride ride = rides.get(args[0]);
+                    out.append(ride == null ? "(0,0,0)" : ride.toString()).append('\n');
+                } else {
+                    String separator = "";
+                    int before = out.length();
+                    if (args[0] <= args[1]) {
+                        for (Ride ride : rides.subMap(args[0], true, args[1], true).values()) {
+                            out.append(separator).append(ride);
+                            separator = ",";
+                        }
+                    }
+                    if (out.length() == before) {
+                        out.append("(0,0,0)");
+                    }
+                    out.append('\n');
+                }
+                break;
+            case "UpdateTrip":
+                updateTrip(args[0], args[1]);
+                break;
+            case "CancelRide":
+                remove(args[0]);
+                break;
+            case "Count":
+                out.append(args[0] > args[1] ? 0 : rides.subMap(args[0], true, args[1], true).size()).append('\n');
+                break;
+            case "SumCost":
+                long sum = 0;
+                if (args[0] <= args[1]) {
+                    for (Ride ride : rides.subMap(args[0], true, args[1], true).values()) {
+                        sum += ride.cost;
+                    }
+                }
+                out.append(sum).append('\n');
+                break;
+            case "MinCost":
+                Ride cheapest = null;
+                if (args[0] <= args[1]) {
+                    for (Ride ride : rides.subMap(args[0], true, args[1], true).values()) {
+                        if (cheapest == null || BY_COST.compare(ride, cheapest) < 0) {
+                            cheapest = ride;
+                        }
+                    }
+                }
+                out.append(cheapest == null ? "(0,0,0)" : cheapest.toString()).append('\n');
+                break;
+            case "Rank":
+                out.append(rides.headMap(args[0], true).size()).append('\n');
+                break;
+            case "Select":
+                Ride selected = null;
+                int k = args[0];
+                if (k >= 1 && k <= rides.size()) {
+                    for (Ride ride : rides.values()) {
+                        if (--k == 0) {
+                            selected = ride;
+                            break;
+                        }
+                    }
+                }
+                out.append(selected == null ? "(0,0,0)" : selected.toString()).append('\n');
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + name);
+        }
+    }
+
+    // Insert(ride, cost, duration[, ttl]) or Insert(ride, cost, duration, x, y[, ttl]).
+    private void insert(int[] args, StringBuilder out) {
+        if (rides.containsKey(args[0])) {
+            out.append("Duplicate Ride Number\n");
+            return;
+        }
+        boolean located = args.length >= 5;
+        Ride ride = new Ride(args[0], args[1], args[2], arrivals++, located, located ? args[3] : 0, located ? args[4] : 0);
+        rides.put(ride.number, ride);
+        queue.add(ride);
+        if (expiring && (args.length == 4 || args.length == 6)) {
+            long due = commandNumber + Math.max(1, args[args.length - 1]);
+            dueOf.put(ride.number, due);
+            expiries.add(new long[] { due, ride.number });
+        }
+    }
+
+    private void next(StringBuilder out) {
+        Ride ride = queue.pollFirst();
+        if (ride == null) {
+            out.append(NO_ACTIVE).append('\n');
+            return;
+        }
+        rides.remove(ride.number);
+        dueOf.remove(ride.number);
+        out.append(ride).append('\n');
+    }
+
+    // The cheapest located ride within 'radius' of (x, y), in cost order whatever the policy.
+    private void nextNear(int x, int y, int radius, StringBuilder out) {
+        Ride best = null;
+        for (Ride ride : rides.values()) {
+            if (!ride.located || radius < 0) {
+                continue;
+            }
+            long dx = ride.x - x;
+            long dy = ride.y - y;
+            if (dx * dx + dy * dy <= (long) radius * radius && (best == null || BY_COST.compare(ride, best) < 0)) {
+                best = ride;
+            }
+        }
+        if (best == null) {
+            out.append(NO_ACTIVE).append('\n');
+            return;
+        }
+        remove(best.number);
+        out.append(best).append('\n');
+    }
+
+    // The rules of UpdateTrip: a shorter trip keeps its cost, one up to twice as long costs 10 more, and a
+    // longer one is cancelled.
+    private void updateTrip(int number, int duration) {
+        Ride ride = rides.get(number);
+        if (ride == null) {
+            return;
+        }
+        if (duration > 2 * ride.duration) {
+            remove(number);
+            return;
+        }
+        queue.remove(ride);
+        if (duration > ride.duration) {
+            ride.cost += 10;
+        }
+        ride.duration = duration;
+        queue.add(ride);
+    }
+
+    private void remove(int number) {
+        Ride ride = rides.remove(number);
+        if (ride != null) {
+            queue.remove(ride);
+            dueOf.remove(number);
+        }
+    }
+
+    // Cancels the rides whose TTL ran out by the current command, before it runs.
+    private void expire() {
+        while (!expiries.isEmpty() && expiries.peek()[0] <= commandNumber) {
+            long[] entry = expiries.poll();
+            int number = (int) entry[1];
+            Long due = dueOf.get(number);
+            if (due != null && due == entry[0]) {
+                remove(number);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ReferenceModel <commands.txt> <expected.txt> [policy] [ttl=on|off]");
+            System.exit(1);
+        }
+        String policy = args.length > 2 ? args[2] : "cost";
+        boolean expiring = args.length <= 3 || !args[3].equals("ttl=off");
+        run(Paths.get(args[0]), Paths.get(args[1]), policy, expiring);
+    }
+}
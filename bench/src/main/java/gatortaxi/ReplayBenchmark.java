@@ -0,0 +1,114 @@
+package gatortaxi;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    End-to-end replay of a generated command log: parsing, tree and heap work and output formatting.
+    Only the disk write is left out. The largest sizes need a big heap, e.g.
+        java -jar bench/target/benchmarks.jar ReplayBenchmark -p rides=10000000 -jvmArgs -Xmx8g
+    Add "-prof gc" to compare the allocation rate and GC time of the engines, and "-p pipeline=off,on" to
+    compare the serial loop with the three-stage Pipeline (which needs at least three cores to pay off).
+    "-p engine=object -p queue=binary,quad,pairing" compares the RideQueues of the object engine, e.g. on the
+    update/cancel-heavy mix "-p mix=insert=30;dispatch=10;update=35;cancel=20;print=5".
+    "-p metrics=off,on" shows what --metrics costs; with metrics off the score should match a build without Metrics.
+    Rides expire on the logical clock as with gatorTaxi's default --ttl-clock; "-p ttlClock=off,logical" on a mix
+    with a ttl weight, e.g. "-p mix=insert=20;ttl=20;dispatch=15;update=15;cancel=10;print=10;range=10",
+    shows what the TimingWheel costs.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReplayBenchmark {
+    @Param({ "1000", "10000", "100000", "1000000", "10000000" })
+    int rides;
+
+    @Param({ WorkloadGenerator.DEFAULT_MIX })
+    String mix;
+
+    @Param({ "object", "btree", "array", "offheap", "sharded" })
+    String engine;
+
+    @Param({ "off" })
+    String pipeline;
+
+    @Param({ "binary" })
+    String queue;
+
+    @Param({ "off" })
+    String metrics;
+
+    @Param({ "logical" })
+    String ttlClock;
+
+    Path log;
+    Path metricsFile;
+    DispatchEngine lastEngine;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        log = Files.createTempFile("gatortaxi-replay-", ".txt");
+        new WorkloadGenerator(rides, mix, 1).writeTo(log);
+        if (metrics.equals("on")) {
+            metricsFile = Files.createTempFile("gatortaxi-metrics-", ".json");
+            Metrics.start(metricsFile.toString(), Long.MAX_VALUE);
+        }
+    }
+
+    // One engine per invocation, and an iteration of SingleShotTime is one invocation.
+    @TearDown(Level.Iteration)
+    public void closeEngine() throws IOException {
+        lastEngine.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(log);
+        if (metricsFile != null) {
+            Metrics.finish(0, lastEngine);
+            Files.deleteIfExists(metricsFile);
+        }
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+            DiscardChannel discard = new DiscardChannel();
+            OutputSink out = new OutputSink(discard);
+            CommandParser parser = new CommandParser(in);
+            Options options = new Options();
+            options.engine = engine;
+            options.queue = queue;
+            lastEngine = DispatchEngine.create(options);
+            if (!ttlClock.equals("off")) {
+                lastEngine = new ExpiringDispatchEngine(lastEngine, ttlClock.equals("wall"));
+            }
+            long commands = pipeline.equals("on")
+                    ? Pipeline.run(parser, lastEngine, out)
+                    : gatorTaxi.replay(parser, lastEngine, out);
+            out.flush();
+            return commands + discard.bytesWritten;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package gatortaxi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/*
+    Load generator for gatorTaxi --serve. Every connection replays its own WorkloadGenerator log against the
+    shared server, keeping up to 'window' commands in flight, and the latency of a command is the time from
+    handing it to the socket to reading the empty line that ends its answer.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.ServerLoadGenerator <port|unix:path|local[:readers]> [connections] [rides per connection] [window]
+
+    "local" starts a Server on a free loopback port inside this JVM and first checks that one connection gets
+    the same answers as a replay of the same log, so it runs as a self-contained throughput/latency test.
+    "local:<n>" does the same with the Print, Count and SumCost answered by n snapshot reader threads, as
+    --snapshot-reads=<n> does; `make check` runs it that way.
+*/
+public class ServerLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: ServerLoadGenerator <port|unix:path|local[:readers]> [connections] [rides per connection] [window]");
+            System.exit(1);
+        }
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rides = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        Server server = null;
+        Thread serverThread = null;
+        String address = args[0];
+        if (address.equals("local") || address.startsWith("local:")) {
+            int readers = address.equals("local") ? 0 : Integer.parseInt(address.substring("local:".length()));
+            DispatchEngine engine = DispatchEngine.create(new Options());
+            SnapshotReadEngine snapshots = null;
+            if (readers > 0) {
+                engine = snapshots = new SnapshotReadEngine(engine);
+            }
+            server = new Server(new ExpiringDispatchEngine(engine, false), 0, snapshots, readers);
+            server.bind("0");
+            address = server.address();
+            Server running = server;
+            serverThread = new Thread(() -> {
+                try {
+                    running.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "server");
+            serverThread.start();
+            checkAnswers(address);
+        }
+        try {
+            load(address, connections, rides, window);
+        } finally {
+            if (server != null) {
+                server.stop();
+                serverThread.join();
+            }
+        }
+    }
+
+    // Sends one log over one connection and compares the answers, without their empty lines, to a replay.
+    // The server must not hold any rides yet.
+    private static void checkAnswers(String address) throws IOException, InterruptedException {
+        Path log = Files.createTempFile("gatortaxi-serve-", ".txt");
+        try {
+            new WorkloadGenerator(20_000, "insert=40;dispatch=15;update=15;cancel=10;print=10;range=10;ttl=10", 7).writeTo(log);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            try (var in = Files.newByteChannel(log)) {
+                OutputSink sink = new OutputSink(Channels.newChannel(expected));
+                gatorTaxi.replay(new CommandParser(in), new ExpiringDispatchEngine(DispatchEngine.create(new Options()), false), sink);
+                sink.flush();
+            }
+            Client client = new Client(address, Files.readAllLines(log), 64);
+            client.run();
+            StringBuilder actual = new StringBuilder();
+            for (String line : client.answers.toString(StandardCharsets.US_ASCII).split("\n")) {
+                if (!line.isEmpty()) {
+                    actual.append(line).append('\n');
+                }
+            }
+            if (!actual.toString().equals(expected.toString(StandardCharsets.US_ASCII))) {
+                throw new AssertionError("answers of the server differ from a replay of the same log");
+            }
+            System.out.println("answers match a replay of the same " + client.latencies.length + " commands");
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static void load(String address, int connections, int rides, int window) throws Exception {
+        Client[] clients = new Client[connections];
+        for (int i = 0; i < connections; i++) {
+            Path log = Files.createTempFile("gatortaxi-load-", ".txt");
+            new WorkloadGenerator(rides, WorkloadGenerator.DEFAULT_MIX, 100 + i).writeTo(log);
+            clients[i] = new Client(address, Files.readAllLines(log), window);
+            clients[i].keepAnswers = false;
+            Files.delete(log);
+        }
+        Thread[] threads = new Thread[connections];
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            Client client = clients[i];
+            threads[i] = new Thread(() -> {
+                try {
+                    client.run();
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "client-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = new long[0];
+        for (Client client : clients) {
+            int from = all.length;
+            all = Arrays.copyOf(all, from + client.latencies.length);
+            System.arraycopy(client.latencies, 0, all, from, client.latencies.length);
+        }
+        Arrays.sort(all);
+        System.out.printf("%d connections, window %d: %d commands in %.2f s, %.0f commands/s%n",
+                connections, window, all.length, elapsed / 1e9, all.length / (elapsed / 1e9));
+        System.out.printf("latency us: p50 %.1f  p90 %.1f  p99 %.1f  p999 %.1f  max %.1f%n",
+                percentile(all, 50), percentile(all, 90), percentile(all, 99), percentile(all, 99.9), all[all.length - 1] / 1e3);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+
+    // One connection: a sender thread writes the commands while the calling thread reads the answers.
+    private static final class Client {
+        private final String address;
+        private final byte[][] commands;
+        private final Semaphore inFlight;
+        private final long[] sentAt;
+        final long[] latencies;
+        final ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        boolean keepAnswers = true;
+
+        Client(String address, List<String> lines, int window) {
+            this.address = address;
+            this.commands = new byte[lines.size()][];
+            for (int i = 0; i < commands.length; i++) {
+                commands[i] = (lines.get(i) + "\n").getBytes(StandardCharsets.US_ASCII);
+            }
+            this.inFlight = new Semaphore(window);
+            this.sentAt = new long[commands.length];
+            this.latencies = new long[commands.length];
+        }
+
+        void run() throws IOException, InterruptedException {
+            try (SocketChannel channel = open(address)) {
+                Thread sender = new Thread(() -> send(channel), "sender");
+                sender.start();
+                receive(channel);
+                sender.join();
+            }
+        }
+
+        // Helps write the commands, as many at once as the window allows.
+        private void send(SocketChannel channel) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            try {
+                int next = 0;
+                while (next < commands.length) {
+                    inFlight.acquire();
+                    buffer.clear();
+                    do {
+                        sentAt[next] = System.nanoTime();
+                        buffer.put(commands[next++]);
+                    } while (next < commands.length && buffer.remaining() >= 64 && inFlight.tryAcquire());
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.shutdownOutput();
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // Helps read answers until every command got one.
+        private void receive(SocketChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            int answered = 0;
+            boolean lineStart = true;
+            while (answered < commands.length) {
+                buffer.clear();
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("server closed the connection after " + answered + " answers");
+                }
+                long now = System.nanoTime();
+                buffer.flip();
+                if (keepAnswers) {
+                    answers.write(buffer.array(), 0, buffer.limit());
+                }
+                for (int i = 0; i < buffer.limit(); i++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n') {
+                        if (lineStart) {
+                            latencies[answered] = now - sentAt[answered];
+                            answered++;
+                            inFlight.release();
+                        }
+                        lineStart = true;
+                    } else {
+                        lineStart = false;
+                    }
+                }
+            }
+        }
+
+        private static SocketChannel open(String address) throws IOException {
+            if (address.startsWith("unix:")) {
+                SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                channel.connect(UnixDomainSocketAddress.of(address.substring("unix:".length())));
+                return channel;
+            }
+            return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package gatortaxi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/*
+    Checks what a Server does with a client whose answers outgrow the output limit, with a --state-dir engine.
+    The limit is lowered to OUTPUT_LIMIT so a Print over a few thousand rides passes it, even with what the
+    connection's OutputSink still holds, since an overflow is only seen once the sink hands its buffer over.
+    Client A sends, in one write, RIDES Inserts, a Print over all of them and more Inserts after it. The server
+    must close A's connection, and by then the Inserts before the Print must be on disk: a copy of the state
+    directory taken right after A saw the connection close, as a crash would leave it, must recover exactly
+    RIDES rides. The Inserts after the Print must not have run. Client B, connected after that, must still be
+    answered.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.ServerOverflowCheck
+
+    `make check` runs it.
+*/
+public class ServerOverflowCheck {
+    private static final int OUTPUT_LIMIT = 4096;
+    private static final int RIDES = 2000;     // fewer than a WriteAheadLog group, so only a sync puts them on disk
+    private static final int EXTRA_RIDES = 100;     // sent after the Print, never run
+
+    public static void main(String[] args) throws Exception {
+        Path scratch = Files.createTempDirectory("gatortaxi-overflow-");
+        Path state = scratch.resolve("state");
+        DispatchEngine engine = new DurableDispatchEngine(DispatchEngine.create(new Options()), new StateStore(state), 1_000_000);
+        Server server = new Server(engine, 0);
+        server.setMaxOutput(OUTPUT_LIMIT);
+        server.bind("0");
+        String address = server.address();
+        Throwable[] failure = new Throwable[1];
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException | RuntimeException e) {
+                failure[0] = e;
+            }
+        }, "server");
+        serverThread.start();
+        try {
+            StringBuilder commands = new StringBuilder();
+            for (int ride = 1; ride <= RIDES; ride++) {
+                commands.append(insert(ride));
+            }
+            commands.append("Print(1,").append(RIDES).append(")\n");
+            for (int ride = RIDES + 1; ride <= RIDES + EXTRA_RIDES; ride++) {
+                commands.append(insert(ride));
+            }
+            exchange(address, commands.toString());    // returns once A's connection is closed
+            System.out.println("client A: connection closed after answers longer than " + OUTPUT_LIMIT + " bytes");
+
+            Path image = scratch.resolve("crash-image");
+            copy(state, image);
+            DispatchEngine recovered = new DurableDispatchEngine(DispatchEngine.create(new Options()), new StateStore(image), 1_000_000);
+            int size = recovered.size();
+            recovered.close();
+            if (size != RIDES) {
+                throw new AssertionError("a crash right after the overflow recovers " + size + " rides, expected " + RIDES);
+            }
+            System.out.println("crash image: " + size + " rides recovered");
+
+            String answers = exchange(address, "Print(1,3)\nCount(1," + (RIDES + EXTRA_RIDES) + ")\n");
+            String expected = "(1,11,6),(2,12,7),(3,13,8)\n\n" + RIDES + "\n\n";
+            if (!answers.equals(expected)) {
+                throw new AssertionError("client B got " + answers.replace("\n", "\\n") + ", expected " + expected.replace("\n", "\\n"));
+            }
+            System.out.println("client B: answered after the overflow, " + RIDES + " rides pending");
+        } finally {
+            server.stop();
+            serverThread.join();
+            engine.close();
+            delete(scratch);
+        }
+        if (failure[0] != null) {
+            throw new AssertionError("the server failed", failure[0]);
+        }
+    }
+
+    private static String insert(int ride) {
+        return "Insert(" + ride + "," + (10 + ride % 7) + "," + (5 + ride % 11) + ")\n";
+    }
+
+    // Sends 'commands' in one write, shuts down the sending side and returns what arrives until the server closes
+    // the connection. A reset counts as closed, since a server closing with lines still unread may send one.
+    private static String exchange(String address, String commands) throws IOException {
+        ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)))) {
+            ByteBuffer buffer = ByteBuffer.wrap(commands.getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.shutdownOutput();
+            ByteBuffer in = ByteBuffer.allocate(1 << 16);
+            try {
+                while (channel.read(in) >= 0) {
+                    in.flip();
+                    answers.write(in.array(), 0, in.limit());
+                    in.clear();
+                }
+            } catch (IOException reset) {
+                // closed by the server
+            }
+        }
+        return answers.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static void copy(Path from, Path to) throws IOException {
+        try (Stream<Path> files = Files.walk(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(from.relativize(file).toString()));
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
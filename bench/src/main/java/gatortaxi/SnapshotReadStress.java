@@ -0,0 +1,110 @@
+package gatortaxi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Stress check for SnapshotReadEngine: one writer keeps inserting, updating and cancelling rides while
+    reader threads query snapshots with Print(ride) and Print(lo,hi).
+
+    Every ride is inserted with tripCost = 10 * tripDuration + rideNumber % 10, and every update lengthens
+    the trip by one, which the UpdateTrip rules answer with tripCost + 10. So the invariant holds for every
+    version of every ride, and a reader that saw the cost of one version with the duration of another (a
+    torn read) would break it. Readers also check that ranges come back in ride number order.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.SnapshotReadStress [seconds per round] [max readers]
+
+    Reader throughput is printed for 1, 2, 4, ... readers, to show how reads scale with cores.
+*/
+public class SnapshotReadStress {
+    private static final int KEYS = 1 << 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int maxReaders = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            round(readers, seconds);
+        }
+    }
+
+    private static void round(int readerCount, int seconds) throws InterruptedException {
+        SnapshotReadEngine engine = new SnapshotReadEngine(new ArrayDispatchEngine(KEYS));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        AtomicLong violations = new AtomicLong();
+
+        Thread writer = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(1);
+            long count = 0;
+            while (running.get()) {
+                int ride = random.nextInt(KEYS);
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    int duration = 1 + random.nextInt(1000);
+                    engine.insert(ride, 10 * duration + ride % 10, duration);
+                } else if (op < 8) {
+                    int[] duration = new int[1];
+                    if (engine.print(ride, (r, c, d) -> duration[0] = d)) {
+                        engine.updateTrip(ride, duration[0] + 1);
+                    }
+                } else {
+                    engine.cancelRide(ride);
+                }
+                count++;
+            }
+            writes.set(count);
+        }, "writer");
+
+        Thread[] readers = new Thread[readerCount];
+        for (int i = 0; i < readerCount; i++) {
+            long seed = 100 + i;
+            readers[i] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                int[] previous = new int[1];
+                long count = 0;
+                while (running.get()) {
+                    RideSnapshot snapshot = engine.snapshot();
+                    int ride = random.nextInt(KEYS);
+                    if (random.nextBoolean()) {
+                        snapshot.find(ride, (r, c, d) -> check(r, c, d, violations));
+                    } else {
+                        previous[0] = Integer.MIN_VALUE;
+                        snapshot.forEachInRange(ride, ride + 100, (r, c, d) -> {
+                            check(r, c, d, violations);
+                            if (r <= previous[0]) {
+                                violations.incrementAndGet();
+                            }
+                            previous[0] = r;
+                        });
+                    }
+                    count++;
+                }
+                reads.addAndGet(count);
+            }, "reader-" + i);
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        System.out.printf("%d readers: %,d reads/s, %,d writes/s, %d violations%n", readerCount,
+                reads.get() / seconds, writes.get() / seconds, violations.get());
+        if (violations.get() != 0) {
+            throw new AssertionError("readers saw torn or unordered rides");
+        }
+    }
+
+    private static void check(int ride, int cost, int duration, AtomicLong violations) {
+        if (cost != 10 * duration + ride % 10) {
+            violations.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package gatortaxi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/*
+    Generates synthetic command logs shaped like sample_input_test.txt. The mix sets the relative weight of
+    each command kind and the log ends once 'rides' Insert commands were written. Ride numbers are drawn
+    from twice as many keys as rides, so some inserts are duplicates and some updates, cancels and prints miss.
+
+        java -cp bench/target/benchmarks.jar gatortaxi.WorkloadGenerator <rides> <file> [mix] [seed]
+
+    where mix looks like "insert=40,dispatch=15,update=15,cancel=10,print=10,range=10". Entries may also be
+    separated by ';', since JMH splits -p values at commas. A "ttl" weight adds Inserts with a TTL of up to
+    maxTtl commands as a 4th argument; they count as inserted rides too.
+
+    The other commands have weights of their own, all 0 by default, so the logs of the mixes above stay the
+    same: "located" (an Insert with a pickup location, which also gets a TTL in the ttl:insert ratio of the
+    mix), "near" (GetNextRideNear), "batch" (GetNextRides of -1 up to maxBatch rides), "count", "sum",
+    "mincost", "rank" and "select". CrossCheck replays such logs against ReferenceModel.
+*/
+public class WorkloadGenerator {
+    public static final String DEFAULT_MIX = "insert=40,dispatch=15,update=15,cancel=10,print=10,range=10";
+
+    private static final String[] KINDS = { "insert", "dispatch", "update", "cancel", "print", "range", "ttl",
+            "located", "near", "batch", "count", "sum", "rank", "select", "mincost" };
+    private static final int INSERT = 0, DISPATCH = 1, UPDATE = 2, CANCEL = 3, PRINT = 4, RANGE = 5, TTL = 6,
+            LOCATED = 7, NEAR = 8, BATCH = 9, COUNT = 10, SUM = 11, RANK = 12, SELECT = 13, MIN_COST = 14;
+
+    private final int rides;
+    private final int[] cumulativeWeights = new int[KINDS.length];
+    private final long seed;
+    private int maxCost = 1000;
+    private int maxDuration = 1000;
+    private int rangeWidth = 100;
+    private int maxTtl = 10000;
+    private int maxCoordinate = 100;
+    private int maxRadius = 80;
+    private int maxBatch = 8;
+    private final int ttlWeight;
+    private final int insertWeight;
+
+    public WorkloadGenerator(int rides, String mix, long seed) {
+        this.rides = rides;
+        this.seed = seed;
+        int[] weights = parseMix(mix);
+        ttlWeight = weights[TTL];
+        insertWeight = weights[INSERT];
+        int total = 0;
+        for (int i = 0; i < KINDS.length; i++) {
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+        if (weights[INSERT] + weights[TTL] + weights[LOCATED] <= 0) {
+            throw new IllegalArgumentException("the mix needs a positive insert weight: " + mix);
+        }
+    }
+
+    public WorkloadGenerator withMaxCost(int maxCost) {
+        this.maxCost = maxCost;
+        return this;
+    }
+
+    public WorkloadGenerator withMaxDuration(int maxDuration) {
+        this.maxDuration = maxDuration;
+        return this;
+    }
+
+    public WorkloadGenerator withRangeWidth(int rangeWidth) {
+        this.rangeWidth = rangeWidth;
+        return this;
+    }
+
+    public WorkloadGenerator withMaxTtl(int maxTtl) {
+        this.maxTtl = maxTtl;
+        return this;
+    }
+
+    // Pickup locations and GetNextRideNear centres lie in [-maxCoordinate, maxCoordinate] on both axes.
+    public WorkloadGenerator withMaxCoordinate(int maxCoordinate) {
+        this.maxCoordinate = maxCoordinate;
+        return this;
+    }
+
+    public WorkloadGenerator withMaxRadius(int maxRadius) {
+        this.maxRadius = maxRadius;
+        return this;
+    }
+
+    public WorkloadGenerator withMaxBatch(int maxBatch) {
+        this.maxBatch = maxBatch;
+        return this;
+    }
+
+    // Writes the command log to 'file' and returns the number of commands written.
+    public long writeTo(Path file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int keySpace = Math.max(2, rides * 2);
+        int total = cumulativeWeights[KINDS.length - 1];
+        long commands = 0;
+        StringBuilder line = new StringBuilder(48);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            int inserted = 0;
+            while (inserted < rides) {
+                int pick = random.nextInt(total);
+                int kind = 0;
+                while (pick >= cumulativeWeights[kind]) {
+                    kind++;
+                }
+                line.setLength(0);
+                switch (kind) {
+                    case INSERT:
+                    case TTL:
+                    case LOCATED:
+                        inserted++;
+                        line.append("Insert(").append(1 + random.nextInt(keySpace)).append(',')
+                                .append(random.nextInt(maxCost + 1)).append(',')
+                                .append(1 + random.nextInt(maxDuration));
+                        if (kind == LOCATED) {
+                            line.append(',').append(coordinate(random)).append(',').append(coordinate(random));
+                        }
+                        if (kind == TTL || (kind == LOCATED && random.nextInt(insertWeight + ttlWeight + 1) < ttlWeight)) {
+                            line.append(',').append(1 + random.nextInt(maxTtl));
+                        }
+                        line.append(')');
+                        break;
+                    case DISPATCH:
+                        line.append("GetNextRide()");
+                        break;
+                    case UPDATE:
+                        line.append("UpdateTrip(").append(1 + random.nextInt(keySpace)).append(',')
+                                .append(1 + random.nextInt(2 * maxDuration)).append(')');
+                        break;
+                    case CANCEL:
+                        line.append("CancelRide(").append(1 + random.nextInt(keySpace)).append(')');
+                        break;
+                    case PRINT:
+                        line.append("Print(").append(1 + random.nextInt(keySpace)).append(')');
+                        break;
+                    case RANGE:
+                        int low = 1 + random.nextInt(keySpace);
+                        line.append("Print(").append(low).append(',').append(low + rangeWidth).append(')');
+                        break;
+                    case NEAR:
+                        line.append("GetNextRideNear(").append(coordinate(random)).append(',').append(coordinate(random))
+                                .append(',').append(random.nextInt(maxRadius + 2) - 1).append(')');
+                        break;
+                    case BATCH:
+                        line.append("GetNextRides(").append(random.nextInt(maxBatch + 2) - 1).append(')');
+                        break;
+                    case COUNT:
+                    case SUM:
+                    case MIN_COST:
+                        int from = 1 + random.nextInt(keySpace);
+                        line.append(kind == COUNT ? "Count(" : kind == SUM ? "SumCost(" : "MinCost(").append(from).append(',')
+                                .append(from + random.nextInt(rangeWidth + 1)).append(')');
+                        break;
+                    case RANK:
+                        line.append("Rank(").append(random.nextInt(keySpace + 2)).append(')');
+                        break;
+                    case SELECT:
+                        line.append("Select(").append(random.nextInt(rides / 2 + 2)).append(')');
+                        break;
+                }
+                writer.append(line).append('\n');
+                commands++;
+            }
+        }
+        return commands;
+    }
+
+    private int coordinate(SplittableRandom random) {
+        return random.nextInt(2 * maxCoordinate + 1) - maxCoordinate;
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[KINDS.length];
+        for (String part : mix.split("[,;]")) {
+            String[] pair = part.trim().split("=");
+            int kind = -1;
+            for (int i = 0; i < KINDS.length; i++) {
+                if (KINDS[i].equals(pair[0].trim())) {
+                    kind = i;
+                }
+            }
+            if (kind < 0 || pair.length != 2) {
+                throw new IllegalArgumentException("bad mix entry '" + part + "', expected one of " + String.join(", ", KINDS));
+            }
+            weights[kind] = Integer.parseInt(pair[1].trim());
+        }
+        return weights;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: WorkloadGenerator <rides> <file> [mix] [seed]");
+            System.exit(1);
+        }
+        String mix = args.length > 2 ? args[2] : DEFAULT_MIX;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        long commands = new WorkloadGenerator(Integer.parseInt(args[0]), mix, seed).writeTo(Paths.get(args[1]));
+        System.out.println("Wrote " + commands + " commands to " + args[1]);
+    }
+}